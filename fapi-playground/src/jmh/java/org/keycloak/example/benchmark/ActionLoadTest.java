@@ -0,0 +1,225 @@
+package org.keycloak.example.benchmark;
+
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Load test of the running playground application. Every client has its own session and sends the action (form of the main page) in the loop with no think
+ * time, so the number of the clients is the number of the concurrent requests. Throughput and latency is printed for every concurrency level.
+ *
+ * The test is supposed to be run twice against the application started with "quarkus.virtual-threads.enabled" set to true and false to see the concurrency
+ * limit of the worker thread pool. The action should do some blocking calls to the Keycloak server (EG. "wellknown-endpoint" with the metadata caching disabled).
+ *
+ * System properties: "url" (URL of the action endpoint), "action", "concurrency" (comma separated concurrency levels) and "duration" (duration of every level in
+ * seconds). Optional "fields" are the other form fields sent with every action ("name=value" pairs separated by "&amp;") and "setup" are the comma separated
+ * actions sent once by every client before the measurement (EG. "register-client" before the "headless-login" action, which needs the registered client).
+ */
+public class ActionLoadTest {
+
+    private static final String BOUNDARY = "playground-load-test-" + UUID.randomUUID();
+
+    public static void main(String[] args) throws Exception {
+        URI url = URI.create(System.getProperty("url", "https://localhost:8543/action"));
+        String action = System.getProperty("action", "wellknown-endpoint");
+        int[] concurrencyLevels = Arrays.stream(System.getProperty("concurrency", "1,10,50,100,200,400").split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        Duration duration = Duration.ofSeconds(Long.parseLong(System.getProperty("duration", "20")));
+        Map<String, String> fields = parseFields(System.getProperty("fields", ""));
+        List<String> setupActions = Arrays.stream(System.getProperty("setup", "").split(","))
+                .map(String::trim)
+                .filter(setupAction -> !setupAction.isEmpty())
+                .collect(Collectors.toList());
+
+        System.out.printf("Action '%s' at %s, %d seconds per level%n", action, url, duration.getSeconds());
+        System.out.printf("%12s %12s %10s %10s %10s %10s %8s%n", "concurrency", "requests/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "errors");
+        for (int concurrency : concurrencyLevels) {
+            Result result = runLevel(url, action, fields, setupActions, concurrency, duration);
+            System.out.printf("%12d %12.1f %10.1f %10.1f %10.1f %10.1f %8d%n", concurrency, result.throughput, result.percentile(0.5), result.percentile(0.9),
+                    result.percentile(0.99), result.percentile(1), result.errors);
+        }
+    }
+
+    private static Result runLevel(URI url, String action, Map<String, String> fields, List<String> setupActions, int concurrency, Duration duration) throws Exception {
+        SSLContext sslContext = createTrustAllSSLContext();
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofString(createMultipartBody(action, fields), StandardCharsets.UTF_8);
+        List<long[]> latencies = new ArrayList<>();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        CountDownLatch setupDone = new CountDownLatch(concurrency);
+        CountDownLatch measurementStart = new CountDownLatch(1);
+        AtomicLong endNanos = new AtomicLong();
+
+        // Project is compiled for Java 17, so the platform threads are used by the clients. They are just waiting for the responses
+        for (int i = 0; i < concurrency; i++) {
+            long[] clientLatencies = new long[1 << 16];
+            latencies.add(clientLatencies);
+            HttpClient client = createClient(sslContext);
+            Thread clientThread = new Thread(() -> {
+                try {
+                    try {
+                        for (String setupAction : setupActions) {
+                            client.send(createRequest(url, HttpRequest.BodyPublishers.ofString(createMultipartBody(setupAction, fields), StandardCharsets.UTF_8)),
+                                    HttpResponse.BodyHandlers.discarding());
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        setupDone.countDown();
+                    }
+                    measurementStart.await();
+
+                    int count = 0;
+                    while (System.nanoTime() < endNanos.get() && count < clientLatencies.length - 1) {
+                        HttpRequest request = createRequest(url, body);
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                                continue;
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        clientLatencies[++count] = System.nanoTime() - start;
+                    }
+                    clientLatencies[0] = count;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "load-test-client-" + i);
+            clientThread.setDaemon(true);
+            clientThread.start();
+        }
+        // Measurement starts once all the clients are set up
+        setupDone.await();
+        endNanos.set(System.nanoTime() + duration.toNanos());
+        measurementStart.countDown();
+        done.await();
+
+        int total = latencies.stream().mapToInt(clientLatencies -> (int) clientLatencies[0]).sum();
+        long[] all = new long[total];
+        int pos = 0;
+        for (long[] clientLatencies : latencies) {
+            int count = (int) clientLatencies[0];
+            System.arraycopy(clientLatencies, 1, all, pos, count);
+            pos += count;
+        }
+        Arrays.sort(all);
+        return new Result(all, (double) total / duration.getSeconds(), errors.get());
+    }
+
+    // Every client has its own cookies and hence its own session in the playground
+    private static HttpClient createClient(SSLContext sslContext) {
+        SSLParameters sslParameters = new SSLParameters();
+        sslParameters.setEndpointIdentificationAlgorithm(null);
+        return HttpClient.newBuilder()
+                .sslContext(sslContext)
+                .sslParameters(sslParameters)
+                .cookieHandler(new CookieManager())
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+    }
+
+    private static HttpRequest createRequest(URI url, HttpRequest.BodyPublisher body) {
+        return HttpRequest.newBuilder(url)
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(body)
+                .build();
+    }
+
+    private static String createMultipartBody(String action, Map<String, String> fields) {
+        StringBuilder body = new StringBuilder();
+        appendPart(body, "my-action", action);
+        fields.forEach((name, value) -> appendPart(body, name, value));
+        return body.append("--").append(BOUNDARY).append("--\r\n").toString();
+    }
+
+    private static void appendPart(StringBuilder body, String name, String value) {
+        body.append("--").append(BOUNDARY).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"").append(name).append("\"\r\n\r\n")
+                .append(value).append("\r\n");
+    }
+
+    private static Map<String, String> parseFields(String fields) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String field : fields.split("&")) {
+            int index = field.indexOf('=');
+            if (index > 0) {
+                result.put(field.substring(0, index).trim(), field.substring(index + 1));
+            }
+        }
+        return result;
+    }
+
+    // Playground uses self-signed certificate
+    private static SSLContext createTrustAllSSLContext() throws Exception {
+        TrustManager trustAll = new X509TrustManager() {
+
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[] { trustAll }, new SecureRandom());
+        return sslContext;
+    }
+
+
+    private static class Result {
+
+        private final long[] sortedLatencies;
+        private final double throughput;
+        private final long errors;
+
+        private Result(long[] sortedLatencies, double throughput, long errors) {
+            this.sortedLatencies = sortedLatencies;
+            this.throughput = throughput;
+            this.errors = errors;
+        }
+
+        // Nearest-rank percentile in milliseconds
+        private double percentile(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile * sortedLatencies.length);
+            return sortedLatencies[Math.max(0, rank - 1)] / 1_000_000.0;
+        }
+    }
+}
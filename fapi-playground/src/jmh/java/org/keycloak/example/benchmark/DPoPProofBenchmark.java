@@ -0,0 +1,74 @@
+package org.keycloak.example.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.common.crypto.CryptoIntegration;
+import org.keycloak.example.util.DPoPContext;
+import org.keycloak.example.util.DPoPSigner;
+import org.keycloak.example.util.KeyPairPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of creating the DPoP proof by {@link DPoPContext#generateDPoP} for every supported key type. The key pair is generated in the setup, so just the
+ * signing of the proof is measured (both with and without the access token hash).
+ *
+ * Measured on the platform threads of JMH. Requests of the application run on the virtual threads, so every signature is done by a new thread there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DPoPProofBenchmark {
+
+    private static final String TOKEN_ENDPOINT = "https://localhost:8443/realms/test/protocol/openid-connect/token";
+    private static final String USERINFO_ENDPOINT = "https://localhost:8443/realms/test/protocol/openid-connect/userinfo";
+
+    @Param({ "RS256", "ES256", "EdDSA" })
+    private String keyType;
+
+    private KeyPairPool keyPairPool;
+    private DPoPContext dpopContext;
+    private String accessToken;
+
+    @Setup
+    public void setup() {
+        CryptoIntegration.init(DPoPProofBenchmark.class.getClassLoader());
+
+        keyPairPool = new KeyPairPool(0);
+        dpopContext = new DPoPContext(keyPairPool);
+        dpopContext.setKeyType(DPoPSigner.KeyType.valueOf(keyType));
+        // Generates the keys
+        dpopContext.generateKeyThumbprint();
+
+        // Just the hash of the token is computed, so the content does not matter. Only the length is similar to the real tokens
+        accessToken = "x".repeat(1200);
+    }
+
+    @TearDown
+    public void tearDown() {
+        keyPairPool.close();
+    }
+
+    @Benchmark
+    public String tokenRequestProof() {
+        return dpopContext.generateDPoP("POST", TOKEN_ENDPOINT, null);
+    }
+
+    @Benchmark
+    public String resourceRequestProof() {
+        return dpopContext.generateDPoP("GET", USERINFO_ENDPOINT, accessToken);
+    }
+}
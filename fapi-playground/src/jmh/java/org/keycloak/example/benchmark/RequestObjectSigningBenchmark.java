@@ -0,0 +1,151 @@
+package org.keycloak.example.benchmark;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.common.crypto.CryptoIntegration;
+import org.keycloak.common.util.KeyUtils;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.AsymmetricSignatureSignerContext;
+import org.keycloak.crypto.ECDSASignatureSignerContext;
+import org.keycloak.crypto.KeyType;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.crypto.SignatureSignerContext;
+import org.keycloak.example.bean.AuthorizationEndpointRequestObject;
+import org.keycloak.example.util.JWSSignerContext;
+import org.keycloak.example.util.KeyPairPool;
+import org.keycloak.example.util.KeysWrapper;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of signing the request object by {@link KeysWrapper#getOidcRequest} for every supported algorithm. Compares {@link JWSSignerContext} (used by the
+ * {@link KeysWrapper}) with the signer contexts from Keycloak.
+ *
+ * Measured on the platform threads of JMH. Requests of the application run on the virtual threads, so every signature is done by a new thread there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestObjectSigningBenchmark {
+
+    @Param({ Algorithm.RS256, Algorithm.PS256, Algorithm.ES256, Algorithm.ES384, Algorithm.ES512, Algorithm.EdDSA })
+    private String algorithm;
+
+    private AuthorizationEndpointRequestObject requestObject;
+    private SignatureSignerContext playgroundSigner;
+    private SignatureSignerContext keycloakSigner;
+    private KeyPairPool keyPairPool;
+    private KeysWrapper keysWrapper;
+
+    @Setup
+    public void setup() throws Exception {
+        CryptoIntegration.init(RequestObjectSigningBenchmark.class.getClassLoader());
+
+        KeyWrapper key = new KeyWrapper();
+        KeyPair keyPair;
+        switch (algorithm) {
+            case Algorithm.RS256:
+            case Algorithm.PS256:
+                keyPair = generateKeyPair("RSA", null, 2048);
+                key.setType(KeyType.RSA);
+                break;
+            case Algorithm.ES256:
+                keyPair = generateKeyPair("EC", "secp256r1", 0);
+                key.setType(KeyType.EC);
+                break;
+            case Algorithm.ES384:
+                keyPair = generateKeyPair("EC", "secp384r1", 0);
+                key.setType(KeyType.EC);
+                break;
+            case Algorithm.ES512:
+                keyPair = generateKeyPair("EC", "secp521r1", 0);
+                key.setType(KeyType.EC);
+                break;
+            case Algorithm.EdDSA:
+                keyPair = generateKeyPair("Ed25519", null, 0);
+                key.setType(KeyType.OKP);
+                key.setCurve(Algorithm.Ed25519);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported algorithm " + algorithm);
+        }
+
+        String kid = KeyUtils.createKeyId(keyPair.getPublic());
+        key.setKid(kid);
+        key.setAlgorithm(algorithm);
+        key.setUse(KeyUse.SIG);
+        key.setPrivateKey(keyPair.getPrivate());
+        key.setPublicKey(keyPair.getPublic());
+
+        playgroundSigner = new JWSSignerContext(algorithm, kid, keyPair.getPrivate());
+        keycloakSigner = KeyType.EC.equals(key.getType()) ? new ECDSASignatureSignerContext(key) : new AsymmetricSignatureSignerContext(key);
+
+        requestObject = new AuthorizationEndpointRequestObject();
+        requestObject.id("c6a1ca8e-6e3b-4d1f-9b2e-0d5c0b3f2a17");
+        requestObject.issuer("benchmark-client");
+        requestObject.audience("https://localhost:8443/realms/test");
+        requestObject.setClientId("benchmark-client");
+        requestObject.setResponseType("code");
+        requestObject.setRedirectUriParam("https://localhost:8543/fapi-demo/login-callback");
+        requestObject.setScope("openid");
+        requestObject.setState("b0d7e3d2-8d8e-4e9e-a3f5-1f2b0b6c9a44");
+        requestObject.setNonce("0f9a4b53-2b1c-4f7a-8a3b-8c1e3f2e0d65");
+        requestObject.setCodeChallenge("E9Melhoa2OwvFrEMTJguCHaoeK1t8URWbuGJSstw-cM");
+        requestObject.setCodeChallengeMethod("S256");
+        requestObject.iat(1700000000L);
+        requestObject.exp(1700000060L);
+        requestObject.nbf(1700000000L);
+
+        keyPairPool = new KeyPairPool(0);
+        keysWrapper = new KeysWrapper(keyPairPool);
+        keysWrapper.generateKeys(algorithm, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        keyPairPool.close();
+    }
+
+    @Benchmark
+    public String keysWrapper() {
+        return keysWrapper.getOidcRequest(requestObject, algorithm);
+    }
+
+    @Benchmark
+    public String playgroundSigner() {
+        return new JWSBuilder().kid(playgroundSigner.getKid()).jsonContent(requestObject).sign(playgroundSigner);
+    }
+
+    @Benchmark
+    public String keycloakSigner() {
+        return new JWSBuilder().kid(keycloakSigner.getKid()).jsonContent(requestObject).sign(keycloakSigner);
+    }
+
+    private static KeyPair generateKeyPair(String algorithm, String curve, int keySize) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if (curve != null) {
+            generator.initialize(new ECGenParameterSpec(curve));
+        } else if (keySize > 0) {
+            generator.initialize(keySize);
+        }
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,98 @@
+package org.keycloak.example.benchmark;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.keycloak.VCFormat;
+import org.keycloak.common.crypto.CryptoIntegration;
+import org.keycloak.common.util.KeyUtils;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.example.util.JWSSignerContext;
+import org.keycloak.sdjwt.DisclosureSpec;
+import org.keycloak.sdjwt.IssuerSignedJWT;
+import org.keycloak.sdjwt.SdJwt;
+import org.keycloak.sdjwt.vp.SdJwtVP;
+import org.keycloak.util.JsonSerialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of parsing the SD-JWT credential and of creating the presentation from it (as done by the "create-presentation" action) for the credentials
+ * with different number of the selectively disclosable claims. Half of the claims is presented.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SdJwtPresentationBenchmark {
+
+    @Param({ "5", "20", "50" })
+    private int claimCount;
+
+    private String credential;
+    private List<String> claimsToPresent;
+
+    @Setup
+    public void setup() throws Exception {
+        CryptoIntegration.init(SdJwtPresentationBenchmark.class.getClassLoader());
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        JWSSignerContext signer = new JWSSignerContext(Algorithm.RS256, KeyUtils.createKeyId(keyPair.getPublic()), keyPair.getPrivate());
+
+        ObjectNode claims = JsonSerialization.mapper.createObjectNode();
+        claims.put("iss", "https://localhost:8443/realms/test");
+        claims.put("vct", "benchmark-credential");
+        claims.put("sub", "f3ad2d8e-2a5c-4b69-9d2a-6f1b0b8d7c11");
+        DisclosureSpec.Builder disclosureSpec = DisclosureSpec.builder();
+        claimsToPresent = new ArrayList<>();
+        for (int i = 0; i < claimCount; i++) {
+            String name = "claim-" + i;
+            claims.put(name, "value-" + i);
+            disclosureSpec.withUndisclosedClaim(name, "salt-" + i);
+            if (i % 2 == 0) {
+                claimsToPresent.add(name);
+            }
+        }
+
+        IssuerSignedJWT issuerSignedJwt = IssuerSignedJWT.builder()
+                .withClaims(claims, disclosureSpec.build())
+                .withSigner(signer)
+                .withJwsType(VCFormat.SD_JWT_VC)
+                .withKid(signer.getKid())
+                .withIat(1700000000L)
+                .withExp(1700086400L)
+                .build();
+        credential = SdJwt.builder()
+                .withIssuerSignedJwt(issuerSignedJwt)
+                .withIssuerSigningContext(signer)
+                .build()
+                .toSdJwtString();
+    }
+
+    @Benchmark
+    public SdJwtVP parse() {
+        return SdJwtVP.of(credential);
+    }
+
+    @Benchmark
+    public String present() {
+        return SdJwtVP.of(credential).presentWithSpecifiedClaims(claimsToPresent, false, null, null);
+    }
+}
@@ -0,0 +1,85 @@
+package org.keycloak.example.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.core.StreamingOutput;
+import org.keycloak.example.bean.ApplicationStateBean;
+import org.keycloak.example.bean.InfoBean;
+import org.keycloak.example.bean.ServerInfoBean;
+import org.keycloak.example.oid4vci.OID4VCIContext;
+import org.keycloak.example.util.FreeMarkerUtil;
+import org.keycloak.example.util.SessionData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of rendering the main page ("index.ftl") by {@link FreeMarkerUtil#processTemplate} with the attributes similar to the ones after the login.
+ * The template is parsed in the setup, so just the rendering is measured (including the serialization of the JSON outputs). The page is written to the output stream, which discards it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateRenderingBenchmark {
+
+    private static final String BASE_URL = "https://localhost:8543";
+
+    private final OutputStream output = OutputStream.nullOutputStream();
+    private FreeMarkerUtil freeMarker;
+    private Map<String, Object> attributes;
+
+    @Setup
+    public void setup() {
+        freeMarker = new FreeMarkerUtil();
+        freeMarker.precompileTemplates("index.ftl");
+
+        SessionData session = new SessionData("benchmark-session");
+
+        OID4VCIContext.OID4VCCredential credential = new OID4VCIContext.OID4VCCredential();
+        credential.setId("IdentityCredential");
+        credential.setDisplayName("Identity Credential");
+        OID4VCIContext oid4vciCtx = new OID4VCIContext();
+        oid4vciCtx.setAvailableCredentials(List.of(credential));
+        oid4vciCtx.setSelectedCredentialId(credential.getId());
+
+        // UrlBean needs the request and the static assets of the running application. Map with the same properties is used instead
+        Map<String, String> url = new HashMap<>();
+        url.put("baseUrl", BASE_URL);
+        url.put("action", BASE_URL + "/action");
+        url.put("clientRedirectUri", BASE_URL + "/login-callback");
+        url.put("exchangesUrl", BASE_URL + "/exchanges");
+        url.put("cssUrl", BASE_URL + "/static/styles.css");
+        url.put("accountConsoleUrl", BASE_URL + "/realms/test/account?referrer=" + BASE_URL);
+
+        attributes = new HashMap<>();
+        attributes.put("info", new InfoBean("Token response", InfoBean.json(Map.of("access_token", "x".repeat(1200), "token_type", "Bearer")),
+                "Last Access Token", InfoBean.json(Map.of("sub", "f3ad2d8e-2a5c-4b69-9d2a-6f1b0b8d7c11", "scope", "openid profile email"))));
+        attributes.put("serverInfo", new ServerInfoBean());
+        attributes.put("url", url);
+        attributes.put("clientConfigCtx", session.getClientConfigContext());
+        attributes.put("oidcConfigCtx", session.getOidcConfigContext());
+        attributes.put("appState", new ApplicationStateBean(session));
+        attributes.put("oid4vciCtx", oid4vciCtx);
+    }
+
+    @Benchmark
+    public void renderIndex() throws IOException {
+        StreamingOutput page = (StreamingOutput) freeMarker.processTemplate(attributes, "index.ftl").getEntity();
+        page.write(output);
+    }
+}
@@ -0,0 +1,148 @@
+package org.keycloak.example.benchmark;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.keycloak.TokenVerifier;
+import org.keycloak.common.VerificationException;
+import org.keycloak.common.crypto.CryptoIntegration;
+import org.keycloak.common.util.KeyUtils;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.AsymmetricSignatureVerifierContext;
+import org.keycloak.crypto.ECDSASignatureVerifierContext;
+import org.keycloak.crypto.KeyType;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.crypto.SignatureVerifierContext;
+import org.keycloak.example.util.JWKSKeyCache;
+import org.keycloak.example.util.JWSSignerContext;
+import org.keycloak.example.util.LocalTokenVerifier;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKBuilder;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.AccessToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Verifications per second of the access token (as done by the "show-last-tokens" action) for every supported algorithm. Compares {@link LocalTokenVerifier}
+ * (keys cached by {@link JWKSKeyCache}) with the {@link TokenVerifier} from Keycloak. The JWKS is already loaded, so no request is sent to the server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenVerificationBenchmark {
+
+    @Param({ Algorithm.RS256, Algorithm.PS256, Algorithm.ES256, Algorithm.ES384, Algorithm.ES512, Algorithm.EdDSA })
+    private String algorithm;
+
+    private String token;
+    private LocalTokenVerifier playgroundVerifier;
+    private SignatureVerifierContext keycloakVerifier;
+
+    @Setup
+    public void setup() throws Exception {
+        CryptoIntegration.init(TokenVerificationBenchmark.class.getClassLoader());
+
+        KeyWrapper key = new KeyWrapper();
+        KeyPair keyPair;
+        JWK jwk;
+        switch (algorithm) {
+            case Algorithm.RS256:
+            case Algorithm.PS256:
+                keyPair = generateKeyPair("RSA", null, 2048);
+                key.setType(KeyType.RSA);
+                jwk = JWKBuilder.create().kid(KeyUtils.createKeyId(keyPair.getPublic())).algorithm(algorithm).rsa(keyPair.getPublic());
+                break;
+            case Algorithm.ES256:
+                keyPair = generateKeyPair("EC", "secp256r1", 0);
+                key.setType(KeyType.EC);
+                jwk = JWKBuilder.create().kid(KeyUtils.createKeyId(keyPair.getPublic())).algorithm(algorithm).ec(keyPair.getPublic());
+                break;
+            case Algorithm.ES384:
+                keyPair = generateKeyPair("EC", "secp384r1", 0);
+                key.setType(KeyType.EC);
+                jwk = JWKBuilder.create().kid(KeyUtils.createKeyId(keyPair.getPublic())).algorithm(algorithm).ec(keyPair.getPublic());
+                break;
+            case Algorithm.ES512:
+                keyPair = generateKeyPair("EC", "secp521r1", 0);
+                key.setType(KeyType.EC);
+                jwk = JWKBuilder.create().kid(KeyUtils.createKeyId(keyPair.getPublic())).algorithm(algorithm).ec(keyPair.getPublic());
+                break;
+            case Algorithm.EdDSA:
+                keyPair = generateKeyPair("Ed25519", null, 0);
+                key.setType(KeyType.OKP);
+                key.setCurve(Algorithm.Ed25519);
+                jwk = JWKBuilder.create().kid(KeyUtils.createKeyId(keyPair.getPublic())).algorithm(algorithm).okp(keyPair.getPublic());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported algorithm " + algorithm);
+        }
+
+        String kid = jwk.getKeyId();
+        key.setKid(kid);
+        key.setAlgorithm(algorithm);
+        key.setUse(KeyUse.SIG);
+        key.setPublicKey(keyPair.getPublic());
+
+        JSONWebKeySet jwks = new JSONWebKeySet();
+        jwks.setKeys(new JWK[] { jwk });
+        playgroundVerifier = new LocalTokenVerifier(new JWKSKeyCache(reload -> jwks, 10000));
+        keycloakVerifier = KeyType.EC.equals(key.getType()) ? new ECDSASignatureVerifierContext(key) : new AsymmetricSignatureVerifierContext(key);
+
+        AccessToken accessToken = new AccessToken();
+        accessToken.id("5f0c6b4e-3a8d-4a57-9d0e-6c1f2b7a9e31");
+        accessToken.issuer("https://localhost:8443/realms/test");
+        accessToken.audience("account");
+        accessToken.subject("2b8e4c1d-7f3a-4e6b-9c5d-1a0f8e2d3b47");
+        accessToken.type("Bearer");
+        accessToken.issuedFor("benchmark-client");
+        accessToken.setScope("openid profile email");
+        accessToken.iat((long) Time.currentTime());
+        accessToken.exp((long) Time.currentTime() + 3600);
+        token = new JWSBuilder().kid(kid).jsonContent(accessToken).sign(new JWSSignerContext(algorithm, kid, keyPair.getPrivate()));
+
+        // Fail fast if the token is not valid
+        LocalTokenVerifier.Result<AccessToken> result = playgroundVerifier.verify(token, AccessToken.class, null);
+        if (!result.isValid()) {
+            throw new IllegalStateException("Token not valid: " + result);
+        }
+    }
+
+    @Benchmark
+    public List<LocalTokenVerifier.Check> playgroundVerifier() {
+        return playgroundVerifier.verify(token, AccessToken.class, null).getChecks();
+    }
+
+    @Benchmark
+    public AccessToken keycloakVerifier() throws VerificationException {
+        return TokenVerifier.create(token, AccessToken.class).verifierContext(keycloakVerifier).verify().getToken();
+    }
+
+    private static KeyPair generateKeyPair(String algorithm, String curve, int keySize) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if (curve != null) {
+            generator.initialize(new ECGenParameterSpec(curve));
+        } else if (keySize > 0) {
+            generator.initialize(keySize);
+        }
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,41 @@
+package org.keycloak.example;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+import org.keycloak.example.util.MetadataWarmup;
+
+/**
+ * Application is ready once the metadata of the Keycloak server are loaded by {@link MetadataWarmup}. Available at "/q/health/ready"
+ */
+@Readiness
+@ApplicationScoped
+public class PlaygroundReadinessCheck implements HealthCheck {
+
+    @Inject
+    Services services;
+
+    @Override
+    public HealthCheckResponse call() {
+        MetadataWarmup warmup = services.getMetadataWarmup();
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("Keycloak server metadata");
+        MetadataWarmup.Snapshot metadata = warmup.getSnapshot();
+        if (metadata == null) {
+            // Retry in case the server was not available
+            warmup.start();
+            String error = warmup.getLastError();
+            return response.down()
+                    .withData("error", error == null ? "Warm-up not finished yet" : error)
+                    .build();
+        }
+        response.up()
+                .withData("oid4vci", metadata.getCredentialIssuer() != null)
+                .withData("authzen", metadata.getAuthzenConfiguration() != null)
+                .withData("credentials", metadata.getAvailableCredentials().size());
+        metadata.getEndpoints().forEach(response::withData);
+        return response.build();
+    }
+}
@@ -0,0 +1,25 @@
+package org.keycloak.example;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Preparing the stuff at the application startup, so that the first requests don't need to wait for it
+ */
+@ApplicationScoped
+public class PlaygroundStartup {
+
+    private static final String[] TEMPLATES = { "index.ftl", "code-parser.ftl", "exchanges.ftl" };
+
+    // Services are created eagerly as well. Static resources are loaded and compressed when Services are created
+    @Inject
+    Services services;
+
+    void onStart(@Observes StartupEvent event) {
+        services.getFreeMarker().precompileTemplates(TEMPLATES);
+        // In the background, so the application starts even if Keycloak server is not available. Readiness check reports when it is done
+        services.getMetadataWarmup().start();
+    }
+}
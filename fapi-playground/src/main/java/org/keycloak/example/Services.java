@@ -1,87 +1,262 @@
 package org.keycloak.example;
 
-import org.apache.http.client.HttpClient;
+import io.opentelemetry.api.OpenTelemetry;
+import io.quarkus.arc.Arc;
+import io.quarkus.runtime.Startup;
+import io.vertx.mutiny.core.Vertx;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.client.Client;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient43Engine;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
-import org.keycloak.admin.client.resource.UserResource;
 import org.keycloak.common.crypto.CryptoIntegration;
 import org.keycloak.example.util.FreeMarkerUtil;
+import org.keycloak.example.util.HeadlessLoginDriver;
+import org.keycloak.example.util.HttpClientPool;
+import org.keycloak.example.util.HttpExchangeLog;
+import org.keycloak.example.util.JWKSKeyCache;
+import org.keycloak.example.util.KeyPairPool;
+import org.keycloak.example.util.LocalTokenVerifier;
+import org.keycloak.example.util.MetadataWarmup;
 import org.keycloak.example.util.MutualTLSUtils;
-import org.keycloak.example.util.MyConstants;
 import org.keycloak.example.util.OAuthClient;
+import org.keycloak.example.util.PlaygroundTracing;
+import org.keycloak.example.util.ReactiveHttpClient;
+import org.keycloak.example.util.ServerMetadataCache;
 import org.keycloak.example.util.SessionData;
-import org.keycloak.models.Constants;
+import org.keycloak.example.util.SessionStore;
+import org.keycloak.example.util.StaticAssets;
 
-import javax.net.ssl.SSLContext;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import static org.keycloak.example.util.MyConstants.REALM_NAME;
 import static org.keycloak.example.util.MyConstants.SERVER_ROOT;
 
 /**
- * Application-scoped stuff
+ * Application-scoped stuff. All the components are created eagerly when the application is started
  *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
+@Startup
+@ApplicationScoped
 public class Services {
 
-    private static final Services instance = new Services();
-    private Services() {
-        CryptoIntegration.init(Services.class.getClassLoader());
+    private static final Logger log = Logger.getLogger(Services.class);
+
+    // Lookup of the bean is done just once, when some code outside of CDI asks for the services for the first time
+    private static class Holder {
+        private static final Services INSTANCE = Arc.container().instance(Services.class).get();
     }
 
+    public static Services instance() {
+        return Holder.INSTANCE;
+    }
 
+    @Inject
+    Vertx vertx;
 
-    public static Services instance() {
-        return instance;
+    @Inject
+    OpenTelemetry openTelemetry;
+
+    private FreeMarkerUtil freeMarker;
+    private StaticAssets staticAssets;
+    private KeyPairPool keyPairPool;
+    private SessionStore sessionStore;
+    private HttpClientPool httpClientPool;
+    private ReactiveHttpClient reactiveHttpClient;
+    private OAuthClient oauthClient;
+    private ServerMetadataCache metadataCache;
+    private MetadataWarmup metadataWarmup;
+    private JWKSKeyCache jwksKeyCache;
+    private LocalTokenVerifier tokenVerifier;
+    private HeadlessLoginDriver loginDriver;
+    private volatile Client adminRestClient;
+    private final ReentrantLock adminRestClientLock = new ReentrantLock();
+
+    @PostConstruct
+    void init() {
+        long start = System.nanoTime();
+        Config config = ConfigProvider.getConfig();
+
+        initComponent("Crypto", () -> {
+            CryptoIntegration.init(Services.class.getClassLoader());
+            return null;
+        });
+
+        PlaygroundTracing.init(openTelemetry);
+
+        keyPairPool = initComponent("Key pair pool", () -> {
+            KeyPairPool pool = new KeyPairPool(config.getOptionalValue("playground.keys.pool-size", Integer.class).orElse(4));
+            pool.prefill();
+            return pool;
+        });
+
+        freeMarker = initComponent("FreeMarker", FreeMarkerUtil::new);
+        staticAssets = initComponent("Static resources", StaticAssets::load);
+
+        int maxSessions = config.getOptionalValue("playground.session.max-count", Integer.class).orElse(1000);
+        sessionStore = initComponent("Session store", () -> new SessionStore(maxSessions,
+                config.getOptionalValue("playground.session.stripes", Integer.class).orElse(Math.min(maxSessions, Runtime.getRuntime().availableProcessors() * 4)),
+                TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.session.idle-timeout", Long.class).orElse(1800L)),
+                TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.session.absolute-timeout", Long.class).orElse(36000L))));
+
+        // Keystores are cached. Just make sure they are loaded before first request
+        initComponent("Keystores and SSLContext", MutualTLSUtils::newSSLContextWithDefaultKeyStoreAndTrustStore);
+
+        httpClientPool = initComponent("HTTP client pool", () -> new HttpClientPool(MutualTLSUtils::newSSLContextWithDefaultKeyStoreAndTrustStore,
+                config.getOptionalValue("playground.http.max-connections", Integer.class).orElse(50),
+                config.getOptionalValue("playground.http.max-connections-per-route", Integer.class).orElse(20),
+                TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.http.keep-alive", Long.class).orElse(60L)),
+                TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.http.idle-timeout", Long.class).orElse(30L)),
+                TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.http.connection-ttl", Long.class).orElse(600L)),
+                new HttpExchangeLog(config.getOptionalValue("playground.http.exchange-log-size", Integer.class).orElse(1024))));
+
+        if ("reactive".equals(config.getOptionalValue("playground.http.backend", String.class).orElse("blocking"))) {
+            reactiveHttpClient = initComponent("Reactive HTTP client", () -> new ReactiveHttpClient(vertx,
+                    config.getOptionalValue("playground.http.max-connections-per-route", Integer.class).orElse(20),
+                    TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.http.keep-alive", Long.class).orElse(60L)),
+                    TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.http.idle-timeout", Long.class).orElse(30L)),
+                    httpClientPool.getExchangeLog()));
+        }
+
+        oauthClient = initComponent("OAuth client", () -> new OAuthClient(SERVER_ROOT, httpClientPool.getHttpClient())
+                .realm(REALM_NAME));
+//                oauthClient.init();
+
+        metadataCache = initComponent("Metadata cache", () -> new ServerMetadataCache(httpClientPool.getHttpClient(),
+                TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.metadata.default-ttl", Long.class).orElse(300L)),
+                TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.metadata.min-ttl", Long.class).orElse(10L)),
+                TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.metadata.max-ttl", Long.class).orElse(3600L))));
+        metadataWarmup = new MetadataWarmup(metadataCache, SERVER_ROOT, REALM_NAME);
+
+        // Keys are loaded lazily from the JWKS loaded to the metadata cache by the warm-up
+        jwksKeyCache = JWKSKeyCache.forIssuer(metadataCache, SERVER_ROOT + "/realms/" + REALM_NAME,
+                TimeUnit.SECONDS.toMillis(config.getOptionalValue("playground.jwks.min-reload-interval", Long.class).orElse(10L)));
+        tokenVerifier = new LocalTokenVerifier(jwksKeyCache);
+        loginDriver = new HeadlessLoginDriver(httpClientPool);
+
+        log.infof("Services initialized in %d ms", (System.nanoTime() - start) / 1000000);
     }
 
-    private final FreeMarkerUtil freeMarker = new FreeMarkerUtil();
-    private volatile OAuthClient oauthClient;
-    private volatile CloseableHttpClient httpClient;
+    @PreDestroy
+    void close() {
+        sessionStore.close();
+        metadataCache.close();
+        keyPairPool.close();
+        httpClientPool.close();
+        if (reactiveHttpClient != null) {
+            reactiveHttpClient.close();
+        }
+    }
 
-    private final SessionData session = new SessionData(); // TODO: Make sure that this is really session data and not app-scoped stuff
+    private <T> T initComponent(String name, Supplier<T> factory) {
+        long start = System.nanoTime();
+        T component = factory.get();
+        log.infof("%s initialized in %d ms", name, (System.nanoTime() - start) / 1000000);
+        return component;
+    }
 
 
     public FreeMarkerUtil getFreeMarker() {
         return freeMarker;
     }
 
+    public StaticAssets getStaticAssets() {
+        return staticAssets;
+    }
+
+    /**
+     * @return HTTP client shared by all the outbound requests to the Keycloak server. It should not be closed
+     */
     public CloseableHttpClient getHttpClient() {
-        if (httpClient == null) {
-            synchronized (this) {
-                httpClient = MutualTLSUtils.newCloseableHttpClientWithDefaultKeyStoreAndTrustStore();
-            }
-        }
-        return httpClient;
+        return httpClientPool.getHttpClient();
+    }
+
+    public HttpClientPool getHttpClientPool() {
+        return httpClientPool;
+    }
+
+    /**
+     * @return non-blocking HTTP client or null if the "playground.http.backend" is not "reactive". Flows, which support it, should use it instead of the OAuth client when available
+     */
+    public ReactiveHttpClient getReactiveHttpClient() {
+        return reactiveHttpClient;
     }
 
+    /**
+     * @return OAuth client shared by all the sessions. It should be used just for the requests, which are not specific to any registered client (EG. well-known requests)
+     */
     public OAuthClient getOauthClient() {
-        if (oauthClient == null) {
-            synchronized (this) {
-                oauthClient = new OAuthClient(SERVER_ROOT, getHttpClient())
-                        .realm(REALM_NAME);
-//                oauthClient.init();
-            }
-        }
         return oauthClient;
     }
 
-    public SessionData getSession() {
-        return session;
+    public ServerMetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    public MetadataWarmup getMetadataWarmup() {
+        return metadataWarmup;
+    }
+
+    public JWKSKeyCache getJwksKeyCache() {
+        return jwksKeyCache;
+    }
+
+    public LocalTokenVerifier getTokenVerifier() {
+        return tokenVerifier;
+    }
+
+    public HeadlessLoginDriver getLoginDriver() {
+        return loginDriver;
+    }
+
+    public KeyPairPool getKeyPairPool() {
+        return keyPairPool;
+    }
+
+    public SessionStore getSessionStore() {
+        return sessionStore;
     }
 
-    public Keycloak getAdminClient() {
+    /**
+     * @return admin client authenticated with the access token of given session. The returned client uses RESTEasy client shared by all the sessions, so it should not be closed
+     */
+    public Keycloak getAdminClient(SessionData session) {
         String accessToken = session.getTokenRequestCtx().getResponse().getAccessToken();
         KeycloakBuilder builder = KeycloakBuilder.builder()
                 .serverUrl(SERVER_ROOT)
-                .resteasyClient(Keycloak.getClientProvider().newRestEasyClient(null, null, true)) // TODO Proper SSL context
+                .resteasyClient(getAdminRestClient())
                 .realm(REALM_NAME)
                 .authorization(accessToken);
        return builder.build();
     }
 
-//    public void setSession(SessionData session) {
-//        this.session = session;
-//    }
+    // RESTEasy client sends the requests by the pooled HTTP client, so it shares the connections and the reloadable SSLContext with the other outbound requests.
+    // It is created on demand as admin client is rarely used. Lock is used instead of synchronized block, so the virtual thread waiting for the client does not pin its carrier thread
+    private Client getAdminRestClient() {
+        if (adminRestClient == null) {
+            adminRestClientLock.lock();
+            try {
+                if (adminRestClient == null) {
+                    // Non-closing view, so closing the RESTEasy client does not close the pool
+                    adminRestClient = ((ResteasyClientBuilder) ResteasyClientBuilder.newBuilder())
+                            .httpEngine(new ApacheHttpClient43Engine(httpClientPool.getNonClosingHttpClient(), true))
+                            .build();
+                }
+            } finally {
+                adminRestClientLock.unlock();
+            }
+        }
+        return adminRestClient;
+    }
 }
@@ -1,25 +1,53 @@
 package org.keycloak.example.bean;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import freemarker.core.Environment;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateModel;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.keycloak.util.JsonSerialization;
 
 /**
+ * Outputs displayed below the actions. The content of the output is written just when the page is rendered. JSON content (see {@link #json}) is serialized
+ * directly to the response writer and the content longer than "playground.info.max-output-size" characters is truncated.
+ *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
 public class InfoBean {
 
+    private static final int MAX_OUTPUT_SIZE = ConfigProvider.getConfig().getOptionalValue("playground.info.max-output-size", Integer.class).orElse(262144);
+
+    // Pretty-printing writer is immutable, so it is shared by all the outputs. Generator must not close the response writer
+    private static final ObjectWriter PRETTY_WRITER = JsonSerialization.prettyMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
     // Key is title, value is text-area
     private final List<Out> outputs = new ArrayList<>();
 
-    public InfoBean(String... infos) {
+    /**
+     * @param infos pairs of the title and the content. Content is either String or {@link Content} (EG. {@link #json})
+     */
+    public InfoBean(Object... infos) {
         for (int i = 0 ; i < infos.length ; i = i+2) {
-            String key = infos[i];
-            String value = infos[i + 1];
-            outputs.add(new Out(key, value));
+            String key = (String) infos[i];
+            Object value = infos[i + 1];
+            outputs.add(new Out(key, value instanceof Content ? (Content) value : text((String) value)));
         }
     }
 
     public InfoBean addOutput(String title, String content) {
+        this.outputs.add(new Out(title, text(content)));
+        return this;
+    }
+
+    public InfoBean addOutput(String title, Content content) {
         this.outputs.add(new Out(title, content));
         return this;
     }
@@ -28,22 +56,155 @@ public class InfoBean {
         return outputs;
     }
 
+    /**
+     * Content with the given object pretty-printed as JSON. The object is serialized just when the page is rendered (under the session lock), so it should not be
+     * changed by the later requests
+     */
+    public static Content json(Object value) {
+        return out -> PRETTY_WRITER.writeValue(out, value);
+    }
+
+    private static Content text(String value) {
+        return value == null ? null : out -> out.write(value);
+    }
+
+    /**
+     * Content of the output, which is written directly to the page
+     */
+    @FunctionalInterface
+    public interface Content {
+
+        void writeTo(Writer out) throws IOException;
+    }
+
     public static class Out {
 
         private final String title;
-        private final String content;
+        private final Content content;
 
-        public Out(String title, String textArea) {
+        public Out(String title, Content content) {
             this.title = title;
-            this.content = textArea;
+            this.content = content;
         }
 
         public String getTitle() {
             return title;
         }
 
-        public String getContent() {
-            return content;
+        /**
+         * @return directive, which writes the HTML-escaped content to the page (used as "&lt;@out.content/&gt;" in the template)
+         */
+        public TemplateDirectiveModel getContent() {
+            return this::render;
+        }
+
+        private void render(Environment env, Map params, TemplateModel[] loopVars, TemplateDirectiveBody body) throws IOException {
+            if (content == null) {
+                return;
+            }
+
+            Writer out = env.getOut();
+            LimitedHtmlWriter htmlWriter = new LimitedHtmlWriter(out, MAX_OUTPUT_SIZE);
+            try {
+                content.writeTo(htmlWriter);
+            } catch (OutputLimitReachedException olre) {
+                out.write("\n\n... (truncated after " + MAX_OUTPUT_SIZE + " characters)");
+            } catch (IOException ioe) {
+                // Failure of the response writer itself
+                if (htmlWriter.failed) {
+                    throw ioe;
+                }
+                out.write("\n\nError when writing the output: " + escape(ioe.getMessage()));
+            }
+        }
+    }
+
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder();
+        String str = String.valueOf(value);
+        for (int i = 0 ; i < str.length() ; i++) {
+            appendEscaped(builder, str.charAt(i));
+        }
+        return builder.toString();
+    }
+
+    private static void appendEscaped(StringBuilder builder, char c) {
+        switch (c) {
+            case '<': builder.append("&lt;"); break;
+            case '>': builder.append("&gt;"); break;
+            case '&': builder.append("&amp;"); break;
+            case '"': builder.append("&quot;"); break;
+            case '\'': builder.append("&#39;"); break;
+            default: builder.append(c);
+        }
+    }
+
+    // HTML-escapes the characters written to the page and stops the content after the given number of characters
+    private static class LimitedHtmlWriter extends Writer {
+
+        private final Writer out;
+        private final StringBuilder buffer = new StringBuilder();
+        private int remaining;
+        private boolean failed;
+
+        private LimitedHtmlWriter(Writer out, int limit) {
+            this.out = out;
+            this.remaining = limit;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            int count = Math.min(len, remaining);
+            buffer.setLength(0);
+            for (int i = off ; i < off + count ; i++) {
+                appendEscaped(buffer, cbuf[i]);
+            }
+            remaining -= count;
+            writeBuffer();
+            if (count < len) {
+                throw new OutputLimitReachedException();
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            int count = Math.min(len, remaining);
+            buffer.setLength(0);
+            for (int i = off ; i < off + count ; i++) {
+                appendEscaped(buffer, str.charAt(i));
+            }
+            remaining -= count;
+            writeBuffer();
+            if (count < len) {
+                throw new OutputLimitReachedException();
+            }
+        }
+
+        private void writeBuffer() throws IOException {
+            try {
+                out.append(buffer);
+            } catch (IOException ioe) {
+                failed = true;
+                throw ioe;
+            }
+        }
+
+        @Override
+        public void flush() {
+            // Response writer is flushed by the template
+        }
+
+        @Override
+        public void close() {
+            // Response writer is closed by the template
+        }
+    }
+
+    // Aborts the serialization of the content, which is longer than the limit
+    private static class OutputLimitReachedException extends IOException {
+
+        private OutputLimitReachedException() {
+            super(null, null);
         }
     }
 }
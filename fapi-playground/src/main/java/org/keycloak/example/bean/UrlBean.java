@@ -1,6 +1,7 @@
 package org.keycloak.example.bean;
 
 import jakarta.ws.rs.core.UriInfo;
+import org.keycloak.example.Services;
 import org.keycloak.example.util.MyConstants;
 
 /**
@@ -30,8 +31,15 @@ public class UrlBean {
         return baseUrl + "/login-callback";
     }
 
+    /**
+     * @return URL of the page with the outbound HTTP exchanges or null if the page is disabled
+     */
+    public String getExchangesUrl() {
+        return MyConstants.EXCHANGES_PAGE_ENABLED ? baseUrl + "/exchanges" : null;
+    }
+
     public String getCssUrl() {
-        return baseUrl + "/styles.css";
+        return baseUrl + "/static/" + Services.instance().getStaticAssets().getFingerprintedName("styles.css");
     }
 
     public String getAccountConsoleUrl() {
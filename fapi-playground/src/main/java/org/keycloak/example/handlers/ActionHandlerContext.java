@@ -1,5 +1,6 @@
 package org.keycloak.example.handlers;
 
+import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
 import org.keycloak.example.util.SessionData;
 import org.keycloak.example.util.WebRequestContext;
@@ -17,6 +18,9 @@ public class ActionHandlerContext {
     private final UriInfo uriInfo;
     private final Map<String, Object> fmAttributes;
 
+    // Response returned to the browser instead of rendering the page (EG. redirect)
+    private Response response;
+
     public ActionHandlerContext(Map<String, String> params, String action, SessionData session, WebRequestContext<AbstractHttpPostRequest, AccessTokenResponse> lastTokenResponse,
                                 UriInfo uriInfo, Map<String, Object> fmAttributes) {
         this.params = params;
@@ -50,4 +54,12 @@ public class ActionHandlerContext {
     public Map<String, Object> getFmAttributes() {
         return fmAttributes;
     }
+
+    public Response getResponse() {
+        return response;
+    }
+
+    public void setResponse(Response response) {
+        this.response = response;
+    }
 }
@@ -1,7 +1,13 @@
 package org.keycloak.example.handlers;
 
+import io.quarkus.arc.All;
+import io.quarkus.arc.ClientProxy;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
 import org.keycloak.example.bean.InfoBean;
-import org.keycloak.example.oid4vci.OID4VCIHandler;
+import org.keycloak.example.util.PlaygroundTracing;
 import org.keycloak.example.util.SessionData;
 import org.keycloak.testsuite.util.oauth.AccessTokenResponse;
 
@@ -10,34 +16,57 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
+/**
+ * Registry of all the action handlers. Handlers are CDI beans discovered at build time. The table of all the actions is created just once at startup, so dispatching
+ * the action is just single lookup in the map
+ */
+@ApplicationScoped
 public class ActionHandlerManager {
 
-    private static final List<ActionHandler> HANDLERS = List.of(
-            new OID4VCIHandler() // TODO: Register all handlers here. Maybe replace with service-loader...
-    );
+    private static final Logger log = Logger.getLogger(ActionHandlerManager.class);
 
-    public Map<String, Function<ActionHandlerContext, InfoBean>> getAllHandlerActions() {
+    @Inject
+    @All
+    List<ActionHandler> handlers;
+
+    private Map<String, Function<ActionHandlerContext, InfoBean>> actions;
+
+    // Names of the handlers (in the same order as the handlers) used as the names of the callback spans
+    private List<String> handlerNames;
+
+    @PostConstruct
+    void init() {
         Map<String, Function<ActionHandlerContext, InfoBean>> all = new HashMap<>();
-        for (ActionHandler handler : HANDLERS) {
-            for (String key : handler.getActions().keySet()) {
-                if (all.containsKey(key)) {
-                    throw new IllegalStateException("The key " + key + " already registered as an action. Please use different action key for the handler " + handler);
+        for (ActionHandler handler : handlers) {
+            for (Map.Entry<String, Function<ActionHandlerContext, InfoBean>> action : handler.getActions().entrySet()) {
+                if (all.putIfAbsent(action.getKey(), action.getValue()) != null) {
+                    throw new IllegalStateException("The key " + action.getKey() + " already registered as an action. Please use different action key for the handler " + handler);
                 }
             }
-            all.putAll(handler.getActions());
         }
-        return all;
+        actions = Map.copyOf(all);
+        handlerNames = handlers.stream().map(handler -> ClientProxy.unwrap(handler).getClass().getSimpleName()).toList();
+        log.debugf("Registered %d actions of %d action handlers", actions.size(), handlers.size());
+    }
+
+    /**
+     * @return implementation of the action or null if there is no handler for the action
+     */
+    public Function<ActionHandlerContext, InfoBean> getAction(String action) {
+        return action == null ? null : actions.get(action);
     }
 
     public void onAuthenticationCallback(SessionData session, AccessTokenResponse accessTokenResponse) {
-        for (ActionHandler handler : HANDLERS) {
-            handler.onAuthenticationCallback(session, accessTokenResponse);
+        for (int i = 0; i < handlers.size(); i++) {
+            ActionHandler handler = handlers.get(i);
+            PlaygroundTracing.inSpan("onAuthenticationCallback " + handlerNames.get(i), () -> handler.onAuthenticationCallback(session, accessTokenResponse));
         }
     }
 
     public void onLogoutCallback(SessionData session) {
-        for (ActionHandler handler : HANDLERS) {
-            handler.onLogoutCallback(session);
+        for (int i = 0; i < handlers.size(); i++) {
+            ActionHandler handler = handlers.get(i);
+            PlaygroundTracing.inSpan("onLogoutCallback " + handlerNames.get(i), () -> handler.onLogoutCallback(session));
         }
     }
 }
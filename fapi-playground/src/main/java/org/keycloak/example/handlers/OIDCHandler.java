@@ -0,0 +1,456 @@
+package org.keycloak.example.handlers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+import org.jboss.logging.Logger;
+import org.keycloak.OAuth2Constants;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.example.Services;
+import org.keycloak.example.bean.InfoBean;
+import org.keycloak.example.bean.UrlBean;
+import org.keycloak.example.util.*;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jws.JWSHeader;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
+import org.keycloak.protocol.oidc.OIDCLoginProtocol;
+import org.keycloak.protocol.oidc.representations.OIDCConfigurationRepresentation;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.IDToken;
+import org.keycloak.representations.RefreshToken;
+import org.keycloak.representations.dpop.DPoP;
+import org.keycloak.representations.oidc.OIDCClientRepresentation;
+import org.keycloak.testsuite.util.oauth.*;
+import org.keycloak.util.JWKSUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Handler of the basic OIDC actions (client registration, login, token refresh, logout etc.)
+ *
+ * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
+ */
+@ApplicationScoped
+public class OIDCHandler implements ActionHandler {
+
+    private static final Logger log = Logger.getLogger(OIDCHandler.class);
+
+    @Inject
+    ActionHandlerManager actionHandlerManager;
+
+    @Override
+    public Map<String, Function<ActionHandlerContext, InfoBean>> getActions() {
+        return Map.ofEntries(
+                Map.entry("wellknown-endpoint", this::handleWellKnownEndpointAction),
+                Map.entry("register-client", this::handleRegisterClientAction),
+                Map.entry("show-registered-client", this::handleShowRegisteredClientAction),
+                Map.entry("create-login-url", this::handleCreateLoginUrlAction),
+                Map.entry("headless-login", this::handleHeadlessLoginAction),
+                Map.entry("process-fragment", this::handleProcessFragmentAction),
+                Map.entry("show-last-token-response", this::handleShowLastTokenResponseAction),
+                Map.entry("show-last-tokens", this::handleShowLastTokensAction),
+                Map.entry("show-last-dpop-proof", this::handleShowLastDPoPProofAction),
+                Map.entry("logout", this::handleLogoutAction),
+                Map.entry("refresh-token", this::handleRefreshTokenAction),
+                Map.entry("send-user-info", this::handleSendUserInfoAction),
+                Map.entry("rotate-dpop-keys", this::handleRotateDPoPKeysAction)
+        );
+    }
+
+    @Override
+    public void onAuthenticationCallback(SessionData session, AccessTokenResponse accessTokenResponse) {
+    }
+
+    @Override
+    public void onLogoutCallback(SessionData session) {
+    }
+
+    private InfoBean handleWellKnownEndpointAction(ActionHandlerContext actionContext) {
+        OIDCConfigurationRepresentation cfg = actionContext.getSession().getAuthServerInfo();
+        return new InfoBean("OIDC well-known response", InfoBean.json(cfg),
+                "Metadata cache statistics", Services.instance().getMetadataCache().toString(),
+                "HTTP connection pool statistics", Services.instance().getHttpClientPool().toString());
+    }
+
+    private InfoBean handleRegisterClientAction(ActionHandlerContext actionContext) {
+        SessionData session = actionContext.getSession();
+        ClientConfigContext clientCtx = collectClientConfigParams(actionContext.getParams(), session);
+        String initToken = clientCtx.getInitialAccessToken();
+        if (initToken == null || initToken.trim().isEmpty()) {
+            throw new MyException("Init token is missing. It is required when registering client. Please obtain init token from Keycloak admin console and try again");
+        }
+
+        ClientRegistrationWrapper clientReg = ClientRegistrationWrapper.create();
+        clientReg.setInitToken(initToken);
+
+        OIDCClientRepresentation oidcClient = createClientToRegister(session, actionContext.getUriInfo(), clientCtx.getClientAuthMethod(), clientCtx.isGenerateJwks(), clientCtx.getKeysAlgorithm());
+        try {
+            WebRequestContext<OIDCClientRepresentation, OIDCClientRepresentation> res = clientReg.registerClient(oidcClient);
+            session.setRegisteredClient(res.getResponse());
+
+            OAuthClient oauthClient = session.getOauthClient();
+            if (OIDCLoginProtocol.CLIENT_SECRET_BASIC.equals(session.getClientConfigContext().getClientAuthMethod())) {
+                oauthClient.client(res.getResponse().getClientId(), res.getResponse().getClientSecret());
+            } else {
+                oauthClient.client(res.getResponse().getClientId());
+            }
+
+            return new InfoBean("Client Registration Request", InfoBean.json(res.getRequest()),
+                    "Client Registration Response", InfoBean.json(res.getResponse()));
+        } finally {
+            clientReg.close();
+        }
+    }
+
+    private InfoBean handleShowRegisteredClientAction(ActionHandlerContext actionContext) {
+        OIDCClientRepresentation client = actionContext.getSession().getRegisteredClient();
+        if (client == null) {
+            return new InfoBean("No Registered client", "No client registered");
+        }
+        return new InfoBean("Last Registered client", InfoBean.json(client));
+    }
+
+    private InfoBean handleCreateLoginUrlAction(ActionHandlerContext actionContext) {
+        SessionData session = actionContext.getSession();
+        OIDCFlowConfigContext oidcFlowCtx = collectOIDCFlowConfigParams(actionContext.getParams(), session);
+
+        String authRequestUrl = LoginUtil.getAuthorizationRequestUrl(session, oidcFlowCtx, actionContext.getUriInfo(), null).build();
+        actionContext.getFmAttributes().put(Constants.AUTH_REQUEST_URL, authRequestUrl);
+        session.setAuthenticationRequestUrl(authRequestUrl);
+        return new InfoBean("OIDC Authentication Request URL", authRequestUrl);
+    }
+
+    private InfoBean handleHeadlessLoginAction(ActionHandlerContext actionContext) {
+        SessionData session = actionContext.getSession();
+        OIDCFlowConfigContext oidcFlowCtx = collectOIDCFlowConfigParams(actionContext.getParams(), session);
+        String username = actionContext.getParams().get("login-username");
+        String password = actionContext.getParams().getOrDefault("login-password", "");
+        if (username == null || username.isBlank()) {
+            throw new MyException("Username is missing. It is required for the headless login");
+        }
+
+        String authRequestUrl = LoginUtil.getAuthorizationRequestUrl(session, oidcFlowCtx, actionContext.getUriInfo(), null).build();
+        session.setAuthenticationRequestUrl(authRequestUrl);
+        HeadlessLoginDriver.LoginResult result = Services.instance().getLoginDriver()
+                .login(authRequestUrl, session.getRegisteredClient().getRedirectUris().get(0), username, password);
+
+        return handleLoginCallback(session, result.getCode(), result.getError(), result.getErrorDescription(), result.getResponseUrl())
+                .addOutput("Headless login", "Authorization response received after " + result.getSteps() + " requests");
+    }
+
+    private InfoBean handleProcessFragmentAction(ActionHandlerContext actionContext) {
+        String authzResponseUrl = actionContext.getParams().get("authz-response-url");
+        int fragmentIndex = authzResponseUrl.indexOf('#');
+        if (fragmentIndex == -1) {
+            throw new MyException("Fragment did not found in the URL " + authzResponseUrl);
+        }
+        String fragment = authzResponseUrl.substring(fragmentIndex + 1);
+        Map<String, String> parsedParams = Stream.of(fragment.split("&")).collect(Collectors.toMap(
+                param -> param.substring(0, param.indexOf('=')),
+                param -> param.substring(param.indexOf('=') + 1)));
+        return handleLoginCallback(actionContext.getSession(), parsedParams.get(OAuth2Constants.CODE), parsedParams.get(OAuth2Constants.ERROR),
+                parsedParams.get(OAuth2Constants.ERROR_DESCRIPTION), authzResponseUrl);
+    }
+
+    private InfoBean handleShowLastTokenResponseAction(ActionHandlerContext actionContext) {
+        WebRequestContext<AbstractHttpPostRequest, AccessTokenResponse> lastTokenResponse = actionContext.getLastTokenResponse();
+        if (lastTokenResponse == null) {
+            return new InfoBean("No Token Response", "No token response yet. Please login first.");
+        }
+        try {
+            InfoBean info = new InfoBean();
+            infoTokenRequestAndResponse(info, lastTokenResponse.getRequest(), lastTokenResponse.getResponse());
+            return info;
+        } catch (IOException ioe) {
+            throw new MyException("Error when trying to deserialize OIDC registered client", ioe);
+        }
+    }
+
+    private InfoBean handleShowLastTokensAction(ActionHandlerContext actionContext) {
+        WebRequestContext<AbstractHttpPostRequest, AccessTokenResponse> lastTokenResponse = actionContext.getLastTokenResponse();
+        if (lastTokenResponse == null) {
+            return new InfoBean("No Token Response", "No token response yet. Please login first.");
+        }
+        AccessTokenResponse atr = lastTokenResponse.getResponse();
+        if (atr.getAccessToken() == null || atr.getRefreshToken() == null) {
+            return new InfoBean("No Tokens", "No tokens. Please login first.");
+        }
+        // Thumbprint of the DPoP key is computed just when the token is bound to it. Without DPoP, the token bound to any key is reported as failed
+        SessionData session = actionContext.getSession();
+        DPoPContext dpopContext = session.getOidcConfigContext().isUseDPoP() ? session.getOrCreateDpopContext() : null;
+        LocalTokenVerifier verifier = Services.instance().getTokenVerifier();
+        LocalTokenVerifier.Result<IDToken> idToken = verifier.verify(atr.getIdToken(), IDToken.class, dpopContext);
+        LocalTokenVerifier.Result<AccessToken> accessToken = verifier.verify(atr.getAccessToken(), AccessToken.class, dpopContext);
+        LocalTokenVerifier.Result<RefreshToken> refreshToken = verifier.verify(atr.getRefreshToken(), RefreshToken.class, dpopContext);
+        return new InfoBean(
+                "Last ID Token", InfoBean.json(idToken.getToken()),
+                "Last ID Token verification", idToken.toString(),
+                "Last Access Token", InfoBean.json(accessToken.getToken()),
+                "Last Access Token verification", accessToken.toString(),
+                "Last Refresh Token", InfoBean.json(refreshToken.getToken()),
+                "Last Refresh Token verification", refreshToken.toString(),
+                "JWKS key cache statistics", Services.instance().getJwksKeyCache().toString());
+    }
+
+    private InfoBean handleShowLastDPoPProofAction(ActionHandlerContext actionContext) {
+        String lastDPoP = actionContext.getSession().getOrCreateDpopContext().getLastDpopProof();
+        if (lastDPoP == null) {
+            return new InfoBean("No DPoP", "No dpop JWT present. Please login first with 'Use DPoP' enabled.");
+        }
+        try {
+            JWSInput jws = new JWSInput(lastDPoP);
+            JWSHeader header = jws.getHeader();
+            DPoP dpop = jws.readJsonContent(DPoP.class);
+
+            return new InfoBean(
+                    "Last DPoP header", InfoBean.json(header),
+                    "Last DPoP", InfoBean.json(dpop),
+                    "Last thumbprint of JWK key", JWKSUtils.computeThumbprint(header.getKey()));
+        } catch (JWSInputException jie) {
+            throw new MyException("Error when trying to deserialize DPoP JWT", jie);
+        }
+    }
+
+    private InfoBean handleLogoutAction(ActionHandlerContext actionContext) {
+        SessionData session = actionContext.getSession();
+        WebRequestContext<AbstractHttpPostRequest, AccessTokenResponse> lastTokenResponse = actionContext.getLastTokenResponse();
+        if (lastTokenResponse == null) {
+            return new InfoBean("Not authenticated", "No token response yet. User cannot logout");
+        }
+        try {
+            // Cleanup tokens and other context
+            session.setTokenRequestCtx(null);
+            actionHandlerManager.onLogoutCallback(session);
+
+            OAuthClient oauthCl = session.getOauthClient();
+            OIDCClientRepresentation oidcClientForLogout = session.getRegisteredClient();
+            oauthCl.client(oidcClientForLogout.getClientId());
+            oauthCl.config().postLogoutRedirectUri(oidcClientForLogout.getPostLogoutRedirectUris().get(0));
+
+            String logoutUrl = oauthCl.logoutForm()
+                    .idTokenHint(lastTokenResponse.getResponse().getIdToken())
+                    .withClientId()
+                    .withRedirect()
+                    .build();
+            log.infof("Logout: redirect to URL: %s", logoutUrl);
+            actionContext.setResponse(Response.status(302).location(new URI(logoutUrl)).build());
+            return null;
+        } catch (URISyntaxException ex) {
+            throw new MyException("Incorrect logout URL", ex);
+        }
+    }
+
+    private InfoBean handleRefreshTokenAction(ActionHandlerContext actionContext) {
+        SessionData session = actionContext.getSession();
+        collectOIDCFlowConfigParams(actionContext.getParams(), session);
+        WebRequestContext<AbstractHttpPostRequest, AccessTokenResponse> lastTokenResponse = actionContext.getLastTokenResponse();
+        if (lastTokenResponse == null) {
+            return new InfoBean("No Token Response", "No token response yet. Please login first.");
+        }
+        if (lastTokenResponse.getResponse().getRefreshToken() == null) {
+            return new InfoBean("No Refresh token", "No refresh token. Please login first.");
+        }
+        WebRequestContext<AbstractHttpPostRequest, AccessTokenResponse> refreshedTokenResponse = sendTokenRefresh(session);
+        session.setTokenRequestCtx(new WebRequestContext<>(refreshedTokenResponse.getRequest(), refreshedTokenResponse.getResponse()));
+
+        Map<String, Object> requestInfo = OAuthClientUtil.getRequestInfo(refreshedTokenResponse.getRequest());
+        return new InfoBean("Refresh token request", InfoBean.json(requestInfo))
+                .addOutput("Refresh token response", InfoBean.json(refreshedTokenResponse.getResponse()));
+    }
+
+    private InfoBean handleSendUserInfoAction(ActionHandlerContext actionContext) {
+        SessionData session = actionContext.getSession();
+        collectOIDCFlowConfigParams(actionContext.getParams(), session);
+        WebRequestContext<AbstractHttpPostRequest, AccessTokenResponse> lastTokenResponse = actionContext.getLastTokenResponse();
+        if (lastTokenResponse == null) {
+            return new InfoBean("No Token Response", "No token response yet. Please login first.");
+        }
+        if (lastTokenResponse.getResponse().getAccessToken() == null) {
+            return new InfoBean("No access token", "No access token. Please login first.");
+        }
+        ReactiveHttpClient reactiveHttpClient = Services.instance().getReactiveHttpClient();
+        if (reactiveHttpClient != null) {
+            WebRequestContext<ReactiveHttpClient.Request, JsonNode> userInfo = ReactiveHttpClient.await(sendUserInfo(session, reactiveHttpClient));
+            return new InfoBean("User Info request", InfoBean.json(OAuthClientUtil.getRequestInfo(userInfo.getRequest())))
+                    .addOutput("User Info response", InfoBean.json(userInfo.getResponse()));
+        }
+
+        WebRequestContext<UserInfoRequest, UserInfoResponse> userInfo = sendUserInfo(session);
+
+        Map<String, Object> reqInfo = OAuthClientUtil.getRequestInfo(userInfo.getRequest());
+        return new InfoBean("User Info request", InfoBean.json(reqInfo))
+                .addOutput("User Info response", InfoBean.json(userInfo.getResponse()));
+    }
+
+    private InfoBean handleRotateDPoPKeysAction(ActionHandlerContext actionContext) {
+        SessionData session = actionContext.getSession();
+        collectOIDCFlowConfigParams(actionContext.getParams(), session);
+        DPoPContext ctx = session.getOrCreateDpopContext();
+        ctx.rotateKeys();
+        return new InfoBean("DPoP Keys rotated", "New thumbprint: " + ctx.generateKeyThumbprint(),
+                "Key pair pool statistics", Services.instance().getKeyPairPool().toString());
+    }
+
+    /**
+     * Exchange the code from the authentication response for the tokens
+     *
+     * @return info with the token request and response or with the error
+     */
+    public InfoBean handleLoginCallback(SessionData session, String code, String error, String errorDescription, String origAuthzResponseUrl) {
+        if (error != null) {
+            return new InfoBean("OIDC Authentication request URL sent", session.getAuthenticationRequestUrl(), "Error!", "Error returned from Authentication response: " + error + ", Error description: " + errorDescription);
+        }
+        try {
+            // WebResponse<List<NameValuePair>, OAuthClient.AccessTokenResponse> tokenResponse = Services.instance().getOauthClient().doAccessTokenRequest(code, null, MutualTLSUtils.newCloseableHttpClientWithDefaultKeyStoreAndTrustStore());
+            OAuthClient oauthClient = session.getOauthClient();
+
+            oauthClient.redirectUri(session.getRegisteredClient().getRedirectUris().get(0));
+
+            AccessTokenRequest tokenRequest = oauthClient.accessTokenRequest(code);
+
+            if (session.getOidcConfigContext().isUseDPoP()) {
+                String dpopProof = session.getOrCreateDpopContext().generateDPoP(HttpMethod.POST, session.getAuthServerInfo().getTokenEndpoint(), null);
+                tokenRequest.dpopProof(dpopProof);
+            }
+            if (session.getOidcConfigContext().isUsePkce()) {
+                tokenRequest.codeVerifier(session.getPkceContext());
+            }
+            AccessTokenResponse tokenResponse = HttpExchangeRecorder.send(tokenRequest, tokenRequest::send);
+
+            InfoBean info = new InfoBean("Authentication request URL", session.getAuthenticationRequestUrl())
+                    .addOutput("Authentication response URL", origAuthzResponseUrl);
+
+            infoTokenRequestAndResponse(info, tokenRequest, tokenResponse);
+
+            actionHandlerManager.onAuthenticationCallback(session, tokenResponse);
+
+            session.setTokenRequestCtx(new WebRequestContext<>(tokenRequest, tokenResponse));
+            return info;
+        } catch (Exception me) {
+            log.error(me.getMessage(), me);
+            return new InfoBean("Error!", "Error when performing action. See server log for details");
+        }
+    }
+
+    private void infoTokenRequestAndResponse(InfoBean info, AbstractHttpPostRequest tokenRequest, AccessTokenResponse tokenResponse) throws IOException {
+        Map<String, Object> requestInfo = OAuthClientUtil.getRequestInfo(tokenRequest);
+        info.addOutput("Token request", InfoBean.json(requestInfo))
+                .addOutput("Token response", InfoBean.json(tokenResponse));
+    }
+
+    private ClientConfigContext collectClientConfigParams(Map<String, String> params, SessionData session) {
+        String initToken = params.get("init-token");
+        String clientAuthMethod = params.get("client-auth-method");
+        boolean generateJwks = params.get("jwks") != null;
+        String keysAlgorithm = params.getOrDefault("jwks-algorithm", Algorithm.PS256);
+        ClientConfigContext clientCtx = new ClientConfigContext(initToken, clientAuthMethod, generateJwks, keysAlgorithm);
+        session.setClientConfigContext(clientCtx);
+        return clientCtx;
+    }
+
+    private OIDCFlowConfigContext collectOIDCFlowConfigParams(Map<String, String> params, SessionData session) {
+        boolean pkce = params.get("pkce") != null;
+        boolean nonce = params.get("nonce") != null;
+        boolean requestObject = params.get("request-object") != null;
+        boolean useDPoP = params.get("dpop") != null;
+        boolean useDPoPJKT = params.get("dpop-authz-code-binding") != null;
+//        if (useDPoPJKT && !useDPoP) {
+//            throw new MyException("Incorrect to disable 'Use DPoP' and enable 'Use DPoP Authorization Code Binding' at the same time");
+//        }
+        DPoPSigner.KeyType dpopKeyType;
+        try {
+            dpopKeyType = DPoPSigner.KeyType.valueOf(params.getOrDefault("dpop-key-type", DPoPSigner.KeyType.RS256.name()));
+        } catch (IllegalArgumentException iae) {
+            throw new MyException("Unsupported DPoP key type: " + params.get("dpop-key-type"));
+        }
+        OIDCFlowConfigContext ctx = new OIDCFlowConfigContext(pkce, nonce, requestObject, useDPoP, useDPoPJKT, dpopKeyType.name());
+        session.setOidcFlowContext(ctx);
+        session.getOrCreateDpopContext().setKeyType(dpopKeyType);
+        return ctx;
+    }
+
+    private OIDCClientRepresentation createClientToRegister(SessionData session, UriInfo uriInfo, String clientAuthMethod, boolean generateJwks, String keysAlgorithm) {
+        OIDCClientRepresentation client = new OIDCClientRepresentation();
+        client.setClientName("my fapi client");
+        UrlBean urls = new UrlBean(uriInfo);
+        client.setClientUri(urls.getBaseUrl());
+        client.setRedirectUris(Collections.singletonList(urls.getClientRedirectUri()));
+        client.setPostLogoutRedirectUris(Collections.singletonList(urls.getBaseUrl()));
+        client.setTokenEndpointAuthMethod(clientAuthMethod);
+        if (OIDCLoginProtocol.TLS_CLIENT_AUTH.equals(clientAuthMethod)) {
+            client.setTlsClientAuthSubjectDn(MyConstants.EXACT_CERTIFICATE_SUBJECT_DN);
+            client.setResponseTypes(Arrays.asList("code", "code id_token")); // Indicates that we want fapi advanced. This should be done in a better way...
+        }
+
+        if (generateJwks) {
+            KeysWrapper keys = new KeysWrapper();
+            keys.generateKeys(keysAlgorithm, true);
+            JSONWebKeySet jwks = keys.getJwks();
+            client.setJwks(jwks);
+            if (JWSSignerContext.isSupported(keysAlgorithm)) {
+                // Request objects will be signed by the generated keys
+                client.setRequestObjectSigningAlg(keysAlgorithm);
+            }
+            session.setKeys(keys);
+        } else {
+            session.setKeys(null);
+        }
+        return client;
+    }
+
+    private WebRequestContext<AbstractHttpPostRequest, AccessTokenResponse> sendTokenRefresh(SessionData session) {
+        OAuthClient oauthClient = session.getOauthClient();
+        String refreshToken = session.getTokenRequestCtx().getResponse().getRefreshToken(); // Already checked that there is tokenRequestCtx
+        RefreshRequest tokenRequest = oauthClient.refreshRequest(refreshToken);
+
+        if (session.getOidcConfigContext().isUseDPoP()) {
+            String dpopProof = session.getOrCreateDpopContext().generateDPoP(HttpMethod.POST, session.getAuthServerInfo().getTokenEndpoint(), refreshToken);
+            tokenRequest.dpopProof(dpopProof);
+        }
+        AccessTokenResponse tokenResponse = HttpExchangeRecorder.send(tokenRequest, tokenRequest::send);
+        return new WebRequestContext<>(tokenRequest, tokenResponse);
+    }
+
+    private WebRequestContext<UserInfoRequest, UserInfoResponse> sendUserInfo(SessionData session) {
+        OAuthClient oauthClient = session.getOauthClient();
+        String accessToken = session.getTokenRequestCtx().getResponse().getAccessToken(); // Already checked that there is tokenRequestCtx
+        UserInfoRequest userInfoRequest = oauthClient.userInfoRequest(accessToken);
+
+        if (session.getOidcConfigContext().isUseDPoP()) {
+            String dpopProof = session.getOrCreateDpopContext().generateDPoP(HttpMethod.GET, session.getAuthServerInfo().getUserinfoEndpoint(), accessToken);
+            userInfoRequest.dpop(dpopProof);
+        }
+        UserInfoResponse tokenResponse = HttpExchangeRecorder.send(userInfoRequest, userInfoRequest::send);
+        return new WebRequestContext<>(userInfoRequest, tokenResponse);
+    }
+
+    private Uni<WebRequestContext<ReactiveHttpClient.Request, JsonNode>> sendUserInfo(SessionData session, ReactiveHttpClient reactiveHttpClient) {
+        String accessToken = session.getTokenRequestCtx().getResponse().getAccessToken(); // Already checked that there is tokenRequestCtx
+        String userInfoEndpoint = session.getAuthServerInfo().getUserinfoEndpoint();
+        ReactiveHttpClient.Request userInfoRequest = reactiveHttpClient.doGet(userInfoEndpoint);
+
+        if (session.getOidcConfigContext().isUseDPoP()) {
+            String dpopProof = session.getOrCreateDpopContext().generateDPoP(HttpMethod.GET, userInfoEndpoint, accessToken);
+            userInfoRequest.header(HttpHeaders.AUTHORIZATION, "DPoP " + accessToken)
+                    .header("DPoP", dpopProof);
+        } else {
+            userInfoRequest.auth(accessToken);
+        }
+        return userInfoRequest.send()
+                .onItem().transform(response -> new WebRequestContext<>(userInfoRequest, response.asJson(JsonNode.class)));
+    }
+}
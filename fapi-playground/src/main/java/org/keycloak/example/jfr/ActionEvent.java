@@ -0,0 +1,31 @@
+package org.keycloak.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Processing of the action sent from the playground page (EG. "wellknown-endpoint")
+ */
+@Name(ActionEvent.NAME)
+@Label("Action")
+@Category(ActionEvent.CATEGORY)
+@Description("Processing of the playground action")
+@StackTrace(false)
+public class ActionEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "org.keycloak.example.Action";
+    public static final String CATEGORY = "Keycloak Playground";
+
+    @Label("Action")
+    public String action;
+
+    @Label("Failed")
+    public boolean failed;
+
+    public ActionEvent(String action) {
+        this.action = action;
+    }
+}
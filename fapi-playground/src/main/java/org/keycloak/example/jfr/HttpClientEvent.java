@@ -0,0 +1,29 @@
+package org.keycloak.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Outbound HTTP exchange with the authorization server. Ends once the response body is read
+ */
+@Name(HttpClientEvent.NAME)
+@Label("HTTP Client Exchange")
+@Category(ActionEvent.CATEGORY)
+@Description("Outbound HTTP exchange with the authorization server")
+@StackTrace(false)
+public class HttpClientEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "org.keycloak.example.HttpClient";
+
+    @Label("Method")
+    public String method;
+
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("Status")
+    public int status;
+}
@@ -0,0 +1,95 @@
+package org.keycloak.example.jfr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Summarizes the playground events of the JFR recording into the latency percentiles of every step (EG. action, HTTP exchange with some endpoint, signing with
+ * some algorithm). Steps with the slowest 99th percentile are printed first. Depends just on the JDK and the event classes, so it can be run with the compiled classes:
+ * <pre>
+ * java -cp target/classes org.keycloak.example.jfr.RecordingAnalyzer recording.jfr
+ * </pre>
+ */
+public class RecordingAnalyzer {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java -cp target/classes " + RecordingAnalyzer.class.getName() + " <recording.jfr>");
+            System.exit(1);
+        }
+
+        Map<String, List<Long>> durationsByStep = new LinkedHashMap<>();
+        try (RecordingFile recording = new RecordingFile(Path.of(args[0]))) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                String step = getStep(event);
+                if (step != null) {
+                    durationsByStep.computeIfAbsent(step, key -> new ArrayList<>()).add(event.getDuration().toNanos() / 1000);
+                }
+            }
+        }
+
+        List<StepStats> stats = new ArrayList<>();
+        durationsByStep.forEach((step, durations) -> stats.add(new StepStats(step, durations)));
+        stats.sort(Comparator.comparingLong((StepStats stepStats) -> stepStats.p99Micros).reversed());
+
+        System.out.printf("%-80s %8s %10s %10s %10s %10s%n", "Step", "Count", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (StepStats stepStats : stats) {
+            System.out.printf("%-80s %8d %10.3f %10.3f %10.3f %10.3f%n", stepStats.step, stepStats.count, stepStats.p50Micros / 1000.0,
+                    stepStats.p90Micros / 1000.0, stepStats.p99Micros / 1000.0, stepStats.maxMicros / 1000.0);
+        }
+    }
+
+    // Null for the events, which are not from the playground
+    private static String getStep(RecordedEvent event) {
+        switch (event.getEventType().getName()) {
+            case ActionEvent.NAME:
+                return "action " + event.getString("action") + (event.getBoolean("failed") ? " (failed)" : "");
+            case HttpClientEvent.NAME:
+                return "http " + event.getString("method") + " " + event.getString("endpoint") + " " + event.getInt("status");
+            case SigningEvent.NAME:
+                return "signing " + event.getString("operation") + " " + event.getString("algorithm");
+            case SdJwtEvent.NAME:
+                return "sd-jwt " + event.getString("operation") + " " + event.getInt("claimCount") + " claims";
+            case TemplateEvent.NAME:
+                return "template " + event.getString("template");
+            default:
+                return null;
+        }
+    }
+
+
+    private static class StepStats {
+
+        private final String step;
+        private final int count;
+        private final long p50Micros;
+        private final long p90Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+
+        private StepStats(String step, List<Long> durations) {
+            long[] sorted = durations.stream().mapToLong(Long::longValue).sorted().toArray();
+            this.step = step;
+            this.count = sorted.length;
+            this.p50Micros = percentile(sorted, 0.5);
+            this.p90Micros = percentile(sorted, 0.9);
+            this.p99Micros = percentile(sorted, 0.99);
+            this.maxMicros = sorted[sorted.length - 1];
+        }
+
+        // Nearest-rank percentile of sorted values
+        private static long percentile(long[] sorted, double percentile) {
+            int rank = (int) Math.ceil(percentile * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.keycloak.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Parsing of the SD-JWT credential or creating the presentation from it
+ */
+@Name(SdJwtEvent.NAME)
+@Label("SD-JWT")
+@Category(ActionEvent.CATEGORY)
+@Description("Parsing of the SD-JWT credential or creating the presentation")
+@StackTrace(false)
+public class SdJwtEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "org.keycloak.example.SdJwt";
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Claim Count")
+    @Description("Number of the disclosed claims of the parsed credential or the presented claims")
+    public int claimCount;
+
+    public SdJwtEvent(String operation) {
+        this.operation = operation;
+    }
+}
@@ -0,0 +1,31 @@
+package org.keycloak.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Signing of the JWT created by the playground (DPoP proof, request object)
+ */
+@Name(SigningEvent.NAME)
+@Label("Signing")
+@Category(ActionEvent.CATEGORY)
+@Description("Signing of the DPoP proof or request object")
+@StackTrace(false)
+public class SigningEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "org.keycloak.example.Signing";
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    public SigningEvent(String operation, String algorithm) {
+        this.operation = operation;
+        this.algorithm = algorithm;
+    }
+}
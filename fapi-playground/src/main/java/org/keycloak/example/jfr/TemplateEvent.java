@@ -0,0 +1,32 @@
+package org.keycloak.example.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Rendering of the FreeMarker template to the HTTP response
+ */
+@Name(TemplateEvent.NAME)
+@Label("Template Rendering")
+@Category(ActionEvent.CATEGORY)
+@Description("Rendering of the FreeMarker template")
+@StackTrace(false)
+public class TemplateEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "org.keycloak.example.Template";
+
+    @Label("Template")
+    public String template;
+
+    @Label("Output Size")
+    @DataAmount
+    public long outputSize;
+
+    public TemplateEvent(String template) {
+        this.template = template;
+    }
+}
@@ -5,6 +5,8 @@ import org.keycloak.protocol.oid4vc.model.*;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class OID4VCIContext {
 
@@ -137,6 +139,34 @@ public class OID4VCIContext {
         preauthzOffer = null;
     }
 
+    /**
+     * @return credentials supported by the issuer with their display names
+     */
+    public static List<OID4VCCredential> getAvailableCredentials(CredentialIssuer credIssuer) {
+        return credIssuer.getCredentialsSupported().entrySet()
+                .stream()
+                .map(OID4VCIContext::getCredential)
+                .collect(Collectors.toList());
+    }
+
+    private static OID4VCCredential getCredential(Map.Entry<String, SupportedCredentialConfiguration> credConfig) {
+        OID4VCCredential cred = new OID4VCCredential();
+        cred.setId(credConfig.getKey());
+        cred.setDisplayName(credConfig.getKey());
+
+        // Prefer english displayName from credential metadata if available
+        CredentialMetadata credMetadata = credConfig.getValue().getCredentialMetadata();
+        if (credMetadata != null && credMetadata.getDisplay() != null) {
+            for (DisplayObject display : credMetadata.getDisplay()) {
+                if ("en".equalsIgnoreCase(display.getLocale()) || "en-EN".equalsIgnoreCase(display.getLocale())) {
+                    cred.setDisplayName(display.getName());
+                }
+            }
+        }
+
+        return cred;
+    }
+
     public static class OID4VCCredential {
 
         private String id;
@@ -2,6 +2,8 @@ package org.keycloak.example.oid4vci;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
 import org.jboss.logging.Logger;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.VCFormat;
@@ -9,6 +11,7 @@ import org.keycloak.example.Services;
 import org.keycloak.example.bean.InfoBean;
 import org.keycloak.example.handlers.ActionHandler;
 import org.keycloak.example.handlers.ActionHandlerContext;
+import org.keycloak.example.jfr.SdJwtEvent;
 import org.keycloak.example.util.*;
 import org.keycloak.jose.jws.JWSHeader;
 import org.keycloak.jose.jws.JWSInput;
@@ -17,6 +20,7 @@ import org.keycloak.protocol.oid4vc.issuance.OID4VCAuthorizationDetailsParser;
 import org.keycloak.protocol.oid4vc.issuance.requiredactions.VerifiableCredentialOfferAction;
 import org.keycloak.protocol.oid4vc.model.*;
 import org.keycloak.representations.IDToken;
+import org.keycloak.representations.oidc.OIDCClientRepresentation;
 import org.keycloak.sdjwt.vp.SdJwtVP;
 import org.keycloak.testsuite.util.oauth.AbstractHttpPostRequest;
 import org.keycloak.testsuite.util.oauth.AccessTokenResponse;
@@ -35,12 +39,12 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import static org.keycloak.OID4VCConstants.OPENID_CREDENTIAL;
 import static org.keycloak.constants.OID4VCIConstants.VERIFIABLE_CREDENTIAL_OFFER_PROVIDER_ID;
 import static org.keycloak.example.util.MyConstants.REALM_NAME;
 
+@ApplicationScoped
 public class OID4VCIHandler implements ActionHandler {
 
     private static final Logger log = Logger.getLogger(OID4VCIHandler.class);
@@ -91,23 +95,19 @@ public class OID4VCIHandler implements ActionHandler {
     }
 
     private InfoBean handleOID4VCIWellKnownEndpointAction(ActionHandlerContext actionContext) {
-        try {
-            WebRequestContext<CredentialIssuerMetadataRequest, CredentialIssuerMetadataResponse> ctx = invokeOID4VCIWellKnownEndpoint();
-            CredentialIssuer credentialIssuer = ctx.getResponse().getMetadata();
+        WebRequestContext<CredentialIssuerMetadataRequest, CredentialIssuerMetadataResponse> ctx = invokeOID4VCIWellKnownEndpoint();
+        CredentialIssuer credentialIssuer = ctx.getResponse().getMetadata();
 
-            OID4VCIContext oid4VCIContext = actionContext.getSession().getOrCreateOID4VCIContext();
-            oid4VCIContext.setCredentialIssuerMetadata(credentialIssuer);
+        OID4VCIContext oid4VCIContext = actionContext.getSession().getOrCreateOID4VCIContext();
+        oid4VCIContext.setCredentialIssuerMetadata(credentialIssuer);
 
-            List<OID4VCIContext.OID4VCCredential> availableCreds = getAvailableCredentials(credentialIssuer);
-            log.infof("Available OID4VC credentials: %s", availableCreds);
-            oid4VCIContext.setAvailableCredentials(availableCreds);
+        List<OID4VCIContext.OID4VCCredential> availableCreds = OID4VCIContext.getAvailableCredentials(credentialIssuer);
+        log.infof("Available OID4VC credentials: %s", availableCreds);
+        oid4VCIContext.setAvailableCredentials(availableCreds);
 
-            return new InfoBean(
-                    "OID4VCI well-known request", JsonSerialization.writeValueAsPrettyString(OAuthClientUtil.getRequestInfo(ctx.getRequest())),
-                    "OID4VCI well-known response", JsonSerialization.writeValueAsPrettyString(credentialIssuer));
-        } catch (IOException ioe) {
-            throw new MyException("Error when trying to deserialize OID4VCI well-known response to string", ioe);
-        }
+        return new InfoBean(
+                "OID4VCI well-known request", InfoBean.json(OAuthClientUtil.getRequestInfo(ctx.getRequest())),
+                "OID4VCI well-known response", InfoBean.json(credentialIssuer));
     }
 
     private InfoBean handleAuthzCodeFlow(ActionHandlerContext actionContext) {
@@ -129,7 +129,7 @@ public class OID4VCIHandler implements ActionHandler {
         SupportedCredentialConfiguration supportedCredConfig = credIssuerMetadata.getCredentialsSupported().get(oid4VCIContext.getSelectedCredentialId());
         String scope = supportedCredConfig.getScope();
 
-        String origLoginUrl = LoginUtil.getAuthorizationRequestUrl(session.getOidcConfigContext(), actionContext.getUriInfo(), scope).build();
+        String origLoginUrl = LoginUtil.getAuthorizationRequestUrl(session, session.getOidcConfigContext(), actionContext.getUriInfo(), scope).build();
 
         /// Add authorization_details to it
         List<OID4VCAuthorizationDetail> authzDetails = getAuthorizationDetailsForAuthzCodeFlow(credIssuerMetadata, oid4VCIContext.getSelectedCredentialId());
@@ -140,7 +140,7 @@ public class OID4VCIHandler implements ActionHandler {
 
             actionContext.getFmAttributes().put(Constants.AUTH_REQUEST_URL, loginUrl);
                 return new InfoBean(
-                        "Authorization details for OIDC authentication request", JsonSerialization.writeValueAsPrettyString(authzDetails),
+                        "Authorization details for OIDC authentication request", InfoBean.json(authzDetails),
                         "OIDC Authentication Request URL", loginUrl);
         } catch (IOException ioe) {
             throw new MyException("I/O exception when encode/decode authz details", ioe);
@@ -190,41 +190,48 @@ public class OID4VCIHandler implements ActionHandler {
         if (lastTokenResponse == null || lastTokenResponse.getResponse().getAccessToken() == null) {
             return new InfoBean("No Token Response", "No token response yet. Please login first.");
         } else {
-            try {
-                OID4VCIContext oid4VCIContext = session.getOrCreateOID4VCIContext();
-                collectOID4VCIConfigParams(actionContext.getParams(), oid4VCIContext);
-
-                if (oid4VCIContext.getCredentialIssuerMetadata() == null) {
-                    return new InfoBean("No credential issuer metadata", "Please first obtain OID4VCI credential issuer metadata from OID4VCI well-known endpoint");
-                }
-
-                if (oid4VCIContext.getSelectedCredentialId() == null && oid4VCIContext.getSelectedCredentialId().isBlank()) {
-                    return new InfoBean("No selected", "Please select OID4VCI credential to be used from available credentials");
-                }
+            OID4VCIContext oid4VCIContext = session.getOrCreateOID4VCIContext();
+            collectOID4VCIConfigParams(actionContext.getParams(), oid4VCIContext);
 
-                // Step 1: Invoke credential-offer creation to Keycloak
-                WebRequestContext<CredentialOfferUriRequest, CredentialOfferUriResponse> credentialOfferCreation = invokeCredentialOfferCreation(oid4VCIContext, lastTokenResponse.getResponse(), oid4VCIContext.getSelectedCredentialId());
-                oid4VCIContext.setCredentialOfferURI(credentialOfferCreation.getResponse().getCredentialOfferURI());
+            if (oid4VCIContext.getCredentialIssuerMetadata() == null) {
+                return new InfoBean("No credential issuer metadata", "Please first obtain OID4VCI credential issuer metadata from OID4VCI well-known endpoint");
+            }
 
-                // Step 2: Invoke credential-offer URI
-                CredentialOfferURI credentialOfferUri = oid4VCIContext.getCredentialOfferURI();
-                WebRequestContext<CredentialOfferRequest, CredentialOfferResponse> credentialOffer = invokeCredentialOfferURI(credentialOfferUri);
-                oid4VCIContext.setCredentialsOffer(credentialOffer.getResponse().getCredentialsOffer());
+            if (oid4VCIContext.getSelectedCredentialId() == null && oid4VCIContext.getSelectedCredentialId().isBlank()) {
+                return new InfoBean("No selected", "Please select OID4VCI credential to be used from available credentials");
+            }
 
-                // Step 3: Token-request with pre-authorized code
-                WebRequestContext<PreAuthorizedCodeGrantRequest, AccessTokenResponse> tokenResponse = triggerTokenRequestOfPreAuthorizationGrant(session.getAuthServerInfo().getTokenEndpoint(), credentialOffer.getResponse().getCredentialsOffer(), session);
+            // Step 1: Invoke credential-offer creation to Keycloak
+            WebRequestContext<CredentialOfferUriRequest, CredentialOfferUriResponse> credentialOfferCreation = invokeCredentialOfferCreation(session, oid4VCIContext, lastTokenResponse.getResponse(), oid4VCIContext.getSelectedCredentialId());
+            oid4VCIContext.setCredentialOfferURI(credentialOfferCreation.getResponse().getCredentialOfferURI());
 
+            // Step 2: Invoke credential-offer URI
+            CredentialOfferURI credentialOfferUri = oid4VCIContext.getCredentialOfferURI();
+            ReactiveHttpClient reactiveHttpClient = Services.instance().getReactiveHttpClient();
+            if (reactiveHttpClient != null) {
+                PreAuthzGrantResult result = ReactiveHttpClient.await(invokeCredentialOfferAndTokenRequest(session, reactiveHttpClient, credentialOfferUri));
                 return new InfoBean(
-                        "Request 1: Credential offer creation request (admin)", JsonSerialization.writeValueAsPrettyString(OAuthClientUtil.getRequestInfo(credentialOfferCreation.getRequest())),
-                        "Response 1: Credential offer creation response (admin)", JsonSerialization.writeValueAsPrettyString(credentialOfferCreation.getResponse()),
-                        "Request 2: Credential Offer request (user)", JsonSerialization.writeValueAsPrettyString(OAuthClientUtil.getRequestInfo(credentialOffer.getRequest())),
-                        "Response 2: Credential Offer response (user)", JsonSerialization.writeValueAsPrettyString(credentialOffer.getResponse()),
-                        "Request 3: Pre-authz grant Token request (user)", JsonSerialization.writeValueAsPrettyString(OAuthClientUtil.getRequestInfo(tokenResponse.getRequest())),
-                        "Response 3: Pre-authz grant Token response (user)", JsonSerialization.writeValueAsPrettyString(tokenResponse.getResponse()));
-
-            } catch (IOException ioe) {
-                throw new MyException("Error when trying to deserialize response to string", ioe);
+                        "Request 1: Credential offer creation request (admin)", InfoBean.json(OAuthClientUtil.getRequestInfo(credentialOfferCreation.getRequest())),
+                        "Response 1: Credential offer creation response (admin)", InfoBean.json(credentialOfferCreation.getResponse()),
+                        "Request 2: Credential Offer request (user)", InfoBean.json(OAuthClientUtil.getRequestInfo(result.credentialOffer.getRequest())),
+                        "Response 2: Credential Offer response (user)", InfoBean.json(result.credentialOffer.getResponse()),
+                        "Request 3: Pre-authz grant Token request (user)", InfoBean.json(OAuthClientUtil.getRequestInfo(result.tokenResponse.getRequest())),
+                        "Response 3: Pre-authz grant Token response (user)", InfoBean.json(result.tokenResponse.getResponse()));
             }
+
+            WebRequestContext<CredentialOfferRequest, CredentialOfferResponse> credentialOffer = invokeCredentialOfferURI(session, credentialOfferUri);
+            oid4VCIContext.setCredentialsOffer(credentialOffer.getResponse().getCredentialsOffer());
+
+            // Step 3: Token-request with pre-authorized code
+            WebRequestContext<PreAuthorizedCodeGrantRequest, AccessTokenResponse> tokenResponse = triggerTokenRequestOfPreAuthorizationGrant(session.getAuthServerInfo().getTokenEndpoint(), credentialOffer.getResponse().getCredentialsOffer(), session);
+
+            return new InfoBean(
+                    "Request 1: Credential offer creation request (admin)", InfoBean.json(OAuthClientUtil.getRequestInfo(credentialOfferCreation.getRequest())),
+                    "Response 1: Credential offer creation response (admin)", InfoBean.json(credentialOfferCreation.getResponse()),
+                    "Request 2: Credential Offer request (user)", InfoBean.json(OAuthClientUtil.getRequestInfo(credentialOffer.getRequest())),
+                    "Response 2: Credential Offer response (user)", InfoBean.json(credentialOffer.getResponse()),
+                    "Request 3: Pre-authz grant Token request (user)", InfoBean.json(OAuthClientUtil.getRequestInfo(tokenResponse.getRequest())),
+                    "Response 3: Pre-authz grant Token response (user)", InfoBean.json(tokenResponse.getResponse()));
         }
     }
 
@@ -245,23 +252,29 @@ public class OID4VCIHandler implements ActionHandler {
         }
         log.infof("Calling uri '%s' to retrive credential offer", credentialOfferUri.getCredentialOfferUri());
 
-        try {
-            // Step 1: Invoke credential-offer URI to obtain reference
-            WebRequestContext<CredentialOfferRequest, CredentialOfferResponse> credentialOffer = invokeCredentialOfferURI(credentialOfferUri);
-            oid4VCIContext.setCredentialsOffer(credentialOffer.getResponse().getCredentialsOffer());
-
-            // Step 2: Token-request with pre-authorized code
-            WebRequestContext<PreAuthorizedCodeGrantRequest, AccessTokenResponse> tokenResponse = triggerTokenRequestOfPreAuthorizationGrant(session.getAuthServerInfo().getTokenEndpoint(),
-                    credentialOffer.getResponse().getCredentialsOffer(), session);
-
+        ReactiveHttpClient reactiveHttpClient = Services.instance().getReactiveHttpClient();
+        if (reactiveHttpClient != null) {
+            PreAuthzGrantResult result = ReactiveHttpClient.await(invokeCredentialOfferAndTokenRequest(session, reactiveHttpClient, credentialOfferUri));
             return new InfoBean(
-                    "Request 1: Credential Offer request", JsonSerialization.writeValueAsPrettyString(OAuthClientUtil.getRequestInfo(credentialOffer.getRequest())),
-                    "Response 1: Credential Offer response", JsonSerialization.writeValueAsPrettyString(credentialOffer.getResponse()),
-                    "Request 2: Pre-authz grant Token request", JsonSerialization.writeValueAsPrettyString(OAuthClientUtil.getRequestInfo(tokenResponse.getRequest())),
-                    "Response 2: Pre-authz grant Token response", JsonSerialization.writeValueAsPrettyString(tokenResponse.getResponse()));
-        } catch (IOException ioe) {
-            throw new MyException("Error when trying to deserialize response to string", ioe);
+                    "Request 1: Credential Offer request", InfoBean.json(OAuthClientUtil.getRequestInfo(result.credentialOffer.getRequest())),
+                    "Response 1: Credential Offer response", InfoBean.json(result.credentialOffer.getResponse()),
+                    "Request 2: Pre-authz grant Token request", InfoBean.json(OAuthClientUtil.getRequestInfo(result.tokenResponse.getRequest())),
+                    "Response 2: Pre-authz grant Token response", InfoBean.json(result.tokenResponse.getResponse()));
         }
+
+        // Step 1: Invoke credential-offer URI to obtain reference
+        WebRequestContext<CredentialOfferRequest, CredentialOfferResponse> credentialOffer = invokeCredentialOfferURI(session, credentialOfferUri);
+        oid4VCIContext.setCredentialsOffer(credentialOffer.getResponse().getCredentialsOffer());
+
+        // Step 2: Token-request with pre-authorized code
+        WebRequestContext<PreAuthorizedCodeGrantRequest, AccessTokenResponse> tokenResponse = triggerTokenRequestOfPreAuthorizationGrant(session.getAuthServerInfo().getTokenEndpoint(),
+                credentialOffer.getResponse().getCredentialsOffer(), session);
+
+        return new InfoBean(
+                "Request 1: Credential Offer request", InfoBean.json(OAuthClientUtil.getRequestInfo(credentialOffer.getRequest())),
+                "Response 1: Credential Offer response", InfoBean.json(credentialOffer.getResponse()),
+                "Request 2: Pre-authz grant Token request", InfoBean.json(OAuthClientUtil.getRequestInfo(tokenResponse.getRequest())),
+                "Response 2: Pre-authz grant Token response", InfoBean.json(tokenResponse.getResponse()));
     }
 
     private CredentialOfferURI getCredentialOfferUri(String fullOfferUri) {
@@ -286,7 +299,7 @@ public class OID4VCIHandler implements ActionHandler {
 
         CredentialIssuerMetadataRequest request = oauth.oid4vc().issuerMetadataRequest()
                 .endpoint(oid4vciWellKnownUrl);
-        CredentialIssuerMetadataResponse response = request.send();
+        CredentialIssuerMetadataResponse response = HttpExchangeRecorder.send(request, request::send);
         return new WebRequestContext<>(request, response);
     }
 
@@ -305,34 +318,8 @@ public class OID4VCIHandler implements ActionHandler {
         oid4vciCtx.setPreauthzOffer(preauthzOffer);
     }
 
-    private List<OID4VCIContext.OID4VCCredential> getAvailableCredentials(CredentialIssuer credIssuer) {
-        return credIssuer.getCredentialsSupported().entrySet()
-                .stream()
-                .map(this::getCredential)
-                .collect(Collectors.toList());
-    }
-
-    private OID4VCIContext.OID4VCCredential getCredential(Map.Entry<String, SupportedCredentialConfiguration> credConfig) {
-        OID4VCIContext.OID4VCCredential cred = new OID4VCIContext.OID4VCCredential();
-        cred.setId(credConfig.getKey());
-        cred.setDisplayName(credConfig.getKey());
-
-        // Prefer english displayName from credential metadata if available
-        CredentialMetadata credMetadata = credConfig.getValue().getCredentialMetadata();
-        if (credMetadata != null && credMetadata.getDisplay() != null) {
-            for (DisplayObject display : credMetadata.getDisplay()) {
-                if ("en".equalsIgnoreCase(display.getLocale()) || "en-EN".equalsIgnoreCase(display.getLocale())) {
-                    cred.setDisplayName(display.getName());
-                }
-            }
-        }
-
-        return cred;
-    }
-
-
-    private static WebRequestContext<CredentialOfferUriRequest, CredentialOfferUriResponse> invokeCredentialOfferCreation(OID4VCIContext oid4vciCtx, AccessTokenResponse lastTokenResponse, String credentialConfigId) {
-        OAuthClient oauth = Services.instance().getOauthClient();
+    private static WebRequestContext<CredentialOfferUriRequest, CredentialOfferUriResponse> invokeCredentialOfferCreation(SessionData session, OID4VCIContext oid4vciCtx, AccessTokenResponse lastTokenResponse, String credentialConfigId) {
+        OAuthClient oauth = session.getOauthClient();
 
         try {
             IDToken idToken = new JWSInput(lastTokenResponse.getIdToken()).readJsonContent(IDToken.class);
@@ -345,7 +332,7 @@ public class OID4VCIHandler implements ActionHandler {
                     .bearerToken(lastTokenResponse.getAccessToken())
                     .targetUser(username);
 
-            CredentialOfferUriResponse  credentialOfferURIResponse = credRequest.send();
+            CredentialOfferUriResponse  credentialOfferURIResponse = HttpExchangeRecorder.send(credRequest, credRequest::send);
 
             if (credentialOfferURIResponse.getError() != null) {
                 throw new MyException("Error when invoking credential creation endpoint. Error: " + credentialOfferURIResponse.getError() +
@@ -358,10 +345,10 @@ public class OID4VCIHandler implements ActionHandler {
         }
     }
 
-    private static WebRequestContext<CredentialOfferRequest, CredentialOfferResponse> invokeCredentialOfferURI(CredentialOfferURI credOfferURI) {
-        OAuthClient oauth = Services.instance().getOauthClient();
+    private static WebRequestContext<CredentialOfferRequest, CredentialOfferResponse> invokeCredentialOfferURI(SessionData session, CredentialOfferURI credOfferURI) {
+        OAuthClient oauth = session.getOauthClient();
         CredentialOfferRequest credentialOfferRequest = oauth.oid4vc().credentialOfferRequest(credOfferURI);
-        CredentialOfferResponse credentialOfferResponse =credentialOfferRequest.send();
+        CredentialOfferResponse credentialOfferResponse = HttpExchangeRecorder.send(credentialOfferRequest, credentialOfferRequest::send);
         return new WebRequestContext<>(credentialOfferRequest, credentialOfferResponse);
     }
 
@@ -369,11 +356,11 @@ public class OID4VCIHandler implements ActionHandler {
         String preAuthorizedCode = credentialsOffer.getPreAuthorizedCode();
 
         try {
-            PreAuthorizedCodeGrantRequest preAuthzGrantRequest = Services.instance().getOauthClient().client(session.getRegisteredClient().getClientId())
+            PreAuthorizedCodeGrantRequest preAuthzGrantRequest = session.getOauthClient().client(session.getRegisteredClient().getClientId())
                     .oid4vc()
                     .preAuthorizedCodeGrantRequest(preAuthorizedCode)
                     .endpoint(tokenEndpoint);
-            AccessTokenResponse tokenResponse = preAuthzGrantRequest.send();
+            AccessTokenResponse tokenResponse = HttpExchangeRecorder.send(preAuthzGrantRequest, preAuthzGrantRequest::send);
 
             List<OID4VCAuthorizationDetail> authzDetails = tokenResponse.getOID4VCAuthorizationDetails();
             if (authzDetails.size() != 1) {
@@ -392,13 +379,51 @@ public class OID4VCIHandler implements ActionHandler {
         }
     }
 
-    private static WebRequestContext<Oid4vcCredentialRequest, Oid4vcCredentialResponse> triggerCredentialRequest(OID4VCIContext oid4VCIContext) {
-        OAuthClient oauth = Services.instance().getOauthClient();
+    // Credential offer and pre-authorized code grant token request chained on the event loop. The OID4VCI context of the session is updated once both are done
+    private static Uni<PreAuthzGrantResult> invokeCredentialOfferAndTokenRequest(SessionData session, ReactiveHttpClient reactiveHttpClient, CredentialOfferURI credOfferURI) {
+        String tokenEndpoint = session.getAuthServerInfo().getTokenEndpoint();
+        OIDCClientRepresentation registeredClient = session.getRegisteredClient();
+        ReactiveHttpClient.Request credentialOfferRequest = reactiveHttpClient.doGet(credOfferURI.getCredentialOfferUri());
+
+        return credentialOfferRequest.send()
+                .onItem().transform(response -> new WebRequestContext<>(credentialOfferRequest, response.asJson(CredentialsOffer.class)))
+                .onItem().transformToUni(credentialOffer -> {
+                    ReactiveHttpClient.Request tokenRequest = reactiveHttpClient.doPost(tokenEndpoint)
+                            .param(OAuth2Constants.GRANT_TYPE, PreAuthorizedCodeGrant.PRE_AUTH_GRANT_TYPE)
+                            .param(PreAuthorizedCodeGrant.CODE_REQUEST_PARAM, credentialOffer.getResponse().getPreAuthorizedCode());
+                    if (registeredClient.getClientSecret() != null) {
+                        tokenRequest.authBasic(registeredClient.getClientId(), registeredClient.getClientSecret());
+                    } else {
+                        tokenRequest.param(OAuth2Constants.CLIENT_ID, registeredClient.getClientId());
+                    }
+                    return tokenRequest.send()
+                            .onItem().transform(response -> new PreAuthzGrantResult(credentialOffer,
+                                    new WebRequestContext<>(tokenRequest, response.asJson(org.keycloak.representations.AccessTokenResponse.class))));
+                })
+                .onItem().invoke(result -> {
+                    org.keycloak.representations.AccessTokenResponse tokenResponse = result.tokenResponse.getResponse();
+                    List<OID4VCAuthorizationDetail> authzDetails = tokenResponse.getAuthorizationDetails() == null ? Collections.emptyList() : tokenResponse.getAuthorizationDetails()
+                            .stream()
+                            .map(authDetail -> authDetail.asSubtype(OID4VCAuthorizationDetail.class))
+                            .toList();
+                    if (authzDetails.size() != 1) {
+                        throw new MyException("Unexpected size of the authzDetails. Size was " + authzDetails.size() + ". The response had authorization details: " + tokenResponse.getAuthorizationDetails());
+                    }
+
+                    OID4VCIContext oid4vciCtx = session.getOrCreateOID4VCIContext();
+                    oid4vciCtx.setCredentialsOffer(result.credentialOffer.getResponse());
+                    oid4vciCtx.setAuthzDetails(authzDetails.get(0));
+                    oid4vciCtx.setAccessToken(tokenResponse.getToken());
+                });
+    }
+
+    private static WebRequestContext<Oid4vcCredentialRequest, Oid4vcCredentialResponse> triggerCredentialRequest(SessionData session, OID4VCIContext oid4VCIContext) {
+        OAuthClient oauth = session.getOauthClient();
         try {
             Oid4vcCredentialRequest credentialRequest = oauth.oid4vc().credentialRequest()
                     .credentialIdentifier(oid4VCIContext.getAuthzDetails().getCredentialIdentifiers().get(0))
                     .bearerToken(oid4VCIContext.getAccessToken());
-            Oid4vcCredentialResponse credentialResponse = credentialRequest.send();
+            Oid4vcCredentialResponse credentialResponse = HttpExchangeRecorder.send(credentialRequest, credentialRequest::send);
             return new WebRequestContext<>(credentialRequest, credentialResponse);
         } catch (Exception e) {
             throw new MyException("Failed to invoke credential request or parse credential response. Details: " + e.getMessage(), e);
@@ -414,21 +439,21 @@ public class OID4VCIHandler implements ActionHandler {
         }
 
         try {
-            WebRequestContext<Oid4vcCredentialRequest, Oid4vcCredentialResponse> credentialResponse = triggerCredentialRequest(oid4vciCtx);
+            WebRequestContext<Oid4vcCredentialRequest, Oid4vcCredentialResponse> credentialResponse = triggerCredentialRequest(actionContext.getSession(), oid4vciCtx);
             Map<String, Object> credRequest = OAuthClientUtil.getRequestInfo(credentialResponse.getRequest());
             credRequest.put("Body", credentialResponse.getRequest().getCredentialRequest());
 
-            String credentialResponseStr;
+            Object credentialResponseOutput;
             try {
                 oid4vciCtx.setCredentialResponse(credentialResponse.getResponse().getCredentialResponse());
-                credentialResponseStr = JsonSerialization.writeValueAsPrettyString(credentialResponse.getResponse());
+                credentialResponseOutput = InfoBean.json(credentialResponse.getResponse());
             } catch (IllegalStateException iae) {
-                credentialResponseStr = "IllegalStateException: " + iae.getMessage();
+                credentialResponseOutput = "IllegalStateException: " + iae.getMessage();
             }
 
             return new InfoBean(
-                    "Credential request", JsonSerialization.writeValueAsPrettyString(credRequest),
-                    "Credential response", credentialResponseStr);
+                    "Credential request", InfoBean.json(credRequest),
+                    "Credential response", credentialResponseOutput);
         } catch (Exception ioe) {
             throw new MyException("Unexpected exception when preparing/sending credential request: " + ioe.getMessage(), ioe);
         }
@@ -442,26 +467,17 @@ public class OID4VCIHandler implements ActionHandler {
             CredentialResponse credentialResponse = oid4vciCtx.getCredentialResponse();
             String credentialStr = credentialResponse.getCredentials().get(0).getCredential().toString();
 
-            try {
-                // Assumptions it is Sd-JWT VC. TODO: Make it working for W3C credentials...
-                SdJwtVP sdJWTVP = SdJwtVP.of(credentialStr);
-                JWSHeader jwsHeader = sdJWTVP.getIssuerSignedJWT().getJwsHeader();
-                JsonNode payloadNode = sdJWTVP.getIssuerSignedJWT().getPayload();
+            // Assumptions it is Sd-JWT VC. TODO: Make it working for W3C credentials...
+            SdJwtVP sdJWTVP = parseSdJwt(credentialStr);
+            JWSHeader jwsHeader = sdJWTVP.getIssuerSignedJWT().getJwsHeader();
+            JsonNode payloadNode = sdJWTVP.getIssuerSignedJWT().getPayload();
 
-                StringBuilder claimsStr = new StringBuilder("{");
-                for (Map.Entry<String, ArrayNode> claim : sdJWTVP.getClaims().entrySet()) {
-                    claimsStr.append(" " + claim.getKey() + " = " + JsonSerialization.writeValueAsPrettyString(claim.getValue()) + "\n");
-                }
-                claimsStr.append("}");
 
-                return new InfoBean(
-                        "Plain-credential", credentialStr,
-                        "Sd-JWT credential - header", JsonSerialization.writeValueAsPrettyString(jwsHeader),
-                        "Sd-JWT credential - payload", JsonSerialization.writeValueAsPrettyString(payloadNode),
-                        "Sd-JWT disclosed claims", claimsStr.toString());
-            } catch (IOException ioe) {
-                throw new MyException("Exception when displaying latest verifiable credential", ioe);
-            }
+            return new InfoBean(
+                    "Plain-credential", credentialStr,
+                    "Sd-JWT credential - header", InfoBean.json(jwsHeader),
+                    "Sd-JWT credential - payload", InfoBean.json(payloadNode),
+                    "Sd-JWT disclosed claims", disclosedClaims(sdJWTVP.getClaims()));
         }
     }
 
@@ -477,36 +493,59 @@ public class OID4VCIHandler implements ActionHandler {
 
             List<String> claimsToPresent = oid4vciCtx.getClaimsToPresent() == null ? Collections.emptyList() : List.of(oid4vciCtx.getClaimsToPresent().split(","));
 
-            try {
-                // Assumptions it is Sd-JWT VC. TODO: Make it working for W3C credentials...
-                SdJwtVP sdJWTVP = SdJwtVP.of(credentialStr);
+            // Assumptions it is Sd-JWT VC. TODO: Make it working for W3C credentials...
+            SdJwtVP sdJWTVP = parseSdJwt(credentialStr);
 
-                String newSdJWT = sdJWTVP.presentWithSpecifiedClaims (claimsToPresent, false, null, null);
-                log.infof("New sd JWT: %s",  newSdJWT);
+            String newSdJWT = presentSdJwt(sdJWTVP, claimsToPresent);
+            log.infof("New sd JWT: %s",  newSdJWT);
 
-                SdJwtVP presentation = SdJwtVP.of(newSdJWT);
+            SdJwtVP presentation = parseSdJwt(newSdJWT);
 
-                JWSHeader jwsHeader = presentation.getIssuerSignedJWT().getJwsHeader();
-                JsonNode payloadNode = presentation.getIssuerSignedJWT().getPayload();
+            JWSHeader jwsHeader = presentation.getIssuerSignedJWT().getJwsHeader();
+            JsonNode payloadNode = presentation.getIssuerSignedJWT().getPayload();
 
-                StringBuilder claimsStr = new StringBuilder("{");
-                for (Map.Entry<String, ArrayNode> claim : presentation.getClaims().entrySet()) {
-                    claimsStr.append(" " + claim.getKey() + " = " + JsonSerialization.writeValueAsPrettyString(claim.getValue()) + "\n");
-                }
-                claimsStr.append("}");
 
-                return new InfoBean(
-                        "Plain-presentation", credentialStr,
-                        "Sd-JWT presentation - header", JsonSerialization.writeValueAsPrettyString(jwsHeader),
-                        "Sd-JWT presentation - payload", JsonSerialization.writeValueAsPrettyString(payloadNode),
-                        "Sd-JWT presentation - disclosed claims", claimsStr.toString());
-            } catch (IOException ioe) {
-                throw new MyException("Exception when displaying latest presentation", ioe);
-            }
+            return new InfoBean(
+                    "Plain-presentation", credentialStr,
+                    "Sd-JWT presentation - header", InfoBean.json(jwsHeader),
+                    "Sd-JWT presentation - payload", InfoBean.json(payloadNode),
+                    "Sd-JWT presentation - disclosed claims", disclosedClaims(presentation.getClaims()));
         }
 
     }
 
+    private static SdJwtVP parseSdJwt(String sdJwt) {
+        SdJwtEvent event = new SdJwtEvent("parse");
+        event.begin();
+        SdJwtVP sdJwtVP = SdJwtVP.of(sdJwt);
+        event.end();
+        event.claimCount = event.shouldCommit() ? sdJwtVP.getClaims().size() : 0;
+        event.commit();
+        return sdJwtVP;
+    }
+
+    private static String presentSdJwt(SdJwtVP sdJwtVP, List<String> claimsToPresent) {
+        SdJwtEvent event = new SdJwtEvent("present");
+        event.begin();
+        String presentation = sdJwtVP.presentWithSpecifiedClaims(claimsToPresent, false, null, null);
+        event.claimCount = claimsToPresent.size();
+        event.commit();
+        return presentation;
+    }
+
+    // Every disclosed claim as "name = [salt, name, value]" with the disclosure pretty-printed
+    private static InfoBean.Content disclosedClaims(Map<String, ArrayNode> claims) {
+        return out -> {
+            out.write("{");
+            for (Map.Entry<String, ArrayNode> claim : claims.entrySet()) {
+                out.write(" " + claim.getKey() + " = ");
+                InfoBean.json(claim.getValue()).writeTo(out);
+                out.write("\n");
+            }
+            out.write("}");
+        };
+    }
+
     private InfoBean handleAIAFlow(ActionHandlerContext actionContext) {
         OID4VCIContext oid4vciCtx = actionContext.getSession().getOrCreateOID4VCIContext();
         collectOID4VCIConfigParams(actionContext.getParams(), oid4vciCtx);
@@ -517,7 +556,7 @@ public class OID4VCIHandler implements ActionHandler {
 
         String clientId = actionContext.getSession().getRegisteredClient().getClientId();
 
-        LoginUrlBuilder loginUrl = LoginUtil.getAuthorizationRequestUrl(actionContext.getSession().getOidcConfigContext(), actionContext.getUriInfo(), null);
+        LoginUrlBuilder loginUrl = LoginUtil.getAuthorizationRequestUrl(actionContext.getSession(), actionContext.getSession().getOidcConfigContext(), actionContext.getUriInfo(), null);
         VerifiableCredentialOfferAction.CredentialOfferActionConfig cfg = getKcActionConfig(oid4vciCtx.getSelectedCredentialId(), clientId);
         String kcAction = getKcActionParameter(cfg);
         loginUrl.kcAction(kcAction);
@@ -546,4 +585,16 @@ public class OID4VCIHandler implements ActionHandler {
         }
     }
 
+
+    private static class PreAuthzGrantResult {
+
+        private final WebRequestContext<ReactiveHttpClient.Request, CredentialsOffer> credentialOffer;
+        private final WebRequestContext<ReactiveHttpClient.Request, org.keycloak.representations.AccessTokenResponse> tokenResponse;
+
+        private PreAuthzGrantResult(WebRequestContext<ReactiveHttpClient.Request, CredentialsOffer> credentialOffer,
+                                    WebRequestContext<ReactiveHttpClient.Request, org.keycloak.representations.AccessTokenResponse> tokenResponse) {
+            this.credentialOffer = credentialOffer;
+            this.tokenResponse = tokenResponse;
+        }
+    }
 }
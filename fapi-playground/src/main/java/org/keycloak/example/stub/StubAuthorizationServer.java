@@ -0,0 +1,601 @@
+package org.keycloak.example.stub;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.http.HttpServerRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.jboss.logging.Logger;
+import org.keycloak.OAuth2Constants;
+import org.keycloak.OID4VCConstants;
+import org.keycloak.common.VerificationException;
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.common.util.KeyUtils;
+import org.keycloak.common.util.SecretGenerator;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.example.util.Constants;
+import org.keycloak.example.util.DPoPSigner;
+import org.keycloak.example.util.JWSSignerContext;
+import org.keycloak.example.util.JWSVerifierContext;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKBuilder;
+import org.keycloak.jose.jwk.JWKParser;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSHeader;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
+import org.keycloak.jose.jws.crypto.HashUtils;
+import org.keycloak.protocol.oid4vc.model.CredentialsOffer;
+import org.keycloak.protocol.oid4vc.model.OID4VCAuthorizationDetail;
+import org.keycloak.protocol.oidc.OIDCLoginProtocol;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.AccessTokenResponse;
+import org.keycloak.representations.AuthorizationDetailsJSONRepresentation;
+import org.keycloak.representations.IDToken;
+import org.keycloak.representations.JsonWebToken;
+import org.keycloak.representations.RefreshToken;
+import org.keycloak.representations.dpop.DPoP;
+import org.keycloak.representations.oidc.OIDCClientRepresentation;
+import org.keycloak.util.JWKSUtils;
+import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.TokenUtil;
+
+/**
+ * State of the stub authorization server (registered clients, issued codes, pushed authorization requests and OID4VCI offers) and the issuing and verification
+ * of its tokens. All the state is kept in memory and it is lost when the application is stopped. Every entry expires (registered clients after
+ * "playground.stub-as.client-lifespan" seconds), so the state does not grow during the long load tests.
+ *
+ * Stub server is available just when the application is built with "playground.stub-as.enabled" set to true. It mimics the endpoints of the Keycloak server
+ * (with same URL layout under "/stub-as"), so the playground can be pointed to it by setting "playground.server-root". The user is always authenticated and the
+ * consent is always granted, so the flows can be run without any browser interaction. Every response is delayed by "playground.stub-as.latency" milliseconds,
+ * which simulates the processing time of the real server without holding any thread.
+ */
+@IfBuildProperty(name = "playground.stub-as.enabled", stringValue = "true")
+@ApplicationScoped
+public class StubAuthorizationServer {
+
+    private static final Logger log = Logger.getLogger(StubAuthorizationServer.class);
+
+    static final String ROOT_PATH = "/stub-as";
+
+    static final String USERNAME = "john";
+    static final String SUBJECT = "4e3a9f1c-2b7d-4c85-a6f0-1d9e8b5c7a32";
+
+    private static final String REQUEST_URI_PREFIX = "urn:ietf:params:oauth:request_uri:";
+
+    // Expired entries are removed once there are more entries in the map
+    private static final int MAX_PENDING_ENTRIES = 10000;
+
+    private final Map<String, Expiring<OIDCClientRepresentation>> clients = new ConcurrentHashMap<>();
+    private final Map<String, Expiring<AuthorizationCode>> codes = new ConcurrentHashMap<>();
+    private final Map<String, Expiring<Map<String, String>>> pushedRequests = new ConcurrentHashMap<>();
+    private final Map<String, Expiring<String>> preAuthorizedCodes = new ConcurrentHashMap<>();
+    private final Map<String, Expiring<CredentialsOffer>> credentialOffers = new ConcurrentHashMap<>();
+    private final Map<String, Expiring<String>> credentialIdentifiers = new ConcurrentHashMap<>();
+
+    private Duration latency;
+    private int tokenLifespan;
+    private int clientLifespan;
+    private JWSSignerContext signer;
+    private JWSVerifierContext verifier;
+    private JWK jwk;
+
+    @PostConstruct
+    void init() {
+        Config config = ConfigProvider.getConfig();
+        latency = Duration.ofMillis(config.getOptionalValue("playground.stub-as.latency", Long.class).orElse(0L));
+        tokenLifespan = config.getOptionalValue("playground.stub-as.token-lifespan", Integer.class).orElse(300);
+        clientLifespan = config.getOptionalValue("playground.stub-as.client-lifespan", Integer.class).orElse(3600);
+
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair keyPair = generator.generateKeyPair();
+            String kid = KeyUtils.createKeyId(keyPair.getPublic());
+            signer = new JWSSignerContext(Algorithm.RS256, kid, keyPair.getPrivate());
+            verifier = new JWSVerifierContext(Algorithm.RS256, kid, keyPair.getPublic());
+            jwk = JWKBuilder.create().kid(kid).algorithm(Algorithm.RS256).rsa(keyPair.getPublic());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA not available", e);
+        }
+        log.infof("Stub authorization server started at '%s'. Latency: %d ms", ROOT_PATH, latency.toMillis());
+    }
+
+    /**
+     * Run the handler and delay its response by the configured latency. Errors thrown by the handler are converted to the OAuth error responses
+     */
+    Uni<Response> respond(Supplier<Response> handler) {
+        Uni<Response> response = Uni.createFrom().item(() -> {
+            try {
+                return handler.get();
+            } catch (StubException se) {
+                return se.toResponse();
+            }
+        });
+        return latency.isZero() ? response : response.onItem().delayIt().by(latency);
+    }
+
+    JSONWebKeySet getJwks() {
+        JSONWebKeySet jwks = new JSONWebKeySet();
+        jwks.setKeys(new JWK[] { jwk });
+        return jwks;
+    }
+
+    // Clients
+
+    OIDCClientRepresentation registerClient(OIDCClientRepresentation client, String registrationUrl) {
+        SecretGenerator secretGenerator = SecretGenerator.getInstance();
+        client.setClientId(secretGenerator.generateSecureID());
+        String authMethod = client.getTokenEndpointAuthMethod();
+        if (authMethod == null || authMethod.startsWith("client_secret")) {
+            client.setClientSecret(secretGenerator.generateSecureID());
+            client.setClientSecretExpiresAt(0);
+        }
+        client.setClientIdIssuedAt(Time.currentTime());
+        client.setRegistrationAccessToken(secretGenerator.generateSecureID());
+        client.setRegistrationClientUri(registrationUrl + "/" + client.getClientId());
+        put(clients, client.getClientId(), new Expiring<>(client, clientLifespan));
+        log.debugf("Registered client '%s' with authentication method %s", client.getClientId(), authMethod);
+        return client;
+    }
+
+    OIDCClientRepresentation getClient(String clientId) {
+        OIDCClientRepresentation client = get(clients, clientId);
+        if (client == null) {
+            throw StubException.unauthorized("invalid_client", "Client not found: " + clientId);
+        }
+        return client;
+    }
+
+    /**
+     * Authenticates client by the method it was registered with. The signature of the client assertion is not verified
+     *
+     * @param params form parameters of the request
+     * @param authorization value of the "Authorization" header
+     */
+    OIDCClientRepresentation authenticateClient(Map<String, String> params, String authorization) {
+        if (authorization != null && authorization.regionMatches(true, 0, "Basic ", 0, 6)) {
+            String[] credentials;
+            try {
+                credentials = new String(Base64.getDecoder().decode(authorization.substring(6).trim()), StandardCharsets.UTF_8).split(":", 2);
+            } catch (IllegalArgumentException iae) {
+                throw StubException.unauthorized("invalid_client", "Invalid Basic authorization header");
+            }
+            OIDCClientRepresentation client = getClient(urlDecode(credentials[0]));
+            if (credentials.length < 2 || !urlDecode(credentials[1]).equals(client.getClientSecret())) {
+                throw StubException.unauthorized("invalid_client", "Invalid client credentials");
+            }
+            return client;
+        }
+
+        String assertion = params.get(OAuth2Constants.CLIENT_ASSERTION);
+        if (assertion != null) {
+            return getClient(readToken(assertion, JsonWebToken.class).getIssuer());
+        }
+
+        OIDCClientRepresentation client = getClient(params.get(OAuth2Constants.CLIENT_ID));
+        String secret = params.get(OAuth2Constants.CLIENT_SECRET);
+        if (client.getClientSecret() != null && "client_secret_post".equals(client.getTokenEndpointAuthMethod()) && !client.getClientSecret().equals(secret)) {
+            throw StubException.unauthorized("invalid_client", "Invalid client credentials");
+        }
+        return client;
+    }
+
+    // Authorization requests
+
+    String pushAuthorizationRequest(Map<String, String> params) {
+        String requestUri = REQUEST_URI_PREFIX + SecretGenerator.getInstance().generateSecureID();
+        put(pushedRequests, requestUri, new Expiring<>(params, 60));
+        return requestUri;
+    }
+
+    /**
+     * @return parameters of the authorization request merged from the query, the request object and the pushed authorization request
+     */
+    Map<String, String> resolveAuthorizationRequest(Map<String, String> query) {
+        Map<String, String> params = new ConcurrentHashMap<>(query);
+        String requestUri = query.get(Constants.REQUEST_URI);
+        if (requestUri != null) {
+            Expiring<Map<String, String>> pushed = consume(pushedRequests, requestUri);
+            if (pushed == null) {
+                throw StubException.badRequest("invalid_request_uri", "Unknown or expired request_uri");
+            }
+            params.putAll(pushed.value);
+        }
+
+        String request = params.get(Constants.REQUEST);
+        if (request != null) {
+            // Signature of the request object is not verified
+            Map<?, ?> requestObject = readToken(request, Map.class);
+            requestObject.forEach((name, value) -> {
+                if (value instanceof String) {
+                    params.put(name.toString(), (String) value);
+                }
+            });
+        }
+        return params;
+    }
+
+    String createCode(String clientId, Map<String, String> params) {
+        String code = SecretGenerator.getInstance().generateSecureID();
+        put(codes, code, new Expiring<>(new AuthorizationCode(clientId, params), 60));
+        return code;
+    }
+
+    IDToken createHybridIdToken(String issuer, String clientId, String nonce, String code, String state) {
+        IDToken idToken = initToken(new IDToken(), issuer, clientId, TokenUtil.TOKEN_TYPE_ID);
+        idToken.audience(clientId);
+        idToken.setNonce(nonce);
+        idToken.setCodeHash(HashUtils.accessTokenHash(Algorithm.RS256, code));
+        if (state != null) {
+            idToken.setStateHash(HashUtils.accessTokenHash(Algorithm.RS256, state));
+        }
+        return idToken;
+    }
+
+    // Token endpoint
+
+    AccessTokenResponse exchangeCode(String issuer, OIDCClientRepresentation client, Map<String, String> params, String dpopJkt, String certThumbprint) {
+        Expiring<AuthorizationCode> expiring = consume(codes, params.get(OAuth2Constants.CODE));
+        if (expiring == null) {
+            throw StubException.badRequest("invalid_grant", "Code not valid");
+        }
+        AuthorizationCode code = expiring.value;
+        if (!code.clientId.equals(client.getClientId())) {
+            throw StubException.badRequest("invalid_grant", "Code was issued to other client");
+        }
+
+        String codeChallenge = code.params.get(OAuth2Constants.CODE_CHALLENGE);
+        if (codeChallenge != null) {
+            String verifier = params.get(OAuth2Constants.CODE_VERIFIER);
+            if (verifier == null) {
+                throw StubException.badRequest("invalid_grant", "PKCE code verifier not specified");
+            }
+            String computed = "plain".equals(code.params.get(OAuth2Constants.CODE_CHALLENGE_METHOD)) ? verifier
+                    : HashUtils.sha256UrlEncodedHash(verifier, StandardCharsets.US_ASCII);
+            if (!computed.equals(codeChallenge)) {
+                throw StubException.badRequest("invalid_grant", "PKCE verification failed");
+            }
+        }
+
+        String boundJkt = code.params.get(Constants.DPOP_JKT);
+        if (boundJkt != null && !boundJkt.equals(dpopJkt)) {
+            throw StubException.badRequest("invalid_dpop_proof", "DPoP proof key does not match dpop_jkt of the authorization request");
+        }
+        // OID4VCI authorization code flow. Credential identifiers are issued for the credentials requested by the authorization details
+        List<AuthorizationDetailsJSONRepresentation> authorizationDetails = null;
+        String requestedDetails = code.params.get(OAuth2Constants.AUTHORIZATION_DETAILS);
+        if (requestedDetails != null) {
+            try {
+                authorizationDetails = Arrays.stream(JsonSerialization.readValue(requestedDetails, OID4VCAuthorizationDetail[].class))
+                        .filter(detail -> OID4VCConstants.OPENID_CREDENTIAL.equals(detail.getType()))
+                        .map(detail -> createCredentialAuthorizationDetail(detail.getCredentialConfigurationId()))
+                        .collect(Collectors.toList());
+            } catch (IOException e) {
+                throw StubException.badRequest("invalid_authorization_details", "Not able to parse authorization_details: " + e.getMessage());
+            }
+        }
+        return issueTokens(issuer, client, code.params.get(OAuth2Constants.SCOPE), code.params.get(OIDCLoginProtocol.NONCE_PARAM), dpopJkt, certThumbprint,
+                authorizationDetails);
+    }
+
+    AccessTokenResponse refreshTokens(String issuer, OIDCClientRepresentation client, String refreshToken, String dpopJkt, String certThumbprint) {
+        RefreshToken token = verifyToken(refreshToken, RefreshToken.class, TokenUtil.TOKEN_TYPE_REFRESH);
+        if (!client.getClientId().equals(token.getIssuedFor())) {
+            throw StubException.badRequest("invalid_grant", "Refresh token was issued to other client");
+        }
+        return issueTokens(issuer, client, token.getScope(), null, dpopJkt, certThumbprint, null);
+    }
+
+    AccessTokenResponse exchangePreAuthorizedCode(String issuer, OIDCClientRepresentation client, String preAuthorizedCode, String dpopJkt, String certThumbprint) {
+        Expiring<String> expiring = consume(preAuthorizedCodes, preAuthorizedCode);
+        if (expiring == null) {
+            throw StubException.badRequest("invalid_grant", "Pre-authorized code not valid");
+        }
+
+        return issueTokens(issuer, client, OAuth2Constants.SCOPE_OPENID, null, dpopJkt, certThumbprint, List.of(createCredentialAuthorizationDetail(expiring.value)));
+    }
+
+    private AuthorizationDetailsJSONRepresentation createCredentialAuthorizationDetail(String credentialConfigurationId) {
+        String credentialIdentifier = SecretGenerator.getInstance().generateSecureID();
+        // Credential can be requested as long as the access token is valid
+        put(credentialIdentifiers, credentialIdentifier, new Expiring<>(credentialConfigurationId, tokenLifespan));
+        OID4VCAuthorizationDetail authorizationDetail = new OID4VCAuthorizationDetail();
+        authorizationDetail.setType(OID4VCConstants.OPENID_CREDENTIAL);
+        authorizationDetail.setCredentialConfigurationId(credentialConfigurationId);
+        authorizationDetail.setCredentialIdentifiers(List.of(credentialIdentifier));
+        return authorizationDetail;
+    }
+
+    private AccessTokenResponse issueTokens(String issuer, OIDCClientRepresentation client, String scope, String nonce, String dpopJkt, String certThumbprint,
+                                            List<AuthorizationDetailsJSONRepresentation> authorizationDetails) {
+        String tokenType = dpopJkt != null ? TokenUtil.TOKEN_TYPE_DPOP : TokenUtil.TOKEN_TYPE_BEARER;
+        AccessToken accessToken = initToken(new AccessToken(), issuer, client.getClientId(), tokenType);
+        accessToken.audience("account");
+        accessToken.setScope(scope);
+        accessToken.setPreferredUsername(USERNAME);
+        if (dpopJkt != null || (certThumbprint != null && Boolean.TRUE.equals(client.getTlsClientCertificateBoundAccessTokens()))) {
+            AccessToken.Confirmation confirmation = new AccessToken.Confirmation();
+            confirmation.setKeyThumbprint(dpopJkt);
+            confirmation.setCertThumbprint(Boolean.TRUE.equals(client.getTlsClientCertificateBoundAccessTokens()) ? certThumbprint : null);
+            accessToken.setConfirmation(confirmation);
+        }
+
+        RefreshToken refreshToken = new RefreshToken(accessToken);
+        refreshToken.id(SecretGenerator.getInstance().generateSecureID());
+        refreshToken.type(TokenUtil.TOKEN_TYPE_REFRESH);
+        refreshToken.setConfirmation(null);
+
+        AccessTokenResponse response = new AccessTokenResponse();
+        response.setToken(sign(accessToken));
+        response.setTokenType(tokenType);
+        response.setExpiresIn(tokenLifespan);
+        response.setRefreshToken(sign(refreshToken));
+        response.setRefreshExpiresIn(tokenLifespan);
+        response.setScope(scope);
+        if (scope != null && Arrays.asList(scope.split(" ")).contains(OAuth2Constants.SCOPE_OPENID)) {
+            IDToken idToken = initToken(new IDToken(), issuer, client.getClientId(), TokenUtil.TOKEN_TYPE_ID);
+            idToken.audience(client.getClientId());
+            idToken.setNonce(nonce);
+            idToken.setPreferredUsername(USERNAME);
+            idToken.setAccessTokenHash(HashUtils.accessTokenHash(Algorithm.RS256, response.getToken()));
+            response.setIdToken(sign(idToken));
+        }
+        response.setAuthorizationDetails(authorizationDetails);
+        return response;
+    }
+
+    private <T extends JsonWebToken> T initToken(T token, String issuer, String clientId, String type) {
+        long now = Time.currentTime();
+        token.id(SecretGenerator.getInstance().generateSecureID());
+        token.issuer(issuer);
+        token.subject(SUBJECT);
+        token.issuedFor(clientId);
+        token.type(type);
+        token.iat(now);
+        token.exp(now + tokenLifespan);
+        return token;
+    }
+
+    String sign(JsonWebToken token) {
+        return new JWSBuilder().type("JWT").kid(signer.getKid()).jsonContent(token).sign(signer);
+    }
+
+    // Token verification
+
+    /**
+     * Verifies the access token sent to the resource endpoint (user info, credential endpoint) including its DPoP and certificate binding
+     *
+     * @param authorization value of the "Authorization" header
+     */
+    AccessToken verifyAccessToken(String authorization, String dpopProof, String method, String url, String certThumbprint) {
+        String token = getAccessToken(authorization);
+        AccessToken accessToken = verifyAccessToken(authorization);
+
+        AccessToken.Confirmation confirmation = accessToken.getConfirmation();
+        if (confirmation != null && confirmation.getKeyThumbprint() != null) {
+            if (dpopProof == null) {
+                throw StubException.unauthorized("invalid_token", "DPoP proof not present for DPoP bound token");
+            }
+            DPoP dpop = verifyDPoPProof(dpopProof, method, url);
+            if (!confirmation.getKeyThumbprint().equals(dpop.getThumbprint())) {
+                throw StubException.unauthorized("invalid_token", "DPoP proof key does not match the key bound to the token");
+            }
+            if (dpop.getAccessTokenHash() != null && !dpop.getAccessTokenHash().equals(HashUtils.sha256UrlEncodedHash(token, StandardCharsets.US_ASCII))) {
+                throw StubException.unauthorized("invalid_token", "DPoP proof is not bound to the token");
+            }
+        }
+        if (confirmation != null && confirmation.getCertThumbprint() != null && !confirmation.getCertThumbprint().equals(certThumbprint)) {
+            throw StubException.unauthorized("invalid_token", "Client certificate does not match the certificate bound to the token");
+        }
+        return accessToken;
+    }
+
+    /**
+     * Verifies just the signature and expiration of the access token. Used by the endpoints, which are not invoked by the client itself (EG. by the admin)
+     */
+    AccessToken verifyAccessToken(String authorization) {
+        AccessToken accessToken = verifyToken(getAccessToken(authorization), AccessToken.class, null);
+        if (TokenUtil.TOKEN_TYPE_REFRESH.equals(accessToken.getType())) {
+            throw StubException.unauthorized("invalid_token", "Refresh token can't be used as access token");
+        }
+        return accessToken;
+    }
+
+    private static String getAccessToken(String authorization) {
+        if (authorization == null || authorization.indexOf(' ') == -1) {
+            throw StubException.unauthorized("invalid_token", "Access token not present");
+        }
+        return authorization.substring(authorization.indexOf(' ') + 1).trim();
+    }
+
+    private <T extends JsonWebToken> T verifyToken(String token, Class<T> type, String expectedType) {
+        try {
+            JWSInput jws = new JWSInput(token);
+            if (!verifier.verify(jws.getEncodedSignatureInput().getBytes(StandardCharsets.UTF_8), jws.getSignature())) {
+                throw StubException.unauthorized("invalid_token", "Invalid token signature");
+            }
+            T content = jws.readJsonContent(type);
+            if (content.isExpired()) {
+                throw StubException.unauthorized("invalid_token", "Token expired");
+            }
+            if (expectedType != null && !expectedType.equals(content.getType())) {
+                throw StubException.badRequest("invalid_grant", "Invalid token type " + content.getType());
+            }
+            return content;
+        } catch (JWSInputException | VerificationException e) {
+            throw StubException.unauthorized("invalid_token", "Invalid token: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return DPoP proof with the thumbprint of its key
+     */
+    DPoP verifyDPoPProof(String proof, String method, String url) {
+        try {
+            JWSInput jws = new JWSInput(proof);
+            JWSHeader header = jws.getHeader();
+            if (!DPoPSigner.DPOP_JWT_TYPE.equals(header.getType()) || header.getKey() == null) {
+                throw StubException.badRequest("invalid_dpop_proof", "DPoP proof must have type dpop+jwt and embedded JWK");
+            }
+            JWSVerifierContext proofVerifier = new JWSVerifierContext(header.getRawAlgorithm(), null, JWKParser.create(header.getKey()).toPublicKey());
+            if (!proofVerifier.verify(jws.getEncodedSignatureInput().getBytes(StandardCharsets.UTF_8), jws.getSignature())) {
+                throw StubException.badRequest("invalid_dpop_proof", "Invalid DPoP proof signature");
+            }
+
+            DPoP dpop = jws.readJsonContent(DPoP.class);
+            if (!method.equals(dpop.getHttpMethod()) || !url.equals(dpop.getHttpUri())) {
+                throw StubException.badRequest("invalid_dpop_proof", "DPoP proof htm/htu do not match the request: " + dpop.getHttpMethod() + " " + dpop.getHttpUri());
+            }
+            if (dpop.getIat() == null || Math.abs(Time.currentTime() - dpop.getIat()) > 60) {
+                throw StubException.badRequest("invalid_dpop_proof", "DPoP proof too old or issued in the future");
+            }
+            dpop.setThumbprint(JWKSUtils.computeThumbprint(header.getKey()));
+            return dpop;
+        } catch (JWSInputException | VerificationException | RuntimeException e) {
+            if (e instanceof StubException) {
+                throw (StubException) e;
+            }
+            throw StubException.badRequest("invalid_dpop_proof", "Invalid DPoP proof: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return SHA-256 thumbprint of the client certificate used for the TLS connection or null if client did not send any certificate
+     */
+    static String getCertThumbprint(HttpServerRequest request) {
+        SSLSession sslSession = request.sslSession();
+        if (sslSession == null) {
+            return null;
+        }
+        try {
+            Certificate[] certificates = sslSession.getPeerCertificates();
+            if (certificates.length == 0) {
+                return null;
+            }
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return Base64Url.encode(md.digest(certificates[0].getEncoded()));
+        } catch (SSLPeerUnverifiedException e) {
+            return null;
+        } catch (Exception e) {
+            throw StubException.badRequest("invalid_request", "Failed to compute thumbprint of client certificate: " + e.getMessage());
+        }
+    }
+
+    // OID4VCI
+
+    /**
+     * @return nonce, which can be used to get the credential offer by the wallet
+     */
+    String createCredentialOffer(CredentialsOffer credentialsOffer, String preAuthorizedCode, String credentialConfigurationId) {
+        put(preAuthorizedCodes, preAuthorizedCode, new Expiring<>(credentialConfigurationId, 300));
+        String nonce = SecretGenerator.getInstance().generateSecureID();
+        put(credentialOffers, nonce, new Expiring<>(credentialsOffer, 300));
+        return nonce;
+    }
+
+    CredentialsOffer consumeCredentialOffer(String nonce) {
+        Expiring<CredentialsOffer> offer = consume(credentialOffers, nonce);
+        if (offer == null) {
+            throw StubException.badRequest("invalid_credential_offer_request", "Credential offer not found or already used");
+        }
+        return offer.value;
+    }
+
+    /**
+     * @return configuration ID of the credential, which can be issued for given identifier
+     */
+    String getCredentialConfigurationId(String credentialIdentifier) {
+        String configId = get(credentialIdentifiers, credentialIdentifier);
+        if (configId == null) {
+            throw StubException.badRequest("unknown_credential_identifier", "Unknown credential identifier " + credentialIdentifier);
+        }
+        return configId;
+    }
+
+    JWSSignerContext getSigner() {
+        return signer;
+    }
+
+    // Helpers
+
+    static <T> T readToken(String token, Class<T> type) {
+        try {
+            return new JWSInput(token).readJsonContent(type);
+        } catch (JWSInputException e) {
+            throw StubException.badRequest("invalid_request", "Not able to parse JWT: " + e.getMessage());
+        }
+    }
+
+    private static String urlDecode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private static <T> void put(Map<String, Expiring<T>> map, String key, Expiring<T> value) {
+        if (map.size() > MAX_PENDING_ENTRIES) {
+            long now = Time.currentTime();
+            map.values().removeIf(entry -> entry.expiresAt < now);
+        }
+        map.put(key, value);
+    }
+
+    // Entries, which can be used repeatedly (EG. registered clients)
+    private static <T> T get(Map<String, Expiring<T>> map, String key) {
+        Expiring<T> entry = key == null ? null : map.get(key);
+        return entry == null || entry.expiresAt < Time.currentTime() ? null : entry.value;
+    }
+
+    // Entries are one-time use
+    private static <T> Expiring<T> consume(Map<String, Expiring<T>> map, String key) {
+        Expiring<T> entry = key == null ? null : map.remove(key);
+        return entry == null || entry.expiresAt < Time.currentTime() ? null : entry;
+    }
+
+
+    private static class Expiring<T> {
+
+        private final T value;
+        private final long expiresAt;
+
+        private Expiring(T value, int lifespan) {
+            this.value = value;
+            this.expiresAt = Time.currentTime() + lifespan;
+        }
+    }
+
+    private static class AuthorizationCode {
+
+        private final String clientId;
+        private final Map<String, String> params;
+
+        private AuthorizationCode(String clientId, Map<String, String> params) {
+            this.clientId = clientId;
+            this.params = params;
+        }
+    }
+}
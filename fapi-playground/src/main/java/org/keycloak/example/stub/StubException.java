@@ -0,0 +1,37 @@
+package org.keycloak.example.stub;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * OAuth error returned by the stub authorization server (EG. "invalid_grant"). Converted to the JSON error response
+ */
+class StubException extends RuntimeException {
+
+    private final int status;
+    private final String error;
+
+    StubException(int status, String error, String errorDescription) {
+        super(errorDescription);
+        this.status = status;
+        this.error = error;
+    }
+
+    static StubException badRequest(String error, String errorDescription) {
+        return new StubException(400, error, errorDescription);
+    }
+
+    static StubException unauthorized(String error, String errorDescription) {
+        return new StubException(401, error, errorDescription);
+    }
+
+    Response toResponse() {
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("error", error);
+        body.put("error_description", getMessage());
+        return Response.status(status).type(MediaType.APPLICATION_JSON_TYPE).entity(body).build();
+    }
+}
@@ -0,0 +1,209 @@
+package org.keycloak.example.stub;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.http.HttpServerRequest;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+import org.keycloak.VCFormat;
+import org.keycloak.common.util.SecretGenerator;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
+import org.keycloak.protocol.oid4vc.model.CredentialIssuer;
+import org.keycloak.protocol.oid4vc.model.CredentialMetadata;
+import org.keycloak.protocol.oid4vc.model.CredentialOfferURI;
+import org.keycloak.protocol.oid4vc.model.CredentialRequest;
+import org.keycloak.protocol.oid4vc.model.CredentialResponse;
+import org.keycloak.protocol.oid4vc.model.CredentialsOffer;
+import org.keycloak.protocol.oid4vc.model.DisplayObject;
+import org.keycloak.protocol.oid4vc.model.NonceResponse;
+import org.keycloak.protocol.oid4vc.model.PreAuthorizedCodeGrant;
+import org.keycloak.protocol.oid4vc.model.SupportedCredentialConfiguration;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.sdjwt.DisclosureSpec;
+import org.keycloak.sdjwt.IssuerSignedJWT;
+import org.keycloak.sdjwt.SdJwt;
+import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.TokenUtil;
+
+/**
+ * OID4VCI endpoints of the stub authorization server (credential offer, nonce and credential endpoints). Credentials are issued in the SD-JWT VC format with all
+ * the user claims selectively disclosable. The credential issuer metadata is served by {@link StubOIDCEndpoint} as it is not under the realm path.
+ */
+@IfBuildProperty(name = "playground.stub-as.enabled", stringValue = "true")
+@Path(StubAuthorizationServer.ROOT_PATH + "/realms/{realm}/protocol/oid4vc")
+public class StubOID4VCIEndpoint {
+
+    // Credential configuration ID -> credential type. Same configuration IDs as the credentials of the "test" realm used by the demo
+    private static final Map<String, CredentialType> CREDENTIAL_TYPES = Map.of(
+            "education-certificate-config-id", new CredentialType("education-certificate", "Education Certificate",
+                    Map.of("given_name", "John", "family_name", "Doe", "university", "Stub University", "education-certificate-number", "123456")),
+            "IdentityCredential", new CredentialType("identity_credential", "Identity Credential",
+                    Map.of("given_name", "John", "family_name", "Doe", "birthdate", "1990-01-01", "email", StubAuthorizationServer.USERNAME + "@keycloak-fapi.org")));
+
+    @Inject
+    StubAuthorizationServer stub;
+
+    static CredentialIssuer getCredentialIssuer(String issuer) {
+        String oid4vc = issuer + "/protocol/oid4vc";
+        Map<String, SupportedCredentialConfiguration> configs = new LinkedHashMap<>();
+        CREDENTIAL_TYPES.forEach((configId, type) -> configs.put(configId, new SupportedCredentialConfiguration()
+                .setId(configId)
+                .setFormat(VCFormat.SD_JWT_VC)
+                .setScope(type.vct)
+                .setVct(type.vct)
+                .setCryptographicBindingMethodsSupported(List.of("jwk"))
+                .setCredentialSigningAlgValuesSupported(List.of(Algorithm.RS256))
+                .setCredentialMetadata(new CredentialMetadata().setDisplay(List.of(new DisplayObject().setName(type.displayName).setLocale("en-EN"))))));
+
+        return new CredentialIssuer()
+                .setCredentialIssuer(issuer)
+                .setCredentialEndpoint(oid4vc + "/credential")
+                .setNonceEndpoint(oid4vc + "/nonce")
+                .setAuthorizationServers(List.of(issuer))
+                .setCredentialsSupported(configs);
+    }
+
+    /**
+     * Creates the credential offer with the pre-authorized code. The user is not checked, the credential is always issued for the stub user
+     */
+    @GET
+    @Path("credential-offer-uri")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> createCredentialOffer(@PathParam("realm") String realm, @HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+                                               @QueryParam("credential_configuration_id") String credentialConfigurationId, @Context UriInfo uriInfo) {
+        return stub.respond(() -> {
+            stub.verifyAccessToken(authorization);
+            if (!CREDENTIAL_TYPES.containsKey(credentialConfigurationId)) {
+                throw StubException.badRequest("invalid_credential_request", "Unknown credential configuration " + credentialConfigurationId);
+            }
+
+            String issuer = StubOIDCEndpoint.getIssuer(uriInfo, realm);
+            String preAuthorizedCode = SecretGenerator.getInstance().generateSecureID();
+            CredentialsOffer offer = new CredentialsOffer()
+                    .setCredentialIssuer(issuer)
+                    .setCredentialConfigurationIds(List.of(credentialConfigurationId))
+                    .addGrant(new PreAuthorizedCodeGrant().setPreAuthorizedCode(preAuthorizedCode));
+            String nonce = stub.createCredentialOffer(offer, preAuthorizedCode, credentialConfigurationId);
+
+            CredentialOfferURI offerUri = new CredentialOfferURI()
+                    .setIssuer(issuer + "/protocol/oid4vc/credential-offer/")
+                    .setNonce(nonce);
+            return Response.ok(offerUri, MediaType.APPLICATION_JSON_TYPE).build();
+        });
+    }
+
+    @GET
+    @Path("credential-offer/{nonce}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> getCredentialOffer(@PathParam("nonce") String nonce) {
+        return stub.respond(() -> Response.ok(stub.consumeCredentialOffer(nonce), MediaType.APPLICATION_JSON_TYPE).build());
+    }
+
+    @POST
+    @Path("nonce")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> getNonce() {
+        return stub.respond(() -> {
+            NonceResponse response = new NonceResponse();
+            response.setNonce(SecretGenerator.getInstance().generateSecureID());
+            return Response.ok(response, MediaType.APPLICATION_JSON_TYPE).header("Cache-Control", "no-store").build();
+        });
+    }
+
+    /**
+     * Issues the SD-JWT credential. If the request contains JWT proof, the credential is bound to the key from its header. The proof signature and nonce are not verified
+     */
+    @POST
+    @Path("credential")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> issueCredential(@PathParam("realm") String realm, @HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+                                         @HeaderParam(TokenUtil.TOKEN_TYPE_DPOP) String dpopProof, @Context UriInfo uriInfo, @Context HttpServerRequest request,
+                                         CredentialRequest credentialRequest) {
+        return stub.respond(() -> {
+            AccessToken token = stub.verifyAccessToken(authorization, dpopProof, "POST", uriInfo.getAbsolutePath().toString(),
+                    StubAuthorizationServer.getCertThumbprint(request));
+            String configId = credentialRequest.getCredentialIdentifier() != null ? stub.getCredentialConfigurationId(credentialRequest.getCredentialIdentifier())
+                    : credentialRequest.getCredentialConfigurationId();
+            CredentialType type = configId == null ? null : CREDENTIAL_TYPES.get(configId);
+            if (type == null) {
+                throw StubException.badRequest("unknown_credential_configuration", "Unknown credential configuration " + configId);
+            }
+
+            ObjectNode claims = JsonSerialization.mapper.createObjectNode();
+            claims.put("iss", StubOIDCEndpoint.getIssuer(uriInfo, realm));
+            claims.put("vct", type.vct);
+            claims.put("sub", token.getSubject());
+            DisclosureSpec.Builder disclosureSpec = DisclosureSpec.builder();
+            type.claims.forEach((name, value) -> {
+                claims.put(name, value);
+                disclosureSpec.withUndisclosedClaim(name, SecretGenerator.getInstance().generateSecureID());
+            });
+
+            long now = Time.currentTime();
+            IssuerSignedJWT.Builder issuerSignedJwt = IssuerSignedJWT.builder()
+                    .withClaims(claims, disclosureSpec.build())
+                    .withSigner(stub.getSigner())
+                    .withJwsType(VCFormat.SD_JWT_VC)
+                    .withKid(stub.getSigner().getKid())
+                    .withIat(now)
+                    .withExp(now + 86400);
+            String proof = getJwtProof(credentialRequest);
+            if (proof != null) {
+                try {
+                    issuerSignedJwt.withKeyBindingKey(new JWSInput(proof).getHeader().getKey());
+                } catch (JWSInputException e) {
+                    throw StubException.badRequest("invalid_proof", "Not able to parse proof: " + e.getMessage());
+                }
+            }
+
+            String credential = SdJwt.builder()
+                    .withIssuerSignedJwt(issuerSignedJwt.build())
+                    .withIssuerSigningContext(stub.getSigner())
+                    .build()
+                    .toSdJwtString();
+            return Response.ok(new CredentialResponse().addCredential(credential), MediaType.APPLICATION_JSON_TYPE).build();
+        });
+    }
+
+    private static String getJwtProof(CredentialRequest credentialRequest) {
+        if (credentialRequest.getProofs() == null || credentialRequest.getProofs().getJwt() == null || credentialRequest.getProofs().getJwt().isEmpty()) {
+            return null;
+        }
+        return credentialRequest.getProofs().getJwt().get(0);
+    }
+
+
+    private static class CredentialType {
+
+        private final String vct;
+        private final String displayName;
+        private final Map<String, String> claims;
+
+        private CredentialType(String vct, String displayName, Map<String, String> claims) {
+            this.vct = vct;
+            this.displayName = displayName;
+            this.claims = claims;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.keycloak.example.stub;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.http.HttpServerRequest;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriBuilder;
+import jakarta.ws.rs.core.UriInfo;
+import org.keycloak.OAuth2Constants;
+import org.keycloak.OID4VCConstants;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.example.util.Constants;
+import org.keycloak.protocol.oid4vc.model.PreAuthorizedCodeGrant;
+import org.keycloak.protocol.oidc.OIDCLoginProtocol;
+import org.keycloak.protocol.oidc.representations.OIDCConfigurationRepresentation;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.AccessTokenResponse;
+import org.keycloak.representations.IDToken;
+import org.keycloak.representations.JsonWebToken;
+import org.keycloak.representations.oidc.OIDCClientRepresentation;
+import org.keycloak.util.TokenUtil;
+
+/**
+ * OIDC endpoints of the stub authorization server (discovery, JWKS, client registration, authorization, PAR, token, user info and logout). See
+ * {@link StubAuthorizationServer} for details.
+ */
+@IfBuildProperty(name = "playground.stub-as.enabled", stringValue = "true")
+@Path(StubAuthorizationServer.ROOT_PATH)
+public class StubOIDCEndpoint {
+
+    private static final List<String> SIGNATURE_ALGORITHMS = List.of(Algorithm.RS256, Algorithm.PS256, Algorithm.ES256, Algorithm.EdDSA);
+
+    @Inject
+    StubAuthorizationServer stub;
+
+    @GET
+    @Path("realms/{realm}/.well-known/openid-configuration")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> getOIDCConfiguration(@PathParam("realm") String realm, @Context UriInfo uriInfo) {
+        return stub.respond(() -> {
+            String issuer = getIssuer(uriInfo, realm);
+            String oidc = issuer + "/protocol/openid-connect";
+
+            OIDCConfigurationRepresentation config = new OIDCConfigurationRepresentation();
+            config.setIssuer(issuer);
+            config.setAuthorizationEndpoint(oidc + "/auth");
+            config.setTokenEndpoint(oidc + "/token");
+            config.setUserinfoEndpoint(oidc + "/userinfo");
+            config.setLogoutEndpoint(oidc + "/logout");
+            config.setJwksUri(oidc + "/certs");
+            config.setPushedAuthorizationRequestEndpoint(oidc + "/ext/par/request");
+            config.setRegistrationEndpoint(issuer + "/clients-registrations/openid-connect");
+            config.setGrantTypesSupported(List.of(OAuth2Constants.AUTHORIZATION_CODE, OAuth2Constants.REFRESH_TOKEN, PreAuthorizedCodeGrant.PRE_AUTH_GRANT_TYPE));
+            config.setResponseTypesSupported(List.of(OAuth2Constants.CODE, "code id_token"));
+            config.setResponseModesSupported(List.of("query", "fragment", "jwt", "query.jwt", "fragment.jwt"));
+            config.setSubjectTypesSupported(List.of("public"));
+            config.setIdTokenSigningAlgValuesSupported(List.of(Algorithm.RS256));
+            config.setUserInfoSigningAlgValuesSupported(List.of(Algorithm.RS256));
+            config.setAuthorizationSigningAlgValuesSupported(List.of(Algorithm.RS256));
+            config.setRequestObjectSigningAlgValuesSupported(SIGNATURE_ALGORITHMS);
+            config.setDpopSigningAlgValuesSupported(SIGNATURE_ALGORITHMS);
+            config.setTokenEndpointAuthMethodsSupported(List.of("none", "client_secret_basic", "client_secret_post", "private_key_jwt", "tls_client_auth"));
+            config.setTokenEndpointAuthSigningAlgValuesSupported(SIGNATURE_ALGORITHMS);
+            config.setCodeChallengeMethodsSupported(List.of(OAuth2Constants.PKCE_METHOD_PLAIN, OAuth2Constants.PKCE_METHOD_S256));
+            config.setScopesSupported(List.of(OAuth2Constants.SCOPE_OPENID, OAuth2Constants.SCOPE_PROFILE, OAuth2Constants.SCOPE_EMAIL, OAuth2Constants.OFFLINE_ACCESS));
+            config.setClaimsParameterSupported(true);
+            config.setRequestParameterSupported(true);
+            config.setRequestUriParameterSupported(true);
+            config.setRequirePushedAuthorizationRequests(false);
+            config.setTlsClientCertificateBoundAccessTokens(true);
+            config.setAuthorizationResponseIssParameterSupported(true);
+            config.setAuthorizationDetailsTypesSupported(List.of(OID4VCConstants.OPENID_CREDENTIAL));
+            return Response.ok(config, MediaType.APPLICATION_JSON_TYPE).build();
+        });
+    }
+
+    @GET
+    @Path(".well-known/openid-credential-issuer/realms/{realm}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> getCredentialIssuerMetadata(@PathParam("realm") String realm, @Context UriInfo uriInfo) {
+        return stub.respond(() -> Response.ok(StubOID4VCIEndpoint.getCredentialIssuer(getIssuer(uriInfo, realm)), MediaType.APPLICATION_JSON_TYPE).build());
+    }
+
+    @GET
+    @Path("realms/{realm}/protocol/openid-connect/certs")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> getJwks() {
+        return stub.respond(() -> Response.ok(stub.getJwks(), MediaType.APPLICATION_JSON_TYPE).build());
+    }
+
+    // Initial access token is not required nor checked
+    @POST
+    @Path("realms/{realm}/clients-registrations/openid-connect")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> registerClient(@PathParam("realm") String realm, @Context UriInfo uriInfo, OIDCClientRepresentation client) {
+        return stub.respond(() -> {
+            OIDCClientRepresentation registered = stub.registerClient(client, getIssuer(uriInfo, realm) + "/clients-registrations/openid-connect");
+            return Response.status(Response.Status.CREATED).type(MediaType.APPLICATION_JSON_TYPE).entity(registered).build();
+        });
+    }
+
+    @GET
+    @Path("realms/{realm}/clients-registrations/openid-connect/{clientId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> getClient(@PathParam("clientId") String clientId) {
+        return stub.respond(() -> Response.ok(stub.getClient(clientId), MediaType.APPLICATION_JSON_TYPE).build());
+    }
+
+    /**
+     * Authorization endpoint. The user is authenticated automatically and the browser is redirected back to the client right away
+     */
+    @GET
+    @Path("realms/{realm}/protocol/openid-connect/auth")
+    public Uni<Response> authorize(@PathParam("realm") String realm, @Context UriInfo uriInfo) {
+        return stub.respond(() -> {
+            Map<String, String> params = stub.resolveAuthorizationRequest(getFirstValues(uriInfo.getQueryParameters()));
+            OIDCClientRepresentation client = stub.getClient(params.get(OAuth2Constants.CLIENT_ID));
+            String redirectUri = params.get(OAuth2Constants.REDIRECT_URI);
+            if (redirectUri == null || (client.getRedirectUris() != null && !client.getRedirectUris().isEmpty() && !client.getRedirectUris().contains(redirectUri))) {
+                throw StubException.badRequest("invalid_redirect_uri", "Invalid redirect_uri " + redirectUri);
+            }
+
+            String issuer = getIssuer(uriInfo, realm);
+            String state = params.get(OAuth2Constants.STATE);
+            String code = stub.createCode(client.getClientId(), params);
+            Map<String, String> responseParams = new LinkedHashMap<>();
+            responseParams.put(OAuth2Constants.CODE, code);
+            if (state != null) {
+                responseParams.put(OAuth2Constants.STATE, state);
+            }
+            responseParams.put(OAuth2Constants.ISSUER, issuer);
+
+            String responseType = params.getOrDefault(OAuth2Constants.RESPONSE_TYPE, OAuth2Constants.CODE);
+            boolean hybrid = responseType.contains(OAuth2Constants.ID_TOKEN);
+            if (hybrid) {
+                IDToken idToken = stub.createHybridIdToken(issuer, client.getClientId(), params.get(OIDCLoginProtocol.NONCE_PARAM), code, state);
+                responseParams.put(OAuth2Constants.ID_TOKEN, stub.sign(idToken));
+            }
+
+            String responseMode = params.getOrDefault(Constants.RESPONSE_MODE, hybrid ? "fragment" : "query");
+            if (responseMode.endsWith("jwt")) {
+                // JARM. The response parameters are wrapped in the signed JWT
+                JsonWebToken jwt = new JsonWebToken();
+                jwt.issuer(issuer);
+                jwt.audience(client.getClientId());
+                jwt.exp((long) Time.currentTime() + 60);
+                responseParams.forEach(jwt::setOtherClaims);
+                String response = stub.sign(jwt);
+                responseParams.clear();
+                responseParams.put("response", response);
+                responseMode = "jwt".equals(responseMode) ? (hybrid ? "fragment" : "query") : responseMode.substring(0, responseMode.indexOf('.'));
+            }
+            return Response.status(Response.Status.FOUND).location(buildRedirect(redirectUri, responseParams, "fragment".equals(responseMode))).build();
+        });
+    }
+
+    @POST
+    @Path("realms/{realm}/protocol/openid-connect/ext/par/request")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> pushAuthorizationRequest(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, MultivaluedMap<String, String> form) {
+        return stub.respond(() -> {
+            Map<String, String> params = getFirstValues(form);
+            OIDCClientRepresentation client = stub.authenticateClient(params, authorization);
+            params.put(OAuth2Constants.CLIENT_ID, client.getClientId());
+            params.remove(OAuth2Constants.CLIENT_SECRET);
+            params.remove(OAuth2Constants.CLIENT_ASSERTION);
+            params.remove(OAuth2Constants.CLIENT_ASSERTION_TYPE);
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put(Constants.REQUEST_URI, stub.pushAuthorizationRequest(params));
+            response.put(OAuth2Constants.EXPIRES_IN, 60);
+            return Response.status(Response.Status.CREATED).type(MediaType.APPLICATION_JSON_TYPE).entity(response).build();
+        });
+    }
+
+    @POST
+    @Path("realms/{realm}/protocol/openid-connect/token")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> token(@PathParam("realm") String realm, @HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+                               @HeaderParam(TokenUtil.TOKEN_TYPE_DPOP) String dpopProof, @Context UriInfo uriInfo, @Context HttpServerRequest request,
+                               MultivaluedMap<String, String> form) {
+        return stub.respond(() -> {
+            Map<String, String> params = getFirstValues(form);
+            OIDCClientRepresentation client = stub.authenticateClient(params, authorization);
+            String dpopJkt = dpopProof == null ? null : stub.verifyDPoPProof(dpopProof, "POST", uriInfo.getAbsolutePath().toString()).getThumbprint();
+            String certThumbprint = StubAuthorizationServer.getCertThumbprint(request);
+            String issuer = getIssuer(uriInfo, realm);
+
+            String grantType = params.get(OAuth2Constants.GRANT_TYPE);
+            AccessTokenResponse response;
+            if (OAuth2Constants.AUTHORIZATION_CODE.equals(grantType)) {
+                response = stub.exchangeCode(issuer, client, params, dpopJkt, certThumbprint);
+            } else if (OAuth2Constants.REFRESH_TOKEN.equals(grantType)) {
+                response = stub.refreshTokens(issuer, client, params.get(OAuth2Constants.REFRESH_TOKEN), dpopJkt, certThumbprint);
+            } else if (PreAuthorizedCodeGrant.PRE_AUTH_GRANT_TYPE.equals(grantType)) {
+                response = stub.exchangePreAuthorizedCode(issuer, client, params.get(PreAuthorizedCodeGrant.CODE_REQUEST_PARAM), dpopJkt, certThumbprint);
+            } else {
+                throw StubException.badRequest("unsupported_grant_type", "Unsupported grant type " + grantType);
+            }
+            return Response.ok(response, MediaType.APPLICATION_JSON_TYPE).header("Cache-Control", "no-store").build();
+        });
+    }
+
+    @GET
+    @Path("realms/{realm}/protocol/openid-connect/userinfo")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> getUserInfo(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, @HeaderParam(TokenUtil.TOKEN_TYPE_DPOP) String dpopProof,
+                                     @Context UriInfo uriInfo, @Context HttpServerRequest request) {
+        return userInfo("GET", authorization, dpopProof, uriInfo, request);
+    }
+
+    @POST
+    @Path("realms/{realm}/protocol/openid-connect/userinfo")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> postUserInfo(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, @HeaderParam(TokenUtil.TOKEN_TYPE_DPOP) String dpopProof,
+                                      @Context UriInfo uriInfo, @Context HttpServerRequest request) {
+        return userInfo("POST", authorization, dpopProof, uriInfo, request);
+    }
+
+    private Uni<Response> userInfo(String method, String authorization, String dpopProof, UriInfo uriInfo, HttpServerRequest request) {
+        return stub.respond(() -> {
+            AccessToken token = stub.verifyAccessToken(authorization, dpopProof, method, uriInfo.getAbsolutePath().toString(),
+                    StubAuthorizationServer.getCertThumbprint(request));
+            Map<String, Object> userInfo = new LinkedHashMap<>();
+            userInfo.put("sub", token.getSubject());
+            userInfo.put("preferred_username", StubAuthorizationServer.USERNAME);
+            userInfo.put("given_name", "John");
+            userInfo.put("family_name", "Doe");
+            userInfo.put("name", "John Doe");
+            userInfo.put("email", StubAuthorizationServer.USERNAME + "@keycloak-fapi.org");
+            userInfo.put("email_verified", true);
+            return Response.ok(userInfo, MediaType.APPLICATION_JSON_TYPE).build();
+        });
+    }
+
+    @GET
+    @Path("realms/{realm}/protocol/openid-connect/logout")
+    public Uni<Response> logout(@Context UriInfo uriInfo) {
+        return stub.respond(() -> {
+            MultivaluedMap<String, String> query = uriInfo.getQueryParameters();
+            String redirectUri = query.getFirst(OIDCLoginProtocol.POST_LOGOUT_REDIRECT_URI_PARAM);
+            if (redirectUri == null) {
+                return Response.ok("You are logged out", MediaType.TEXT_PLAIN_TYPE).build();
+            }
+            Map<String, String> params = new HashMap<>();
+            if (query.getFirst(OAuth2Constants.STATE) != null) {
+                params.put(OAuth2Constants.STATE, query.getFirst(OAuth2Constants.STATE));
+            }
+            return Response.status(Response.Status.FOUND).location(buildRedirect(redirectUri, params, false)).build();
+        });
+    }
+
+    static String getIssuer(UriInfo uriInfo, String realm) {
+        return uriInfo.getBaseUriBuilder().path(StubAuthorizationServer.ROOT_PATH).path("realms").path(realm).build().toString();
+    }
+
+    static Map<String, String> getFirstValues(MultivaluedMap<String, String> params) {
+        Map<String, String> result = new HashMap<>();
+        if (params != null) {
+            params.forEach((name, values) -> {
+                if (values != null && !values.isEmpty()) {
+                    result.put(name, values.get(0));
+                }
+            });
+        }
+        return result;
+    }
+
+    private static URI buildRedirect(String redirectUri, Map<String, String> params, boolean fragment) {
+        UriBuilder builder = UriBuilder.fromUri(redirectUri);
+        if (fragment) {
+            StringBuilder fragmentStr = new StringBuilder();
+            params.forEach((name, value) -> fragmentStr.append(fragmentStr.length() == 0 ? "" : "&").append(name).append('=')
+                    .append(URLEncoder.encode(value, StandardCharsets.UTF_8)));
+            return URI.create(builder.build() + "#" + fragmentStr);
+        }
+        params.forEach(builder::queryParam);
+        return builder.build();
+    }
+}
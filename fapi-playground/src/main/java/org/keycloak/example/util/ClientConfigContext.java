@@ -8,11 +8,13 @@ public class ClientConfigContext {
     private final String initialAccessToken;
     private final String clientAuthMethod;
     private final boolean generateJwks;
+    private final String keysAlgorithm;
 
-    public ClientConfigContext(String initialAccessToken, String clientAuthMethod, boolean generateJwks) {
+    public ClientConfigContext(String initialAccessToken, String clientAuthMethod, boolean generateJwks, String keysAlgorithm) {
         this.initialAccessToken = initialAccessToken;
         this.clientAuthMethod = clientAuthMethod;
         this.generateJwks = generateJwks;
+        this.keysAlgorithm = keysAlgorithm;
     }
 
     public String getInitialAccessToken() {
@@ -26,4 +28,8 @@ public class ClientConfigContext {
     public boolean isGenerateJwks() {
         return generateJwks;
     }
+
+    public String getKeysAlgorithm() {
+        return keysAlgorithm;
+    }
 }
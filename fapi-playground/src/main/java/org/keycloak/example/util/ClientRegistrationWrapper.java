@@ -3,6 +3,7 @@ package org.keycloak.example.util;
 import org.keycloak.client.registration.Auth;
 import org.keycloak.client.registration.ClientRegistration;
 import org.keycloak.client.registration.ClientRegistrationException;
+import org.keycloak.example.Services;
 import org.keycloak.representations.oidc.OIDCClientRepresentation;
 
 /**
@@ -19,7 +20,7 @@ public class ClientRegistrationWrapper {
     public static ClientRegistrationWrapper create() {
         ClientRegistration reg = ClientRegistration.create()
                 .url(MyConstants.SERVER_ROOT, MyConstants.REALM_NAME)
-                .httpClient(MutualTLSUtils.newCloseableHttpClientWithDefaultKeyStoreAndTrustStore())
+                .httpClient(Services.instance().getHttpClientPool().getNonClosingHttpClient())
                 .build();
         return new ClientRegistrationWrapper(reg);
     }
@@ -1,14 +1,6 @@
 package org.keycloak.example.util;
 
-import java.security.KeyPair;
-
 import org.jboss.logging.Logger;
-import org.keycloak.common.util.KeyUtils;
-import org.keycloak.crypto.KeyUse;
-import org.keycloak.jose.jwk.JWK;
-import org.keycloak.jose.jwk.JWKBuilder;
-import org.keycloak.util.DPoPGenerator;
-import org.keycloak.util.JWKSUtils;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -17,37 +9,70 @@ public class DPoPContext {
 
     private static final Logger log = Logger.getLogger(DPoPContext.class);
 
-    private KeyPair keyPair;
+    private DPoPSigner.KeyType keyType = DPoPSigner.KeyType.RS256;
+    private volatile DPoPSigner signer;
     private String lastDpopProof;
 
+    // Pool to take the new keys from. The application-wide pool is used if not set
+    private final KeyPairPool keyPairPool;
+
+    public DPoPContext() {
+        this(null);
+    }
+
+    public DPoPContext(KeyPairPool keyPairPool) {
+        this.keyPairPool = keyPairPool;
+    }
+
     public String getLastDpopProof() {
         return lastDpopProof;
     }
 
-    public String generateDPoP(String httpMethod, String endpointUrl, String accessToken) {
-        if (keyPair == null) {
-            generateKeys();
+    public DPoPSigner.KeyType getKeyType() {
+        return keyType;
+    }
+
+    /**
+     * Change type of the DPoP keys. New keys are generated if the type is different from the type of current keys
+     */
+    public void setKeyType(DPoPSigner.KeyType keyType) {
+        if (this.keyType != keyType) {
+            this.keyType = keyType;
+            this.signer = null;
         }
-        lastDpopProof = DPoPGenerator.generateRsaSignedDPoPProof(keyPair, httpMethod, endpointUrl, accessToken);
+    }
+
+    public String generateDPoP(String httpMethod, String endpointUrl, String accessToken) {
+        DPoPSigner signer = getSigner();
+        lastDpopProof = PlaygroundMetrics.timeSigning("dpop", signer.getKeyType().name(), () -> signer.sign(httpMethod, endpointUrl, accessToken));
         return lastDpopProof;
     }
 
     public String generateKeyThumbprint() {
-        if (keyPair == null) {
-            generateKeys();
-        }
+        return getSigner().getThumbprint();
+    }
 
-        JWK jwk = JWKBuilder.create()
-                .rsa(keyPair.getPublic(), KeyUse.SIG);
-        return JWKSUtils.computeThumbprint(jwk);
+    /**
+     * @return thumbprint of the current DPoP key or null if there is no key yet (EG. after the key type was changed). Unlike {@link #generateKeyThumbprint()}, new
+     * key is never generated
+     */
+    public String getCurrentKeyThumbprint() {
+        DPoPSigner signer = this.signer;
+        return signer == null ? null : signer.getThumbprint();
     }
 
     public void rotateKeys() {
         generateKeys();
     }
 
-    private void generateKeys() {
-        keyPair = KeyUtils.generateRsaKeyPair(2048);
-        log.info("New DPoP RSA keyPair generated.");
+    private DPoPSigner getSigner() {
+        DPoPSigner signer = this.signer;
+        return signer != null ? signer : generateKeys();
+    }
+
+    private DPoPSigner generateKeys() {
+        signer = keyPairPool != null ? DPoPSigner.generate(keyType, keyPairPool) : DPoPSigner.generate(keyType);
+        log.infof("New DPoP %s keyPair generated.", keyType);
+        return signer;
     }
 }
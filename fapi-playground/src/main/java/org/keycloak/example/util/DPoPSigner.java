@@ -0,0 +1,148 @@
+package org.keycloak.example.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.common.util.SecretGenerator;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.example.Services;
+import org.keycloak.example.jfr.SigningEvent;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKBuilder;
+import org.keycloak.representations.dpop.DPoP;
+import org.keycloak.util.JWKSUtils;
+import org.keycloak.util.JsonSerialization;
+
+/**
+ * Signs DPoP proofs with single key pair. Everything, which depends just on the key pair (public JWK, JWK thumbprint, encoded JOSE header) is computed just once
+ * when the signer is created. So generating DPoP proof means just serializing the payload and signing it with {@link JWSSignerContext}.
+ */
+public class DPoPSigner {
+
+    public static final String DPOP_JWT_TYPE = "dpop+jwt";
+
+    public enum KeyType {
+
+        RS256(Algorithm.RS256, KeyPairPool.KeySpec.RSA_2048),
+        ES256(Algorithm.ES256, KeyPairPool.KeySpec.EC_P256),
+        EdDSA(Algorithm.EdDSA, KeyPairPool.KeySpec.ED25519);
+
+        // JWA algorithm (constant of org.keycloak.crypto.Algorithm)
+        private final String algorithm;
+        private final KeyPairPool.KeySpec keySpec;
+
+        KeyType(String algorithm, KeyPairPool.KeySpec keySpec) {
+            this.algorithm = algorithm;
+            this.keySpec = keySpec;
+        }
+
+        private JWK createJwk(PublicKey publicKey) {
+            switch (this) {
+                case RS256:
+                    return JWKBuilder.create().rsa(publicKey, KeyUse.SIG);
+                case ES256:
+                    return JWKBuilder.create().ec(publicKey, KeyUse.SIG);
+                case EdDSA:
+                    return JWKBuilder.create().okp(publicKey, KeyUse.SIG);
+                default:
+                    throw new IllegalStateException("Unknown key type " + this);
+            }
+        }
+    }
+
+    private final KeyType keyType;
+    private final KeyPair keyPair;
+    private final JWK jwk;
+    private final String thumbprint;
+    private final String encodedHeader;
+    private final JWSSignerContext signerContext;
+
+    public DPoPSigner(KeyType keyType, KeyPair keyPair) {
+        this.keyType = keyType;
+        this.keyPair = keyPair;
+        this.jwk = keyType.createJwk(keyPair.getPublic());
+        this.thumbprint = JWKSUtils.computeThumbprint(jwk);
+        this.signerContext = new JWSSignerContext(keyType.algorithm, jwk.getKeyId(), keyPair.getPrivate());
+        try {
+            // Same claims as JWSHeader, which requires the deprecated algorithm enum
+            Map<String, Object> header = new LinkedHashMap<>();
+            header.put("alg", keyType.algorithm);
+            header.put("typ", DPOP_JWT_TYPE);
+            if (jwk.getKeyId() != null) {
+                header.put("kid", jwk.getKeyId());
+            }
+            header.put("jwk", jwk);
+            this.encodedHeader = Base64Url.encode(JsonSerialization.writeValueAsBytes(header));
+        } catch (IOException ioe) {
+            throw new MyException("Failed to serialize DPoP header", ioe);
+        }
+    }
+
+    public static DPoPSigner generate(KeyType keyType) {
+        return generate(keyType, Services.instance().getKeyPairPool());
+    }
+
+    public static DPoPSigner generate(KeyType keyType, KeyPairPool keyPairPool) {
+        return new DPoPSigner(keyType, keyPairPool.take(keyType.keySpec));
+    }
+
+    public KeyType getKeyType() {
+        return keyType;
+    }
+
+    public KeyPair getKeyPair() {
+        return keyPair;
+    }
+
+    public JWK getJwk() {
+        return jwk;
+    }
+
+    public String getThumbprint() {
+        return thumbprint;
+    }
+
+    /**
+     * @param accessToken access token to bind the proof with (the "ath" claim). Could be null
+     * @return DPoP proof in the format of signed JWT
+     */
+    public String sign(String httpMethod, String endpointUrl, String accessToken) {
+        SigningEvent event = new SigningEvent("dpop", keyType.algorithm);
+        event.begin();
+        DPoP dpop = new DPoP();
+        dpop.id(SecretGenerator.getInstance().generateSecureID());
+        dpop.setHttpMethod(httpMethod);
+        dpop.setHttpUri(endpointUrl);
+        dpop.iat((long) Time.currentTime());
+        if (accessToken != null) {
+            dpop.setAccessTokenHash(sha256(accessToken));
+        }
+
+        try {
+            String signingInput = encodedHeader + "." + Base64Url.encode(JsonSerialization.writeValueAsBytes(dpop));
+            return signingInput + "." + Base64Url.encode(signerContext.sign(signingInput.getBytes(StandardCharsets.US_ASCII)));
+        } catch (IOException e) {
+            throw new MyException("Failed to sign DPoP proof", e);
+        } finally {
+            event.commit();
+        }
+    }
+
+    private static String sha256(String accessToken) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return Base64Url.encode(md.digest(accessToken.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
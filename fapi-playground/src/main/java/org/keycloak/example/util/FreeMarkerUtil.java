@@ -1,17 +1,29 @@
 package org.keycloak.example.util;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
+import freemarker.cache.ConditionalTemplateConfigurationFactory;
+import freemarker.cache.FileExtensionMatcher;
+import freemarker.cache.StrongCacheStorage;
 import freemarker.cache.URLTemplateLoader;
 import freemarker.core.HTMLOutputFormat;
+import freemarker.core.TemplateConfiguration;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
+import freemarker.template.TemplateException;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.jboss.logging.Logger;
+import org.keycloak.example.jfr.TemplateEvent;
 import org.keycloak.utils.MediaType;
 
 /**
@@ -19,46 +31,98 @@ import org.keycloak.utils.MediaType;
  */
 public class FreeMarkerUtil {
 
+    private static final Logger log = Logger.getLogger(FreeMarkerUtil.class);
+
+    // Configuration is thread-safe. It is shared by all the requests and it caches parsed templates
+    private final Configuration cfg;
+
     public FreeMarkerUtil() {
+        cfg = new Configuration(Configuration.VERSION_2_3_32);
+
+        // Assume *.ftl files are html.  This lets freemarker know how to
+        // sanitize and prevent XSS attacks.
+        TemplateConfiguration htmlTemplateConfig = new TemplateConfiguration();
+        htmlTemplateConfig.setOutputFormat(HTMLOutputFormat.INSTANCE);
+        cfg.setTemplateConfigurations(new ConditionalTemplateConfigurationFactory(new FileExtensionMatcher("ftl"), htmlTemplateConfig));
+
+        cfg.setTemplateLoader(new ThemeTemplateLoader());
+        cfg.setDefaultEncoding("UTF-8");
+
+        // Templates are packaged inside the application and they never change at runtime. So no need to check for updates or evict them from the cache
+        cfg.setCacheStorage(new StrongCacheStorage());
+        cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+    }
+
+    /**
+     * Parse the templates and put them to the cache, so that the first request does not need to do it
+     */
+    public void precompileTemplates(String... templateNames) {
+        for (String templateName : templateNames) {
+            long start = System.nanoTime();
+            getTemplate(templateName);
+            log.debugf("Template '%s' compiled in %d ms", templateName, (System.nanoTime() - start) / 1000000);
+        }
     }
 
     public Response processTemplate(Map<String, Object> attributes, String templateName) {
-        try {
-            String result = processTemplateInternal(attributes, templateName);
+        return processTemplate(attributes, templateName, null);
+    }
+
+    /**
+     * @param renderLock lock held while the template is rendered (EG. lock of the session, whose state is read by the attributes). Template is rendered after the
+     *                   response is returned, so the lock held when this method is called does not protect the rendering. Null if no lock is needed
+     */
+    public Response processTemplate(Map<String, Object> attributes, String templateName, Lock renderLock) {
+        Template template = getTemplate(templateName);
+
+        // Template is rendered directly to the HTTP response instead of rendering it into the string first
+        StreamingOutput output = outputStream -> {
+            if (renderLock == null) {
+                render(template, templateName, attributes, outputStream);
+                return;
+            }
+            renderLock.lock();
+            try {
+                render(template, templateName, attributes, outputStream);
+            } finally {
+                renderLock.unlock();
+            }
+        };
 //            javax.ws.rs.core.MediaType mediaType = contentType == null ? MediaType.TEXT_HTML_UTF_8_TYPE : contentType;
 //            Response.ResponseBuilder builder = Response.status(status == null ? Response.Status.OK : status).type(mediaType).language(locale).entity(result);
 //            for (Map.Entry<String, String> entry : httpResponseHeaders.entrySet()) {
 //                builder.header(entry.getKey(), entry.getValue());
 //            }
-            Response.ResponseBuilder builder = Response.status(Response.Status.OK).type(MediaType.TEXT_HTML_UTF_8_TYPE).language(Locale.ENGLISH).entity(result);
-            return builder.build();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to process template", e);
-        }
+        Response.ResponseBuilder builder = Response.status(Response.Status.OK).type(MediaType.TEXT_HTML_UTF_8_TYPE).language(Locale.ENGLISH).entity(output);
+        return builder.build();
     }
 
-    private String processTemplateInternal(Object data, String templateName) {
+    private void render(Template template, String templateName, Map<String, Object> attributes, OutputStream outputStream) throws IOException {
+        long start = System.nanoTime();
+        TemplateEvent event = new TemplateEvent(templateName);
+        event.begin();
+        // Output is counted just when the event is recorded
+        CountingOutputStream counter = event.isEnabled() ? new CountingOutputStream(outputStream) : null;
+        Writer out = new OutputStreamWriter(counter != null ? counter : outputStream, StandardCharsets.UTF_8);
         try {
-            Template template = getTemplate(templateName);
-            Writer out = new StringWriter();
-            template.process(data, out);
-            return out.toString();
-        } catch (Exception e) {
+            template.process(attributes, out);
+        } catch (TemplateException e) {
             throw new RuntimeException("Failed to process template " + templateName, e);
         }
+        out.flush();
+        PlaygroundMetrics.recordTemplate(templateName, System.nanoTime() - start);
+        if (counter != null) {
+            event.outputSize = counter.count;
+        }
+        event.commit();
     }
 
-    private Template getTemplate(String templateName) throws IOException {
-        Configuration cfg = new Configuration();
-
-        // Assume *.ftl files are html.  This lets freemarker know how to
-        // sanitize and prevent XSS attacks.
-        if (templateName.toLowerCase().endsWith(".ftl")) {
-            cfg.setOutputFormat(HTMLOutputFormat.INSTANCE);
+    private Template getTemplate(String templateName) {
+        try {
+            return cfg.getTemplate(templateName);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load template " + templateName, e);
         }
-
-        cfg.setTemplateLoader(new ThemeTemplateLoader());
-        return cfg.getTemplate(templateName, "UTF-8");
     }
 
 
@@ -67,8 +131,30 @@ public class FreeMarkerUtil {
 
         @Override
         protected URL getURL(String name) {
-            return getClass().getClassLoader().getResource("/templates/" + name);
+            return getClass().getClassLoader().getResource("templates/" + name);
         }
 
     }
+
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
 }
@@ -0,0 +1,319 @@
+package org.keycloak.example.util;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.jboss.logging.Logger;
+import org.keycloak.OAuth2Constants;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
+
+/**
+ * Logs-in the user without the browser. Follows the authorization request URL, fills the login form of the Keycloak server (also the consent screen when shown)
+ * and captures the authorization response sent to the redirect URI of the client, so the code can be exchanged for the tokens right away.
+ *
+ * Requests are sent by the pooled HTTP client, so many logins can run at once. Every login has its own cookie store, so the logins do not share the SSO session
+ * with each other. The pages are parsed just with regular expressions as the login form of the Keycloak theme is simple. Custom login themes may not be supported.
+ */
+public class HeadlessLoginDriver {
+
+    private static final Logger log = Logger.getLogger(HeadlessLoginDriver.class);
+
+    // Login page may lead to other forms (EG. username and password on separate pages, consent screen). Limit prevents endless loops on unexpected pages
+    private static final int MAX_STEPS = 10;
+
+    private static final Pattern FORM_PATTERN = Pattern.compile("<form\\b([^>]*)>(.*?)</form>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern INPUT_PATTERN = Pattern.compile("<input\\b([^>]*)>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile("([\\w-]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+    private static final Pattern ERROR_PATTERN = Pattern.compile("<span[^>]*id=\"input-error[^\"]*\"[^>]*>(.*?)</span>|<span[^>]*class=\"[^\"]*kc-feedback-text[^\"]*\"[^>]*>(.*?)</span>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern ENTITY_PATTERN = Pattern.compile("&(#x[0-9a-fA-F]+|#[0-9]+|amp|lt|gt|quot|apos);");
+
+    private final HttpClientPool httpClientPool;
+    private final RequestConfig requestConfig;
+
+    public HeadlessLoginDriver(HttpClientPool httpClientPool) {
+        this.httpClientPool = httpClientPool;
+        // Redirects are followed by the driver, so the redirect to the client is captured and not sent
+        this.requestConfig = RequestConfig.copy(httpClientPool.getRequestConfig())
+                .setRedirectsEnabled(false)
+                .setCookieSpec(CookieSpecs.STANDARD)
+                .build();
+    }
+
+    /**
+     * @param authorizationUrl authorization request URL (EG. created by {@link LoginUtil#getAuthorizationRequestUrl})
+     * @param redirectUri redirect URI of the client. Authorization response is captured once the server redirects to it
+     * @throws MyException if the login did not finish with the redirect to the client (EG. invalid credentials or unexpected page)
+     */
+    public LoginResult login(String authorizationUrl, String redirectUri, String username, String password) {
+        HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(new BasicCookieStore());
+
+        HttpRequestBase request = new HttpGet(authorizationUrl);
+        boolean credentialsSubmitted = false;
+        for (int step = 1; step <= MAX_STEPS; step++) {
+            request.setConfig(requestConfig);
+            Page page = send(request, context);
+
+            if (page.location != null) {
+                URI location = URI.create(request.getURI().toString()).resolve(page.location);
+                if (location.toString().startsWith(redirectUri)) {
+                    log.debugf("Login finished after %d steps", step);
+                    return new LoginResult(location.toString(), parseResponseParams(location), step);
+                }
+                request = new HttpGet(location);
+                continue;
+            }
+            if (page.status != HttpStatus.SC_OK) {
+                throw new MyException("Unexpected status " + page.status + " from " + request.getURI() + " during login");
+            }
+
+            Map<String, String> formAttributes = new LinkedHashMap<>();
+            List<NameValuePair> formParams = parseForm(page.body, formAttributes);
+            if (formParams == null) {
+                throw new MyException("No form found on the page " + request.getURI() + ". Error: " + getErrorMessage(page.body));
+            }
+            boolean hasPassword = formParams.stream().anyMatch(param -> "password".equals(param.getName()));
+            if (hasPassword && credentialsSubmitted) {
+                throw new MyException("Login failed for user '" + username + "'. Error: " + getErrorMessage(page.body));
+            }
+            credentialsSubmitted |= hasPassword;
+
+            List<NameValuePair> filled = new ArrayList<>();
+            for (NameValuePair param : formParams) {
+                if ("username".equals(param.getName())) {
+                    filled.add(new BasicNameValuePair("username", username));
+                } else if ("password".equals(param.getName())) {
+                    filled.add(new BasicNameValuePair("password", password));
+                } else {
+                    filled.add(param);
+                }
+            }
+
+            HttpPost post = new HttpPost(URI.create(request.getURI().toString()).resolve(formAttributes.getOrDefault("action", request.getURI().toString())));
+            post.setEntity(new UrlEncodedFormEntity(filled, StandardCharsets.UTF_8));
+            request = post;
+        }
+        throw new MyException("Login not finished after " + MAX_STEPS + " steps. Last request: " + request.getURI());
+    }
+
+    private Page send(HttpRequestBase request, HttpClientContext context) {
+        try (CloseableHttpResponse response = httpClientPool.getHttpClient().execute(request, context)) {
+            int status = response.getStatusLine().getStatusCode();
+            Header location = response.getFirstHeader("Location");
+            String body = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            return new Page(status, status >= 300 && status < 400 && location != null ? location.getValue() : null, body);
+        } catch (IOException ioe) {
+            throw new MyException("Failed to send " + request.getMethod() + " request to " + request.getURI() + " during login", ioe);
+        }
+    }
+
+    // Form with the password field is preferred. Otherwise first form with the submit button is used (EG. consent screen or username form)
+    private static List<NameValuePair> parseForm(String body, Map<String, String> formAttributes) {
+        if (body == null) {
+            return null;
+        }
+        List<NameValuePair> selected = null;
+        Matcher form = FORM_PATTERN.matcher(body);
+        while (form.find()) {
+            List<NameValuePair> params = new ArrayList<>();
+            boolean submitted = false;
+            Matcher input = INPUT_PATTERN.matcher(form.group(2));
+            while (input.find()) {
+                Map<String, String> attributes = parseAttributes(input.group(1));
+                String name = attributes.get("name");
+                if (name == null) {
+                    continue;
+                }
+                String type = attributes.getOrDefault("type", "text").toLowerCase();
+                if ("submit".equals(type)) {
+                    // Only first submit button is sent (EG. "accept" on the consent screen)
+                    if (submitted) {
+                        continue;
+                    }
+                    submitted = true;
+                }
+                if (("checkbox".equals(type) || "radio".equals(type)) && !attributes.containsKey("checked")) {
+                    continue;
+                }
+                params.add(new BasicNameValuePair(name, attributes.getOrDefault("value", "")));
+            }
+
+            boolean hasPassword = params.stream().anyMatch(param -> "password".equals(param.getName()));
+            if (selected == null || hasPassword) {
+                selected = params;
+                formAttributes.clear();
+                formAttributes.putAll(parseAttributes(form.group(1)));
+            }
+            if (hasPassword) {
+                break;
+            }
+        }
+        return selected;
+    }
+
+    private static Map<String, String> parseAttributes(String tag) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        Matcher attribute = ATTRIBUTE_PATTERN.matcher(tag);
+        while (attribute.find()) {
+            String value = attribute.group(2) != null ? attribute.group(2) : attribute.group(3);
+            attributes.put(attribute.group(1).toLowerCase(), unescapeHtml(value));
+        }
+        // Boolean attributes without the value
+        if (tag.matches("(?is).*\\schecked(\\s.*|/?\\s*)$") && !attributes.containsKey("checked")) {
+            attributes.put("checked", "");
+        }
+        return attributes;
+    }
+
+    private static String unescapeHtml(String value) {
+        if (value.indexOf('&') == -1) {
+            return value;
+        }
+        Matcher entity = ENTITY_PATTERN.matcher(value);
+        StringBuilder result = new StringBuilder();
+        while (entity.find()) {
+            String name = entity.group(1);
+            String replacement;
+            switch (name) {
+                case "amp": replacement = "&"; break;
+                case "lt": replacement = "<"; break;
+                case "gt": replacement = ">"; break;
+                case "quot": replacement = "\""; break;
+                case "apos": replacement = "'"; break;
+                default:
+                    int codePoint = name.startsWith("#x") ? Integer.parseInt(name.substring(2), 16) : Integer.parseInt(name.substring(1));
+                    replacement = new String(Character.toChars(codePoint));
+            }
+            entity.appendReplacement(result, Matcher.quoteReplacement(replacement));
+        }
+        entity.appendTail(result);
+        return result.toString();
+    }
+
+    private static String getErrorMessage(String body) {
+        Matcher error = body == null ? null : ERROR_PATTERN.matcher(body);
+        if (error == null || !error.find()) {
+            return "unknown";
+        }
+        String message = error.group(1) != null ? error.group(1) : error.group(2);
+        return unescapeHtml(message.replaceAll("<[^>]*>", "").trim());
+    }
+
+    // Parameters are sent in the query or in the fragment (hybrid flow). JARM response is decoded, but its signature is not verified here
+    private static Map<String, String> parseResponseParams(URI location) {
+        String rawParams = location.getRawFragment() != null ? location.getRawFragment() : location.getRawQuery();
+        Map<String, String> params = new LinkedHashMap<>();
+        if (rawParams != null) {
+            for (String param : rawParams.split("&")) {
+                int index = param.indexOf('=');
+                if (index > 0) {
+                    params.put(URLDecoder.decode(param.substring(0, index), StandardCharsets.UTF_8), URLDecoder.decode(param.substring(index + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        String jarmResponse = params.get("response");
+        if (jarmResponse != null && !params.containsKey(OAuth2Constants.CODE)) {
+            try {
+                Map<?, ?> claims = new JWSInput(jarmResponse).readJsonContent(Map.class);
+                claims.forEach((name, value) -> {
+                    if (value instanceof String) {
+                        params.putIfAbsent(name.toString(), (String) value);
+                    }
+                });
+            } catch (JWSInputException e) {
+                throw new MyException("Failed to parse JARM response", e);
+            }
+        }
+        return params;
+    }
+
+
+    private static class Page {
+
+        private final int status;
+        private final String location;
+        private final String body;
+
+        private Page(int status, String location, String body) {
+            this.status = status;
+            this.location = location;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Authorization response captured from the redirect to the client
+     */
+    public static class LoginResult {
+
+        private final String responseUrl;
+        private final Map<String, String> params;
+        private final int steps;
+
+        private LoginResult(String responseUrl, Map<String, String> params, int steps) {
+            this.responseUrl = responseUrl;
+            this.params = Collections.unmodifiableMap(params);
+            this.steps = steps;
+        }
+
+        /**
+         * @return URL of the redirect to the client with the authorization response
+         */
+        public String getResponseUrl() {
+            return responseUrl;
+        }
+
+        public Map<String, String> getParams() {
+            return params;
+        }
+
+        public String getCode() {
+            return params.get(OAuth2Constants.CODE);
+        }
+
+        public String getState() {
+            return params.get(OAuth2Constants.STATE);
+        }
+
+        public String getError() {
+            return params.get(OAuth2Constants.ERROR);
+        }
+
+        public String getErrorDescription() {
+            return params.get(OAuth2Constants.ERROR_DESCRIPTION);
+        }
+
+        /**
+         * @return number of the requests sent to the server during login
+         */
+        public int getSteps() {
+            return steps;
+        }
+    }
+}
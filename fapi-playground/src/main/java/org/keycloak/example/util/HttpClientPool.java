@@ -0,0 +1,287 @@
+package org.keycloak.example.util;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import javax.net.ssl.SSLContext;
+
+import io.micrometer.core.instrument.Meter;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.execchain.ClientExecChain;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.jboss.logging.Logger;
+
+/**
+ * Pool of the outbound HTTP connections shared by all the requests sent by the application to the Keycloak server (OAuth requests, client registrations, admin requests...).
+ *
+ * All the connections use same SSLContext with the default client certificate, so the TLS sessions can be resumed by new connections and the established
+ * connections can be re-used by any request regardless of the session, which sent it. SSLContext is looked-up whenever new connection is created, so new connections
+ * use the new SSLContext when the certificates are rotated.
+ */
+public class HttpClientPool {
+
+    private static final Logger log = Logger.getLogger(HttpClientPool.class);
+
+    private final Supplier<SSLContext> sslContextSupplier;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final RequestConfig requestConfig;
+    private final HttpExchangeLog exchangeLog;
+    private final List<Meter> meters = new ArrayList<>();
+
+    public HttpClientPool(Supplier<SSLContext> sslContextSupplier, int maxTotal, int maxPerRoute, long keepAliveMillis, long idleTimeoutMillis, long connectionTtlMillis,
+                          HttpExchangeLog exchangeLog) {
+        this.sslContextSupplier = sslContextSupplier;
+        this.exchangeLog = exchangeLog;
+
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new ReloadableSSLSocketFactory(sslContextSupplier))
+                .build();
+
+        connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry, null, null, null, connectionTtlMillis, TimeUnit.MILLISECONDS) {
+
+            // Includes TLS handshake, which is recorded separately by the socket factory
+            @Override
+            public void connect(HttpClientConnection managedConn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+                long start = System.nanoTime();
+                super.connect(managedConn, route, connectTimeout, context);
+                HttpExchangeTimer.recordConnect(context, System.nanoTime() - start);
+            }
+
+        };
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        // Stale check only for connections, which were not used for a while
+        connectionManager.setValidateAfterInactivity(2000);
+
+        // Server can ask for shorter keep-alive than the configured, but never for longer
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+        };
+
+        requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(10000)
+                .setConnectTimeout(10000)
+                .setSocketTimeout(30000)
+                .build();
+
+        HttpExchangeRecorder exchangeRecorder = new HttpExchangeRecorder();
+        HttpExchangeTimer exchangeTimer = new HttpExchangeTimer(exchangeLog);
+        HttpExchangeTracer exchangeTracer = new HttpExchangeTracer();
+        httpClient = new HttpClientBuilder() {
+
+            @Override
+            protected ClientExecChain decorateProtocolExec(ClientExecChain protocolExec) {
+                return HttpExchangeTimer.recordingFailures(protocolExec);
+            }
+
+        }
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                // By default, connections authenticated with the client certificate are bound to the HttpContext, which created them. As all the requests
+                // use same client certificate, there is no need for that and any connection can be leased for any request
+                .disableConnectionState()
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+                // Added before the recorder, so the recorded request contains also the trace propagation headers
+                .addInterceptorLast((HttpRequestInterceptor) exchangeTracer)
+                .addInterceptorLast((HttpResponseInterceptor) exchangeTracer)
+                // Added as last, so the recorded request contains also the headers added by the client
+                .addInterceptorLast((HttpRequestInterceptor) exchangeRecorder)
+                .addInterceptorFirst((HttpResponseInterceptor) exchangeRecorder)
+                .addInterceptorLast((HttpRequestInterceptor) exchangeTimer)
+                .addInterceptorLast((HttpResponseInterceptor) exchangeTimer)
+                .setRequestExecutor(new HttpExchangeTimer.TimingRequestExecutor())
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+
+        registerGauge("leased", PoolStats::getLeased);
+        registerGauge("available", PoolStats::getAvailable);
+        registerGauge("pending", PoolStats::getPending);
+        registerGauge("max", PoolStats::getMax);
+
+        log.debugf("Created HTTP client pool. Max total connections: %d, max connections per route: %d", maxTotal, maxPerRoute);
+    }
+
+    /**
+     * @return HTTP client backed by the pool. It should not be closed by the callers
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return HTTP client backed by the pool, which can be passed to the components, which close the HTTP client when they are closed (EG. {@link org.keycloak.client.registration.ClientRegistration}).
+     * Closing the returned client does not close the pool
+     */
+    public CloseableHttpClient getNonClosingHttpClient() {
+        return new NonClosingHttpClient(httpClient);
+    }
+
+    /**
+     * @return default configuration of the requests (timeouts). Requests with their own configuration should be based on it
+     */
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    public SSLContext getSslContext() {
+        return sslContextSupplier.get();
+    }
+
+    public HttpExchangeLog getExchangeLog() {
+        return exchangeLog;
+    }
+
+    public PoolStats getTotalStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    // Statistics of all the routes together. Pool is used mostly for the single route to the Keycloak server
+    private void registerGauge(String state, ToIntFunction<PoolStats> value) {
+        meters.add(PlaygroundMetrics.registerGauge(PlaygroundMetrics.HTTP_POOL_GAUGE, "Connections of the outbound HTTP connection pool", connectionManager,
+                manager -> value.applyAsInt(manager.getTotalStats()), "route", "total", "state", state));
+    }
+
+    public void close() {
+        PlaygroundMetrics.remove(meters);
+        try {
+            httpClient.close();
+        } catch (IOException ioe) {
+            log.warn("Failed to close HTTP client pool", ioe);
+        }
+    }
+
+    @Override
+    public String toString() {
+        PoolStats stats = getTotalStats();
+        return String.format("HTTP connection pool: %d leased, %d available, %d pending, %d max. Routes: %s",
+                stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax(), connectionManager.getRoutes());
+    }
+
+
+    private static class ReloadableSSLSocketFactory implements LayeredConnectionSocketFactory {
+
+        private final Supplier<SSLContext> sslContextSupplier;
+        private volatile SSLSocketFactoryHolder current;
+
+        private ReloadableSSLSocketFactory(Supplier<SSLContext> sslContextSupplier) {
+            this.sslContextSupplier = sslContextSupplier;
+        }
+
+        private SSLConnectionSocketFactory getDelegate() {
+            SSLContext sslContext = sslContextSupplier.get();
+            SSLSocketFactoryHolder holder = current;
+            if (holder == null || holder.sslContext != sslContext) {
+                if (holder != null) {
+                    log.info("SSLContext changed. New connections will use new SSLContext");
+                }
+                holder = new SSLSocketFactoryHolder(sslContext, new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE));
+                current = holder;
+            }
+            return holder.socketFactory;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return getDelegate().createSocket(context);
+        }
+
+        // TCP connect and TLS handshake are done separately, so the time of the handshake can be recorded
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
+            Socket socket = sock != null ? sock : createSocket(context);
+            if (localAddress != null) {
+                socket.bind(localAddress);
+            }
+            try {
+                socket.connect(remoteAddress, connectTimeout);
+            } catch (IOException ioe) {
+                socket.close();
+                throw ioe;
+            }
+            long start = System.nanoTime();
+            Socket sslSocket = createLayeredSocket(socket, host.getHostName(), remoteAddress.getPort(), context);
+            HttpExchangeTimer.recordTlsHandshake(context, System.nanoTime() - start);
+            return sslSocket;
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            return getDelegate().createLayeredSocket(socket, target, port, context);
+        }
+    }
+
+    private static class SSLSocketFactoryHolder {
+
+        private final SSLContext sslContext;
+        private final SSLConnectionSocketFactory socketFactory;
+
+        private SSLSocketFactoryHolder(SSLContext sslContext, SSLConnectionSocketFactory socketFactory) {
+            this.sslContext = sslContext;
+            this.socketFactory = socketFactory;
+        }
+    }
+
+    private static class NonClosingHttpClient extends CloseableHttpClient {
+
+        private final CloseableHttpClient delegate;
+
+        private NonClosingHttpClient(CloseableHttpClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) throws IOException, ClientProtocolException {
+            return delegate.execute(target, request, context);
+        }
+
+        @Override
+        public void close() {
+            // Pool is shared by whole application
+        }
+
+        @Override
+        @Deprecated
+        public HttpParams getParams() {
+            return delegate.getParams();
+        }
+
+        @Override
+        @Deprecated
+        public ClientConnectionManager getConnectionManager() {
+            return delegate.getConnectionManager();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package org.keycloak.example.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded log of the last outbound HTTP exchanges with the latency of every phase of the exchange. Records are written to the ring buffer without any locking. When
+ * the buffer is full, the oldest records are overwritten.
+ */
+public class HttpExchangeLog {
+
+    private final AtomicReferenceArray<Record> buffer;
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of the records. Rounded up to the power of 2
+     */
+    public HttpExchangeLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Add the exchange to the log. It is also recorded to the metrics, which are not limited to the last exchanges
+     */
+    public void add(Record record) {
+        long seq = sequence.getAndIncrement();
+        buffer.set((int) (seq & mask), record);
+        PlaygroundMetrics.recordExchange(record);
+    }
+
+    /**
+     * @return total number of the exchanges recorded since the start (including those already overwritten)
+     */
+    public long getTotalCount() {
+        return sequence.get();
+    }
+
+    /**
+     * @return records available in the buffer. Newest first
+     */
+    public List<Record> getRecords() {
+        long last = sequence.get();
+        long first = Math.max(0, last - buffer.length());
+        List<Record> records = new ArrayList<>((int) (last - first));
+        for (long seq = last - 1; seq >= first; seq--) {
+            Record record = buffer.get((int) (seq & mask));
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return statistics for every endpoint (method and the type of the endpoint, same as by the metrics, EG. "POST token") computed from the records available
+     * in the buffer. URLs with the path parameters (EG. credential offer with its nonce) are counted together. Endpoints with the slowest 99th percentile first
+     */
+    public List<EndpointStats> getEndpointStats() {
+        Map<String, List<Record>> byEndpoint = new LinkedHashMap<>();
+        for (Record record : getRecords()) {
+            byEndpoint.computeIfAbsent(record.getMethod() + " " + PlaygroundMetrics.getEndpointType(record.getEndpoint()), key -> new ArrayList<>()).add(record);
+        }
+        List<EndpointStats> stats = new ArrayList<>();
+        byEndpoint.forEach((endpoint, records) -> stats.add(new EndpointStats(endpoint, records)));
+        stats.sort(Comparator.comparingLong(EndpointStats::getP99Micros).reversed());
+        return stats;
+    }
+
+
+    public static class Record {
+
+        private final long timestamp;
+        private final String method;
+        private final String endpoint;
+        private final int status;
+        private final long leaseMicros;
+        private final long connectMicros;
+        private final long tlsHandshakeMicros;
+        private final long ttfbMicros;
+        private final long bodyReadMicros;
+        private final long totalMicros;
+        private final long requestBytes;
+        private final long responseBytes;
+
+        public Record(long timestamp, String method, String endpoint, int status, long leaseMicros, long connectMicros, long tlsHandshakeMicros, long ttfbMicros,
+                      long bodyReadMicros, long totalMicros, long requestBytes, long responseBytes) {
+            this.timestamp = timestamp;
+            this.method = method;
+            this.endpoint = endpoint;
+            this.status = status;
+            this.leaseMicros = leaseMicros;
+            this.connectMicros = connectMicros;
+            this.tlsHandshakeMicros = tlsHandshakeMicros;
+            this.ttfbMicros = ttfbMicros;
+            this.bodyReadMicros = bodyReadMicros;
+            this.totalMicros = totalMicros;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public long getLeaseMicros() {
+            return leaseMicros;
+        }
+
+        /**
+         * @return time of TCP connect. 0 if pooled connection was re-used
+         */
+        public long getConnectMicros() {
+            return connectMicros;
+        }
+
+        /**
+         * @return time of TLS handshake. 0 if pooled connection was re-used or plain HTTP was used
+         */
+        public long getTlsHandshakeMicros() {
+            return tlsHandshakeMicros;
+        }
+
+        /**
+         * @return time from sending the request to receiving the response headers
+         */
+        public long getTtfbMicros() {
+            return ttfbMicros;
+        }
+
+        public long getBodyReadMicros() {
+            return bodyReadMicros;
+        }
+
+        public long getTotalMicros() {
+            return totalMicros;
+        }
+
+        /**
+         * @return size of the request body. -1 if not known (chunked request)
+         */
+        public long getRequestBytes() {
+            return requestBytes;
+        }
+
+        public long getResponseBytes() {
+            return responseBytes;
+        }
+    }
+
+    public static class EndpointStats {
+
+        private final String endpoint;
+        private final int count;
+        private final long p50Micros;
+        private final long p90Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+        private final long avgLeaseMicros;
+        private final long avgConnectMicros;
+        private final long avgTlsHandshakeMicros;
+        private final long avgTtfbMicros;
+        private final long avgBodyReadMicros;
+        private final long avgResponseBytes;
+
+        private EndpointStats(String endpoint, List<Record> records) {
+            this.endpoint = endpoint;
+            this.count = records.size();
+            long[] totals = records.stream().mapToLong(Record::getTotalMicros).toArray();
+            Arrays.sort(totals);
+            this.p50Micros = percentile(totals, 0.5);
+            this.p90Micros = percentile(totals, 0.9);
+            this.p99Micros = percentile(totals, 0.99);
+            this.maxMicros = totals[totals.length - 1];
+            this.avgLeaseMicros = (long) records.stream().mapToLong(Record::getLeaseMicros).average().orElse(0);
+            this.avgConnectMicros = (long) records.stream().mapToLong(Record::getConnectMicros).average().orElse(0);
+            this.avgTlsHandshakeMicros = (long) records.stream().mapToLong(Record::getTlsHandshakeMicros).average().orElse(0);
+            this.avgTtfbMicros = (long) records.stream().mapToLong(Record::getTtfbMicros).average().orElse(0);
+            this.avgBodyReadMicros = (long) records.stream().mapToLong(Record::getBodyReadMicros).average().orElse(0);
+            this.avgResponseBytes = (long) records.stream().mapToLong(Record::getResponseBytes).average().orElse(0);
+        }
+
+        // Nearest-rank percentile of sorted values
+        private static long percentile(long[] sorted, double percentile) {
+            int rank = (int) Math.ceil(percentile * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP90Micros() {
+            return p90Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getAvgLeaseMicros() {
+            return avgLeaseMicros;
+        }
+
+        public long getAvgConnectMicros() {
+            return avgConnectMicros;
+        }
+
+        public long getAvgTlsHandshakeMicros() {
+            return avgTlsHandshakeMicros;
+        }
+
+        public long getAvgTtfbMicros() {
+            return avgTtfbMicros;
+        }
+
+        public long getAvgBodyReadMicros() {
+            return avgBodyReadMicros;
+        }
+
+        public long getAvgResponseBytes() {
+            return avgResponseBytes;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.keycloak.example.util;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Records the HTTP requests exactly as they are sent to the wire by the shared HTTP client (including headers added by the client itself) together with the
+ * status and headers of the response. Only the requests sent by {@link #send(Object, Supplier)} are recorded, so the other requests have no overhead. Requests of
+ * {@link ReactiveHttpClient} are recorded by the client itself.
+ *
+ * The recorded exchange is bound to the request object (EG. {@link org.keycloak.testsuite.util.oauth.AccessTokenRequest}), which sent it, so it can be displayed
+ * later as long as the request object is referenced from the session.
+ */
+public class HttpExchangeRecorder implements HttpRequestInterceptor, HttpResponseInterceptor {
+
+    private static final String EXCHANGE_ATTRIBUTE = HttpExchangeRecorder.class.getName() + ".exchange";
+
+    // Exchange recorded by the current thread. Set just during send
+    private static final ThreadLocal<HttpExchange> CURRENT = new ThreadLocal<>();
+
+    private static final Map<Object, HttpExchange> EXCHANGES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Send the request and record the HTTP exchange done by it
+     *
+     * @param request request object, which will be later used to lookup the exchange
+     * @param sender sends the request with the shared HTTP client
+     * @return response returned by the sender
+     */
+    public static <R> R send(Object request, Supplier<R> sender) {
+        HttpExchange exchange = new HttpExchange();
+        CURRENT.set(exchange);
+        try {
+            return sender.get();
+        } finally {
+            CURRENT.remove();
+            if (exchange.method != null) {
+                EXCHANGES.put(request, exchange);
+            }
+        }
+    }
+
+    /**
+     * Record the exchange done by the client other than the shared HTTP client (EG. {@link ReactiveHttpClient})
+     */
+    static void record(Object request, HttpExchange exchange) {
+        EXCHANGES.put(request, exchange);
+    }
+
+    /**
+     * @return exchange recorded when sending given request or null if the request was not recorded
+     */
+    public static HttpExchange getExchange(Object request) {
+        return EXCHANGES.get(request);
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws IOException {
+        HttpExchange exchange = CURRENT.get();
+        if (exchange == null) {
+            return;
+        }
+        // In case of redirects or retries, the last exchange is recorded
+        exchange.method = request.getRequestLine().getMethod();
+        exchange.uri = getUri(request, context);
+        exchange.requestHeaders = toMap(request.getAllHeaders());
+        exchange.requestBody = null;
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && entity.isRepeatable()) {
+                exchange.requestBody = EntityUtils.toString(entity);
+            }
+        }
+        context.setAttribute(EXCHANGE_ATTRIBUTE, exchange);
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        HttpExchange exchange = (HttpExchange) context.getAttribute(EXCHANGE_ATTRIBUTE);
+        if (exchange == null) {
+            return;
+        }
+        exchange.responseStatus = response.getStatusLine().toString();
+        exchange.responseHeaders = toMap(response.getAllHeaders());
+    }
+
+    static String getUri(HttpRequest request, HttpContext context) {
+        if (request instanceof HttpRequestWrapper && ((HttpRequestWrapper) request).getOriginal() instanceof HttpUriRequest) {
+            URI uri = ((HttpUriRequest) ((HttpRequestWrapper) request).getOriginal()).getURI();
+            if (uri.isAbsolute()) {
+                return uri.toString();
+            }
+        }
+        HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+        return target == null ? request.getRequestLine().getUri() : target.toURI() + request.getRequestLine().getUri();
+    }
+
+    private static Map<String, String> toMap(Header[] headers) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (Header header : headers) {
+            map.merge(header.getName(), header.getValue(), (value1, value2) -> value1 + ", " + value2);
+        }
+        return map;
+    }
+
+
+    public static class HttpExchange {
+
+        private volatile String method;
+        private volatile String uri;
+        private volatile Map<String, String> requestHeaders;
+        private volatile String requestBody;
+        private volatile String responseStatus;
+        private volatile Map<String, String> responseHeaders;
+
+        private HttpExchange() {
+        }
+
+        HttpExchange(String method, String uri, Map<String, String> requestHeaders, String requestBody, String responseStatus, Map<String, String> responseHeaders) {
+            this.method = method;
+            this.uri = uri;
+            this.requestHeaders = requestHeaders;
+            this.requestBody = requestBody;
+            this.responseStatus = responseStatus;
+            this.responseHeaders = responseHeaders;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public Map<String, String> getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        /**
+         * @return body of the request or null if there is no body or it could not be read without consuming it
+         */
+        public String getRequestBody() {
+            return requestBody;
+        }
+
+        public String getResponseStatus() {
+            return responseStatus;
+        }
+
+        public Map<String, String> getResponseHeaders() {
+            return responseHeaders;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.keycloak.example.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.execchain.ClientExecChain;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.keycloak.example.jfr.HttpClientEvent;
+
+/**
+ * Measures the phases of the outbound HTTP exchanges done by {@link HttpClientPool} and adds the results to the {@link HttpExchangeLog}. Timing of the exchange is
+ * kept in the HttpContext of the exchange, so every phase just adds its time to it. Exchange is recorded once the response body is fully read (or closed). Exchange,
+ * which failed before the response was received (EG. connect or read timeout, TLS error), is recorded with the status 0.
+ *
+ * Connection lease wait is computed as the time between the start of the exchange and sending the request, which was not spent by connecting.
+ */
+class HttpExchangeTimer implements HttpRequestInterceptor, HttpResponseInterceptor {
+
+    private static final String TIMING_ATTRIBUTE = HttpExchangeTimer.class.getName() + ".timing";
+
+    private final HttpExchangeLog exchangeLog;
+
+    HttpExchangeTimer(HttpExchangeLog exchangeLog) {
+        this.exchangeLog = exchangeLog;
+    }
+
+    // Connection manager measures TCP connect together with TLS handshake
+    static void recordConnect(HttpContext context, long nanos) {
+        Timing timing = getTiming(context);
+        if (timing != null) {
+            timing.connectNanos = Math.max(0, nanos - timing.tlsHandshakeNanos);
+        }
+    }
+
+    static void recordTlsHandshake(HttpContext context, long nanos) {
+        Timing timing = getTiming(context);
+        if (timing != null) {
+            timing.tlsHandshakeNanos = nanos;
+        }
+    }
+
+    private static Timing getTiming(HttpContext context) {
+        return context == null ? null : (Timing) context.getAttribute(TIMING_ATTRIBUTE);
+    }
+
+    // Called for every attempt (redirect, retry) of the exchange, so just the last attempt is recorded
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        Timing timing = new Timing(exchangeLog, request.getRequestLine().getMethod(), getEndpoint(request, context));
+        if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+            timing.requestBytes = ((HttpEntityEnclosingRequest) request).getEntity().getContentLength();
+        }
+        context.setAttribute(TIMING_ATTRIBUTE, timing);
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        Timing timing = getTiming(context);
+        if (timing == null) {
+            return;
+        }
+        context.removeAttribute(TIMING_ATTRIBUTE);
+        timing.status = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            timing.complete();
+        } else {
+            response.setEntity(new TimingEntity(entity, timing));
+        }
+    }
+
+    /**
+     * Decorates the execution of every attempt of the exchange, so the failed attempts are recorded too
+     */
+    static ClientExecChain recordingFailures(ClientExecChain exec) {
+        return (route, request, context, execAware) -> {
+            try {
+                return exec.execute(route, request, context, execAware);
+            } catch (IOException | HttpException | RuntimeException e) {
+                Timing timing = getTiming(context);
+                if (timing != null) {
+                    context.removeAttribute(TIMING_ATTRIBUTE);
+                    timing.complete();
+                }
+                throw e;
+            }
+        };
+    }
+
+    private static String getEndpoint(HttpRequest request, HttpContext context) {
+        String uri = HttpExchangeRecorder.getUri(request, context);
+        int queryIndex = uri.indexOf('?');
+        return queryIndex == -1 ? uri : uri.substring(0, queryIndex);
+    }
+
+
+    static class TimingRequestExecutor extends HttpRequestExecutor {
+
+        @Override
+        protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+            Timing timing = getTiming(context);
+            if (timing != null) {
+                timing.sendStartNanos = System.nanoTime();
+            }
+            HttpResponse response = super.doSendRequest(request, conn, context);
+            if (timing != null) {
+                timing.sendEndNanos = System.nanoTime();
+            }
+            return response;
+        }
+
+        @Override
+        protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context) throws HttpException, IOException {
+            HttpResponse response = super.doReceiveResponse(request, conn, context);
+            Timing timing = getTiming(context);
+            if (timing != null) {
+                timing.responseNanos = System.nanoTime();
+            }
+            return response;
+        }
+    }
+
+    private static class Timing {
+
+        private final HttpExchangeLog exchangeLog;
+        private final long timestamp = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private final String method;
+        private final String endpoint;
+        private long connectNanos;
+        private long tlsHandshakeNanos;
+        private long sendStartNanos;
+        private long sendEndNanos;
+        private long responseNanos;
+        private long bodyReadNanos;
+        private long requestBytes;
+        private long responseBytes;
+        private int status;
+        private boolean completed;
+        private final HttpClientEvent event = new HttpClientEvent();
+
+        private Timing(HttpExchangeLog exchangeLog, String method, String endpoint) {
+            this.exchangeLog = exchangeLog;
+            this.method = method;
+            this.endpoint = endpoint;
+            event.begin();
+        }
+
+        private void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            long leaseNanos = Math.max(0, sendStartNanos - startNanos - connectNanos - tlsHandshakeNanos);
+            // Failed exchange might not have sent the request or received the response
+            long serverNanos = responseNanos > 0 && sendEndNanos > 0 ? responseNanos - sendEndNanos : 0;
+            exchangeLog.add(new HttpExchangeLog.Record(timestamp, method, endpoint, status, leaseNanos / 1000, connectNanos / 1000, tlsHandshakeNanos / 1000,
+                    serverNanos / 1000, bodyReadNanos / 1000, (System.nanoTime() - startNanos) / 1000, requestBytes, responseBytes));
+            event.method = method;
+            event.endpoint = endpoint;
+            event.status = status;
+            event.commit();
+        }
+    }
+
+    private static class TimingEntity extends HttpEntityWrapper {
+
+        private final Timing timing;
+
+        private TimingEntity(HttpEntity wrappedEntity, Timing timing) {
+            super(wrappedEntity);
+            this.timing = timing;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new TimingInputStream(super.getContent(), timing);
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            try (InputStream in = getContent()) {
+                in.transferTo(outStream);
+            }
+        }
+    }
+
+    private static class TimingInputStream extends FilterInputStream {
+
+        private final Timing timing;
+
+        private TimingInputStream(InputStream in, Timing timing) {
+            super(in);
+            this.timing = timing;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            timing.bodyReadNanos += System.nanoTime() - start;
+            if (b == -1) {
+                timing.complete();
+            } else {
+                timing.responseBytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(b, off, len);
+            timing.bodyReadNanos += System.nanoTime() - start;
+            if (read == -1) {
+                timing.complete();
+            } else {
+                timing.responseBytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                timing.complete();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.keycloak.example.util;
+
+import io.opentelemetry.api.trace.Span;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Creates the span of every outbound HTTP exchange done by {@link HttpClientPool} and propagates it to the server. Called for every attempt of the exchange
+ * (redirect, retry), so every attempt has its own span. Span of the attempt, which failed without the response, is not ended and so it is not exported.
+ */
+class HttpExchangeTracer implements HttpRequestInterceptor, HttpResponseInterceptor {
+
+    private static final String SPAN_ATTRIBUTE = HttpExchangeTracer.class.getName() + ".span";
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        String uri = HttpExchangeRecorder.getUri(request, context);
+        int queryIndex = uri.indexOf('?');
+        String endpoint = queryIndex == -1 ? uri : uri.substring(0, queryIndex);
+        Span span = PlaygroundTracing.startClientSpan(request.getRequestLine().getMethod(), endpoint, request::setHeader);
+        context.setAttribute(SPAN_ATTRIBUTE, span);
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        Span span = (Span) context.getAttribute(SPAN_ATTRIBUTE);
+        if (span != null) {
+            context.removeAttribute(SPAN_ATTRIBUTE);
+            PlaygroundTracing.endClientSpan(span, response.getStatusLine().getStatusCode(), null);
+        }
+    }
+}
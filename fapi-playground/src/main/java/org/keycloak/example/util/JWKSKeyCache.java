@@ -0,0 +1,195 @@
+package org.keycloak.example.util;
+
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKParser;
+
+/**
+ * Public keys of the Keycloak server indexed by their key ID. Keys are parsed from the JWKS just once (when the JWKS document is changed) and every key keeps the
+ * verifiers for the algorithms used with it, so verifying the token signature does not need any parsing nor lookup of JCA providers.
+ *
+ * The JWKS is taken from the {@link ServerMetadataCache}, so it is loaded from the server only when the cached document expires. When the token is signed by the
+ * key, which is not in the JWKS (EG. after key rotation on the server), the JWKS is re-loaded immediately. Re-loading is rate-limited, so the tokens with the unknown
+ * key ID can't make the playground flood the server with the JWKS requests.
+ */
+public class JWKSKeyCache {
+
+    private static final Logger log = Logger.getLogger(JWKSKeyCache.class);
+
+    private final JWKSLoader loader;
+    private final long minReloadIntervalMillis;
+
+    private volatile KeyIndex index = new KeyIndex(null);
+    private volatile long lastReload;
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong unknownKids = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong reloadsRateLimited = new AtomicLong();
+
+    public JWKSKeyCache(JWKSLoader loader, long minReloadIntervalMillis) {
+        this.loader = loader;
+        this.minReloadIntervalMillis = minReloadIntervalMillis;
+    }
+
+    /**
+     * @return cache of the keys from the JWKS of the given issuer. The JWKS URL is taken from the OIDC configuration of the issuer
+     */
+    public static JWKSKeyCache forIssuer(ServerMetadataCache metadataCache, String issuer, long minReloadIntervalMillis) {
+        return new JWKSKeyCache(reload -> {
+            String jwksUri = metadataCache.getOIDCConfiguration(issuer).getJwksUri();
+            return reload ? metadataCache.reload(jwksUri, JSONWebKeySet.class) : metadataCache.get(jwksUri, JSONWebKeySet.class);
+        }, minReloadIntervalMillis);
+    }
+
+    /**
+     * @return verifier for the given key and algorithm or null if the key is not in the JWKS of the server even after re-loading it (or the re-loading was rate-limited)
+     */
+    public JWSVerifierContext getVerifier(String kid, String algorithm) {
+        if (kid == null) {
+            return null;
+        }
+
+        CachedKey key = getIndex().keys.get(kid);
+        if (key == null) {
+            unknownKids.incrementAndGet();
+            key = reloadAndGet(kid);
+            if (key == null) {
+                return null;
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+        return key.getVerifier(algorithm);
+    }
+
+    // Document returned by the metadata cache is the same instance until it is loaded again, so the keys are parsed just when the JWKS is changed
+    private KeyIndex getIndex() {
+        JSONWebKeySet jwks = loader.load(false);
+        KeyIndex index = this.index;
+        if (index.jwks != jwks) {
+            index = new KeyIndex(jwks);
+            this.index = index;
+        }
+        return index;
+    }
+
+    private CachedKey reloadAndGet(String kid) {
+        reloadLock.lock();
+        try {
+            // Other thread may have re-loaded the JWKS while this thread was waiting for the lock
+            CachedKey key = index.keys.get(kid);
+            if (key != null) {
+                return key;
+            }
+
+            long now = Time.currentTimeMillis();
+            if (now - lastReload < minReloadIntervalMillis) {
+                reloadsRateLimited.incrementAndGet();
+                log.debugf("Key '%s' not found in JWKS. Not re-loading JWKS as it was re-loaded %d ms ago", kid, now - lastReload);
+                return null;
+            }
+            lastReload = now;
+            reloads.incrementAndGet();
+
+            JSONWebKeySet jwks = loader.load(true);
+            KeyIndex index = jwks == this.index.jwks ? this.index : new KeyIndex(jwks);
+            this.index = index;
+            key = index.keys.get(kid);
+            log.debugf("Key '%s' not found in JWKS. JWKS re-loaded, key %s", kid, key == null ? "still not found" : "found");
+            return key;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getUnknownKids() {
+        return unknownKids.get();
+    }
+
+    public long getReloads() {
+        return reloads.get();
+    }
+
+    public long getReloadsRateLimited() {
+        return reloadsRateLimited.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JWKS key cache: %d keys, %d hits, %d unknown key IDs, %d JWKS re-loads, %d re-loads rate-limited",
+                index.keys.size(), getHits(), getUnknownKids(), getReloads(), getReloadsRateLimited());
+    }
+
+
+    /**
+     * Loads the JWKS document
+     */
+    public interface JWKSLoader {
+
+        /**
+         * @param reload true if the JWKS should be loaded from the server even if it is cached
+         */
+        JSONWebKeySet load(boolean reload);
+    }
+
+    private static class KeyIndex {
+
+        private final JSONWebKeySet jwks;
+        private final Map<String, CachedKey> keys;
+
+        private KeyIndex(JSONWebKeySet jwks) {
+            this.jwks = jwks;
+            if (jwks == null || jwks.getKeys() == null) {
+                this.keys = Collections.emptyMap();
+                return;
+            }
+
+            Map<String, CachedKey> keys = new HashMap<>();
+            for (JWK jwk : jwks.getKeys()) {
+                if (jwk.getKeyId() == null || KeyUse.ENC.getSpecName().equals(jwk.getPublicKeyUse())) {
+                    continue;
+                }
+                try {
+                    keys.put(jwk.getKeyId(), new CachedKey(jwk.getKeyId(), JWKParser.create(jwk).toPublicKey()));
+                } catch (RuntimeException e) {
+                    log.debugf("Ignoring key '%s' of type %s from JWKS: %s", jwk.getKeyId(), jwk.getKeyType(), e.getMessage());
+                }
+            }
+            this.keys = Collections.unmodifiableMap(keys);
+        }
+    }
+
+    private static class CachedKey {
+
+        private final String kid;
+        private final PublicKey publicKey;
+        private final ConcurrentMap<String, JWSVerifierContext> verifiers = new ConcurrentHashMap<>();
+
+        private CachedKey(String kid, PublicKey publicKey) {
+            this.kid = kid;
+            this.publicKey = publicKey;
+        }
+
+        private JWSVerifierContext getVerifier(String algorithm) {
+            return verifiers.computeIfAbsent(algorithm, alg -> new JWSVerifierContext(alg, kid, publicKey));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.keycloak.example.util;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.SignatureException;
+import org.keycloak.crypto.SignatureSignerContext;
+
+/**
+ * Signer for all the asymmetric JWS algorithms (RSA, RSA-PSS, ECDSA and EdDSA) based directly on the JCA. Unlike the signer contexts from Keycloak, the {@link Signature}
+ * instance is not looked-up for every signature, but it is borrowed from the small pool of the instances of the algorithm. Pool is used instead of the per-thread
+ * instances, as the requests run on the virtual threads, which are never reused. ECDSA signatures are created directly in the format required by JWS (R || S),
+ * so no conversion from ASN.1 DER is needed.
+ */
+public class JWSSignerContext implements SignatureSignerContext {
+
+    // Instances above this count are not returned to the pool
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final Map<String, SignaturePool> SIGNATURES = new ConcurrentHashMap<>();
+
+    private final String algorithm;
+    private final String kid;
+    private final PrivateKey privateKey;
+    private final SignaturePool signatures;
+
+    public JWSSignerContext(String algorithm, String kid, PrivateKey privateKey) {
+        this.algorithm = algorithm;
+        this.kid = kid;
+        this.privateKey = privateKey;
+        this.signatures = getSignaturePool(algorithm);
+    }
+
+    @Override
+    public String getKid() {
+        return kid;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public String getHashAlgorithm() {
+        switch (algorithm) {
+            case Algorithm.RS256:
+            case Algorithm.PS256:
+            case Algorithm.ES256:
+                return "SHA-256";
+            case Algorithm.RS384:
+            case Algorithm.PS384:
+            case Algorithm.ES384:
+                return "SHA-384";
+            case Algorithm.RS512:
+            case Algorithm.PS512:
+            case Algorithm.ES512:
+            case Algorithm.EdDSA:
+            case Algorithm.Ed25519:
+                return "SHA-512";
+            default:
+                throw new SignatureException("Unsupported algorithm " + algorithm);
+        }
+    }
+
+    @Override
+    public byte[] sign(byte[] data) throws SignatureException {
+        Signature signature = signatures.borrow();
+        try {
+            signature.initSign(privateKey);
+            signature.update(data);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new SignatureException("Signing failed", e);
+        } finally {
+            signatures.release(signature);
+        }
+    }
+
+    /**
+     * @return true if the algorithm is supported by this signer
+     */
+    public static boolean isSupported(String algorithm) {
+        try {
+            getJcaAlgorithm(algorithm);
+            return true;
+        } catch (SignatureException se) {
+            return false;
+        }
+    }
+
+    /**
+     * @return pool of the {@link Signature} instances for the given algorithm. Shared with {@link JWSVerifierContext}
+     */
+    static SignaturePool getSignaturePool(String algorithm) {
+        return SIGNATURES.computeIfAbsent(algorithm, alg -> {
+            // Fail fast if algorithm is not supported
+            SignaturePool pool = new SignaturePool(alg);
+            pool.release(createSignature(alg));
+            return pool;
+        });
+    }
+
+    private static Signature createSignature(String algorithm) {
+        try {
+            Signature signature = Signature.getInstance(getJcaAlgorithm(algorithm));
+            AlgorithmParameterSpec params = getPssParameters(algorithm);
+            if (params != null) {
+                signature.setParameter(params);
+            }
+            return signature;
+        } catch (GeneralSecurityException e) {
+            throw new SignatureException("Signature algorithm not available: " + algorithm, e);
+        }
+    }
+
+    private static String getJcaAlgorithm(String algorithm) {
+        switch (algorithm) {
+            case Algorithm.RS256:
+                return "SHA256withRSA";
+            case Algorithm.RS384:
+                return "SHA384withRSA";
+            case Algorithm.RS512:
+                return "SHA512withRSA";
+            case Algorithm.PS256:
+            case Algorithm.PS384:
+            case Algorithm.PS512:
+                return "RSASSA-PSS";
+            case Algorithm.ES256:
+                return "SHA256withECDSAinP1363Format";
+            case Algorithm.ES384:
+                return "SHA384withECDSAinP1363Format";
+            case Algorithm.ES512:
+                return "SHA512withECDSAinP1363Format";
+            case Algorithm.EdDSA:
+                return "EdDSA";
+            case Algorithm.Ed25519:
+                return "Ed25519";
+            default:
+                throw new SignatureException("Unsupported algorithm " + algorithm);
+        }
+    }
+
+    private static AlgorithmParameterSpec getPssParameters(String algorithm) {
+        switch (algorithm) {
+            case Algorithm.PS256:
+                return new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, PSSParameterSpec.TRAILER_FIELD_BC);
+            case Algorithm.PS384:
+                return new PSSParameterSpec("SHA-384", "MGF1", MGF1ParameterSpec.SHA384, 48, PSSParameterSpec.TRAILER_FIELD_BC);
+            case Algorithm.PS512:
+                return new PSSParameterSpec("SHA-512", "MGF1", MGF1ParameterSpec.SHA512, 64, PSSParameterSpec.TRAILER_FIELD_BC);
+            default:
+                return null;
+        }
+    }
+
+
+    /**
+     * Bounded pool of the {@link Signature} instances of one algorithm. Instances are re-initialized with the key by every signature or verification, so the same
+     * pool is used for all the keys. When the pool is empty, new instance is created
+     */
+    static class SignaturePool {
+
+        private final String algorithm;
+        private final BlockingQueue<Signature> instances = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        private SignaturePool(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        Signature borrow() {
+            Signature signature = instances.poll();
+            return signature != null ? signature : createSignature(algorithm);
+        }
+
+        void release(Signature signature) {
+            instances.offer(signature);
+        }
+    }
+}
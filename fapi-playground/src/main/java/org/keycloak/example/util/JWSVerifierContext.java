@@ -0,0 +1,54 @@
+package org.keycloak.example.util;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+
+import org.keycloak.common.VerificationException;
+import org.keycloak.crypto.SignatureException;
+import org.keycloak.crypto.SignatureVerifierContext;
+
+/**
+ * Verifier counterpart of the {@link JWSSignerContext}. Uses the same pool of the {@link Signature} instances and expects ECDSA signatures in the JWS format (R || S).
+ */
+public class JWSVerifierContext implements SignatureVerifierContext {
+
+    private final String algorithm;
+    private final String kid;
+    private final PublicKey publicKey;
+    private final JWSSignerContext.SignaturePool signatures;
+
+    /**
+     * @throws SignatureException if the algorithm is not supported
+     */
+    public JWSVerifierContext(String algorithm, String kid, PublicKey publicKey) {
+        this.algorithm = algorithm;
+        this.kid = kid;
+        this.publicKey = publicKey;
+        this.signatures = JWSSignerContext.getSignaturePool(algorithm);
+    }
+
+    @Override
+    public String getKid() {
+        return kid;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public boolean verify(byte[] data, byte[] signature) throws VerificationException {
+        Signature verifier = signatures.borrow();
+        try {
+            verifier.initVerify(publicKey);
+            verifier.update(data);
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException e) {
+            throw new VerificationException("Signature verification failed", e);
+        } finally {
+            signatures.release(verifier);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.keycloak.example.util;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Meter;
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.KeyUtils;
+
+/**
+ * Pool of the pre-generated key pairs. Generating key pair (especially RSA) is expensive, so the key pairs are generated in the background by low-priority thread and
+ * the requests just take the ready key pair from the pool. The pool of every key type is refilled up to the configured size whenever key is taken from it.
+ *
+ * If the pool is empty (EG. when many keys are requested in short time), the key pair is generated synchronously.
+ */
+public class KeyPairPool {
+
+    private static final Logger log = Logger.getLogger(KeyPairPool.class);
+
+    public enum KeySpec {
+
+        RSA_2048(() -> KeyUtils.generateRsaKeyPair(2048)),
+        RSA_3072(() -> KeyUtils.generateRsaKeyPair(3072)),
+        EC_P256(() -> KeyUtils.generateEcKeyPair("secp256r1")),
+        EC_P384(() -> KeyUtils.generateEcKeyPair("secp384r1")),
+        EC_P521(() -> KeyUtils.generateEcKeyPair("secp521r1")),
+        ED25519(() -> KeyUtils.generateEddsaKeyPair("Ed25519"));
+
+        private final Supplier<KeyPair> generator;
+
+        KeySpec(Supplier<KeyPair> generator) {
+            this.generator = generator;
+        }
+    }
+
+    private final int poolSize;
+    private final Map<KeySpec, Pool> pools = new EnumMap<>(KeySpec.class);
+    private final List<Meter> meters = new ArrayList<>();
+    private final ExecutorService refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "key-pair-pool-refill");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * @param poolSize number of the ready key pairs of every key type. If 0, keys are always generated synchronously
+     */
+    public KeyPairPool(int poolSize) {
+        this.poolSize = poolSize;
+        for (KeySpec keySpec : KeySpec.values()) {
+            Pool pool = new Pool(keySpec, poolSize);
+            pools.put(keySpec, pool);
+            meters.add(PlaygroundMetrics.registerGauge(PlaygroundMetrics.KEY_POOL_GAUGE, "Ready key pairs in the key pair pool", pool.keyPairs, BlockingQueue::size,
+                    "key", keySpec.name()));
+        }
+    }
+
+    /**
+     * Fill all the pools in the background
+     */
+    public void prefill() {
+        pools.values().forEach(this::refill);
+    }
+
+    /**
+     * @return key pair, which is not used by anyone else
+     */
+    public KeyPair take(KeySpec keySpec) {
+        Pool pool = pools.get(keySpec);
+        KeyPair keyPair = pool.keyPairs.poll();
+        if (keyPair != null) {
+            pool.hits.incrementAndGet();
+        } else {
+            pool.misses.incrementAndGet();
+            keyPair = keySpec.generator.get();
+            log.debugf("Key pool %s was empty. Key pair generated synchronously", keySpec);
+        }
+        refill(pool);
+        return keyPair;
+    }
+
+    public int getDepth(KeySpec keySpec) {
+        return pools.get(keySpec).keyPairs.size();
+    }
+
+    public long getHits(KeySpec keySpec) {
+        return pools.get(keySpec).hits.get();
+    }
+
+    public long getMisses(KeySpec keySpec) {
+        return pools.get(keySpec).misses.get();
+    }
+
+    /**
+     * @return average time of generating single key pair by the background thread (in microseconds)
+     */
+    public long getAverageRefillLatencyMicros(KeySpec keySpec) {
+        Pool pool = pools.get(keySpec);
+        long generated = pool.generated.get();
+        return generated == 0 ? 0 : pool.generatingTimeNanos.get() / generated / 1000;
+    }
+
+    /**
+     * @return maximum time of generating single key pair by the background thread (in microseconds)
+     */
+    public long getMaxRefillLatencyMicros(KeySpec keySpec) {
+        return pools.get(keySpec).maxGeneratingTimeNanos.get() / 1000;
+    }
+
+    public void close() {
+        PlaygroundMetrics.remove(meters);
+        refillExecutor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Key pair pool (size " + poolSize + "):");
+        for (KeySpec keySpec : KeySpec.values()) {
+            builder.append(String.format("%n%s: %d ready, %d hits, %d misses, refill latency avg %d us, max %d us",
+                    keySpec, getDepth(keySpec), getHits(keySpec), getMisses(keySpec), getAverageRefillLatencyMicros(keySpec), getMaxRefillLatencyMicros(keySpec)));
+        }
+        return builder.toString();
+    }
+
+    // Only one refill task is scheduled for every pool at a time
+    private void refill(Pool pool) {
+        if (poolSize == 0 || pool.keyPairs.remainingCapacity() == 0 || refillExecutor.isShutdown() || !pool.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        refillExecutor.execute(() -> {
+            boolean failed = false;
+            try {
+                while (pool.keyPairs.remainingCapacity() > 0) {
+                    long start = System.nanoTime();
+                    KeyPair keyPair = pool.keySpec.generator.get();
+                    long time = System.nanoTime() - start;
+                    pool.generated.incrementAndGet();
+                    pool.generatingTimeNanos.addAndGet(time);
+                    pool.maxGeneratingTimeNanos.accumulateAndGet(time, Math::max);
+                    PlaygroundMetrics.recordKeyRefill(pool.keySpec, time);
+                    if (!pool.keyPairs.offer(keyPair)) {
+                        break;
+                    }
+                }
+            } catch (RuntimeException re) {
+                failed = true;
+                log.warnf(re, "Failed to generate key pair %s", pool.keySpec);
+            } finally {
+                pool.refilling.set(false);
+            }
+            // Key taken after the loop finished, but before the flag was cleared, did not schedule the refill. Not retried after failure to avoid endless loop
+            if (!failed) {
+                refill(pool);
+            }
+        });
+    }
+
+
+    private static class Pool {
+
+        private final KeySpec keySpec;
+        private final BlockingQueue<KeyPair> keyPairs;
+        private final AtomicBoolean refilling = new AtomicBoolean();
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong generated = new AtomicLong();
+        private final AtomicLong generatingTimeNanos = new AtomicLong();
+        private final AtomicLong maxGeneratingTimeNanos = new AtomicLong();
+
+        private Pool(KeySpec keySpec, int poolSize) {
+            this.keySpec = keySpec;
+            this.keyPairs = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.keycloak.example.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.net.ssl.SSLContext;
+
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.common.util.KeystoreUtil;
+
+/**
+ * Cache of the keystores (and SSLContexts created from them). Keystore is loaded from the disk just once and then re-loaded only when the keystore file is
+ * changed (based on its last modification time). So the rotated certificates are used without restart of the application.
+ */
+class KeyStoreCache {
+
+    private static final Logger log = Logger.getLogger(KeyStoreCache.class);
+
+    private static final ConcurrentMap<KeyStoreKey, CachedKeyStore> keyStores = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<SSLContextKey, CachedSSLContext> sslContexts = new ConcurrentHashMap<>();
+
+    /**
+     * @return keystore or null if it is not possible to load the keystore
+     */
+    static CachedKeyStore getKeyStore(String path, String password) {
+        if (path == null) {
+            return null;
+        }
+        long lastModified = getLastModified(path);
+        CachedKeyStore cached = keyStores.get(new KeyStoreKey(path, password));
+        if (cached != null && cached.lastModified == lastModified) {
+            return cached;
+        }
+
+        return keyStores.compute(new KeyStoreKey(path, password), (key, current) -> {
+            if (current != null && current.lastModified == lastModified) {
+                return current;
+            }
+            try {
+                long start = System.nanoTime();
+                KeyStore keyStore = KeystoreUtil.loadKeyStore(path, password);
+                CachedKeyStore loaded = new CachedKeyStore(keyStore, lastModified, computeThumbprint(keyStore));
+                log.infof("Loaded keystore '%s' in %d ms", path, (System.nanoTime() - start) / 1000000);
+                return loaded;
+            } catch (Exception e) {
+                log.errorf(e, "Failed to load keystore '%s'", path);
+                return current;
+            }
+        });
+    }
+
+    /**
+     * @return SSLContext with the given keystore and truststore or null if none of them is available. SSLContext is created again when keystore or truststore is changed
+     */
+    static SSLContext getSSLContext(String keyStorePath, String keyStorePassword, String trustStorePath, String trustStorePassword) {
+        CachedKeyStore keyStore = getKeyStore(keyStorePath, keyStorePassword);
+        CachedKeyStore trustStore = getKeyStore(trustStorePath, trustStorePassword);
+        if (keyStore == null && trustStore == null) {
+            return null;
+        }
+
+        SSLContextKey key = new SSLContextKey(new KeyStoreKey(keyStorePath, keyStorePassword), new KeyStoreKey(trustStorePath, trustStorePassword));
+        CachedSSLContext cached = sslContexts.get(key);
+        if (cached != null && cached.isCreatedFrom(keyStore, trustStore)) {
+            return cached.sslContext;
+        }
+
+        return sslContexts.compute(key, (k, current) -> {
+            if (current != null && current.isCreatedFrom(keyStore, trustStore)) {
+                return current;
+            }
+            SSLContext sslContext = MutualTLSUtils.newSSLContext(keyStore == null ? null : keyStore.keyStore, "secret", trustStore == null ? null : trustStore.keyStore);
+            return new CachedSSLContext(keyStore, trustStore, sslContext);
+        }).sslContext;
+    }
+
+    private static long getLastModified(String path) {
+        try {
+            return Files.getLastModifiedTime(Paths.get(path)).toMillis();
+        } catch (IOException ioe) {
+            return -1;
+        }
+    }
+
+    // Thumbprint of the last certificate in the keystore
+    private static String computeThumbprint(KeyStore keystore) throws Exception {
+        Enumeration<String> es = keystore.aliases();
+        String alias = null;
+        while(es.hasMoreElements()) {
+            alias = es.nextElement();
+        }
+        Certificate cert = alias == null ? null : keystore.getCertificate(alias);
+        if (!(cert instanceof X509Certificate)) {
+            return null;
+        }
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(cert.getEncoded());
+        return Base64Url.encode(md.digest());
+    }
+
+
+    static class CachedKeyStore {
+
+        private final KeyStore keyStore;
+        private final long lastModified;
+        private final String thumbprint;
+
+        private CachedKeyStore(KeyStore keyStore, long lastModified, String thumbprint) {
+            this.keyStore = keyStore;
+            this.lastModified = lastModified;
+            this.thumbprint = thumbprint;
+        }
+
+        KeyStore getKeyStore() {
+            return keyStore;
+        }
+
+        String getThumbprint() throws KeyStoreException {
+            if (thumbprint == null) {
+                throw new KeyStoreException("No X.509 certificate available in the keystore");
+            }
+            return thumbprint;
+        }
+    }
+
+    private static class CachedSSLContext {
+
+        private final CachedKeyStore keyStore;
+        private final CachedKeyStore trustStore;
+        private final SSLContext sslContext;
+
+        private CachedSSLContext(CachedKeyStore keyStore, CachedKeyStore trustStore, SSLContext sslContext) {
+            this.keyStore = keyStore;
+            this.trustStore = trustStore;
+            this.sslContext = sslContext;
+        }
+
+        private boolean isCreatedFrom(CachedKeyStore keyStore, CachedKeyStore trustStore) {
+            return this.keyStore == keyStore && this.trustStore == trustStore;
+        }
+    }
+
+    private static class KeyStoreKey {
+
+        private final String path;
+        private final String password;
+
+        private KeyStoreKey(String path, String password) {
+            this.path = path;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof KeyStoreKey)) return false;
+            KeyStoreKey that = (KeyStoreKey) o;
+            return Objects.equals(path, that.path) && Objects.equals(password, that.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, password);
+        }
+    }
+
+    private static class SSLContextKey {
+
+        private final KeyStoreKey keyStore;
+        private final KeyStoreKey trustStore;
+
+        private SSLContextKey(KeyStoreKey keyStore, KeyStoreKey trustStore) {
+            this.keyStore = keyStore;
+            this.trustStore = trustStore;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SSLContextKey)) return false;
+            SSLContextKey that = (SSLContextKey) o;
+            return keyStore.equals(that.keyStore) && trustStore.equals(that.trustStore);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(keyStore, trustStore);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package org.keycloak.example.util;
 
 import java.security.KeyPair;
-import java.security.PrivateKey;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,15 +10,16 @@ import jakarta.ws.rs.QueryParam;
 import org.keycloak.common.util.KeyUtils;
 import org.keycloak.common.util.PemUtils;
 import org.keycloak.crypto.Algorithm;
-import org.keycloak.crypto.AsymmetricSignatureSignerContext;
 import org.keycloak.crypto.KeyType;
 import org.keycloak.crypto.KeyUse;
-import org.keycloak.crypto.KeyWrapper;
 import org.keycloak.crypto.SignatureSignerContext;
+import org.keycloak.example.Services;
 import org.keycloak.example.bean.AuthorizationEndpointRequestObject;
+import org.keycloak.example.jfr.SigningEvent;
 import org.keycloak.jose.jwk.JSONWebKeySet;
 import org.keycloak.jose.jwk.JWK;
 import org.keycloak.jose.jwk.JWKBuilder;
+import org.keycloak.jose.jwe.JWEConstants;
 import org.keycloak.jose.jws.JWSBuilder;
 
 /**
@@ -32,6 +32,20 @@ public class KeysWrapper {
 
     private final OIDCClientData clientData = new OIDCClientData();
 
+    // Created just once for the current keys. It is used for signing all the request objects
+    private SignatureSignerContext signerContext;
+
+    // Pool to take the new keys from. The application-wide pool is used if not set
+    private final KeyPairPool keyPairPool;
+
+    public KeysWrapper() {
+        this(null);
+    }
+
+    public KeysWrapper(KeyPairPool keyPairPool) {
+        this.keyPairPool = keyPairPool;
+    }
+
     public Map<String, String> generateKeys(@QueryParam("jwaAlgorithm") String jwaAlgorithm,
                                             @QueryParam("advertiseJWKAlgorithm") Boolean advertiseJWKAlgorithm) {
         try {
@@ -48,30 +62,34 @@ public class KeysWrapper {
                 case Algorithm.PS384:
                 case Algorithm.PS512:
                     keyType = KeyType.RSA;
-                    keyPair = KeyUtils.generateRsaKeyPair(2048);
+                    keyPair = takeKeyPair(KeyPairPool.KeySpec.RSA_2048);
+                    break;
+                case Algorithm.ES256:
+                    keyType = KeyType.EC;
+                    keyPair = takeKeyPair(KeyPairPool.KeySpec.EC_P256);
+                    break;
+                case Algorithm.ES384:
+                    keyType = KeyType.EC;
+                    keyPair = takeKeyPair(KeyPairPool.KeySpec.EC_P384);
+                    break;
+                case Algorithm.ES512:
+                    keyType = KeyType.EC;
+                    keyPair = takeKeyPair(KeyPairPool.KeySpec.EC_P521);
+                    break;
+                case Algorithm.EdDSA:
+                    keyType = KeyType.OKP;
+                    keyPair = takeKeyPair(KeyPairPool.KeySpec.ED25519);
+                    break;
+                case JWEConstants.RSA1_5:
+                case JWEConstants.RSA_OAEP:
+                case JWEConstants.RSA_OAEP_256:
+                    // for JWE KEK Key Encryption
+                    keyType = KeyType.RSA;
+                    keyUse = KeyUse.ENC;
+                    keyPair = takeKeyPair(KeyPairPool.KeySpec.RSA_2048);
                     break;
-//                case Algorithm.ES256:
-//                    keyType = KeyType.EC;
-//                    keyPair = generateEcdsaKey("secp256r1");
-//                    break;
-//                case Algorithm.ES384:
-//                    keyType = KeyType.EC;
-//                    keyPair = generateEcdsaKey("secp384r1");
-//                    break;
-//                case Algorithm.ES512:
-//                    keyType = KeyType.EC;
-//                    keyPair = generateEcdsaKey("secp521r1");
-//                    break;
-//                case JWEConstants.RSA1_5:
-//                case JWEConstants.RSA_OAEP:
-//                case JWEConstants.RSA_OAEP_256:
-//                    // for JWE KEK Key Encryption
-//                    keyType = KeyType.RSA;
-//                    keyUse = KeyUse.ENC;
-//                    keyPair = KeyUtils.generateRsaKeyPair(2048);
-//                    break;
                 default :
-                    throw new RuntimeException("Unsupported signature algorithm");
+                    throw new RuntimeException("Unsupported algorithm " + jwaAlgorithm);
             }
 
             clientData.setKeyPair(keyPair);
@@ -82,12 +100,18 @@ public class KeysWrapper {
                 clientData.setKeyAlgorithm(null);
             }
             clientData.setKeyUse(keyUse);
+            signerContext = null;
         } catch (Exception e) {
             throw new BadRequestException("Error generating signing keypair", e);
         }
         return getKeysAsPem();
     }
 
+    private KeyPair takeKeyPair(KeyPairPool.KeySpec keySpec) {
+        KeyPairPool pool = keyPairPool != null ? keyPairPool : Services.instance().getKeyPairPool();
+        return pool.take(keySpec);
+    }
+
     private Map<String, String> getKeysAsPem() {
         String privateKeyPem = PemUtils.encodeKey(clientData.getSigningKeyPair().getPrivate());
         String publicKeyPem = PemUtils.encodeKey(clientData.getSigningKeyPair().getPublic());
@@ -110,7 +134,9 @@ public class KeysWrapper {
         } else if (KeyType.RSA.equals(keyType)) {
             keySet.setKeys(new JWK[] { JWKBuilder.create().algorithm(keyAlgorithm).rsa(keyPair.getPublic(), keyUse) });
         } else if (KeyType.EC.equals(keyType)) {
-            keySet.setKeys(new JWK[] { JWKBuilder.create().algorithm(keyAlgorithm).ec(keyPair.getPublic()) });
+            keySet.setKeys(new JWK[] { JWKBuilder.create().algorithm(keyAlgorithm).ec(keyPair.getPublic(), keyUse) });
+        } else if (KeyType.OKP.equals(keyType)) {
+            keySet.setKeys(new JWK[] { JWKBuilder.create().algorithm(keyAlgorithm).okp(keyPair.getPublic(), keyUse) });
         } else {
             keySet.setKeys(new JWK[] {});
         }
@@ -124,27 +150,32 @@ public class KeysWrapper {
             return new JWSBuilder().jsonContent(oidcRequest).none();
         } else if (clientData.getSigningKeyPair() == null) {
             throw new MyException("signing key not set");
+        } else if (clientData.getKeyUse() != KeyUse.SIG) {
+            throw new MyException("Client keys are encryption keys. Signing keys need to be generated to sign request object");
         } else {
-            PrivateKey privateKey = clientData.getSigningKeyPair().getPrivate();
-            String kid = KeyUtils.createKeyId(clientData.getSigningKeyPair().getPublic());
-            KeyWrapper keyWrapper = new KeyWrapper();
-            keyWrapper.setAlgorithm(clientData.getSigningKeyAlgorithm());
-            keyWrapper.setKid(kid);
-            keyWrapper.setPrivateKey(privateKey);
-            SignatureSignerContext signer;
-            switch (clientData.getSigningKeyAlgorithm()) {
-//                case Algorithm.ES256:
-//                case Algorithm.ES384:
-//                case Algorithm.ES512:
-//                    signer = new ServerECDSASignatureSignerContext(keyWrapper);
-//                    break;
-                default:
-                    signer = new AsymmetricSignatureSignerContext(keyWrapper);
+            SignatureSignerContext signer = getSignerContext(jwaAlgorithm);
+            SigningEvent event = new SigningEvent("request-object", signer.getAlgorithm());
+            event.begin();
+            try {
+                return PlaygroundMetrics.timeSigning("request-object", signer.getAlgorithm(),
+                        () -> new JWSBuilder().kid(signer.getKid()).jsonContent(oidcRequest).sign(signer));
+            } finally {
+                event.commit();
             }
-            return new JWSBuilder().kid(kid).jsonContent(oidcRequest).sign(signer);
         }
     }
 
+    private SignatureSignerContext getSignerContext(String jwaAlgorithm) {
+        // Key algorithm is not available if it was not advertised in the JWKS
+        String algorithm = clientData.getSigningKeyAlgorithm() != null ? clientData.getSigningKeyAlgorithm() : jwaAlgorithm;
+        if (signerContext == null || !signerContext.getAlgorithm().equals(algorithm)) {
+            KeyPair keyPair = clientData.getSigningKeyPair();
+            String kid = KeyUtils.createKeyId(keyPair.getPublic());
+            signerContext = new JWSSignerContext(algorithm, kid, keyPair.getPrivate());
+        }
+        return signerContext;
+    }
+
     public static class OIDCClientData {
 
         private KeyPair keyPair;
@@ -0,0 +1,191 @@
+package org.keycloak.example.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.keycloak.common.VerificationException;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.SignatureException;
+import org.keycloak.jose.jws.JWSHeader;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.JsonWebToken;
+
+/**
+ * Verifies the tokens issued by the Keycloak server without sending any request to the server (once the JWKS is loaded by the {@link JWKSKeyCache}). Checks the
+ * signature, expiration and the binding of the token to the DPoP key ("cnf.jkt") and to the client certificate ("cnf.x5t#S256").
+ *
+ * Tokens signed with the symmetric algorithms (EG. refresh tokens signed with HS512) can't be verified as their key is known just to the server. Their signature
+ * is reported as skipped. Unsigned tokens ("alg: none") and tokens signed with an unsupported algorithm are reported as failed.
+ */
+public class LocalTokenVerifier {
+
+    private final JWKSKeyCache keyCache;
+
+    public LocalTokenVerifier(JWKSKeyCache keyCache) {
+        this.keyCache = keyCache;
+    }
+
+    /**
+     * @param token encoded token
+     * @param type type of the token content
+     * @param dpopContext DPoP context of the session, which obtained the token. Used to check the "cnf.jkt". Can be null if DPoP is not used
+     * @throws MyException if the token can't be parsed
+     */
+    public <T extends JsonWebToken> Result<T> verify(String token, Class<T> type, DPoPContext dpopContext) {
+        JWSInput jws;
+        T content;
+        try {
+            jws = new JWSInput(token);
+            content = jws.readJsonContent(type);
+        } catch (JWSInputException e) {
+            throw new MyException("Error when trying to deserialize token", e);
+        }
+
+        List<Check> checks = new ArrayList<>();
+        checks.add(checkSignature(jws));
+        checks.add(checkExpiration(content));
+        if (content instanceof AccessToken) {
+            AccessToken.Confirmation confirmation = ((AccessToken) content).getConfirmation();
+            checks.add(checkDPoPBinding(confirmation == null ? null : confirmation.getKeyThumbprint(), dpopContext));
+            checks.add(checkCertificateBinding(confirmation == null ? null : confirmation.getCertThumbprint()));
+        }
+        return new Result<>(content, checks);
+    }
+
+    private Check checkSignature(JWSInput jws) {
+        JWSHeader header = jws.getHeader();
+        String algorithm = header.getRawAlgorithm();
+        if (algorithm == null || algorithm.equalsIgnoreCase("none")) {
+            return new Check("Signature", Status.FAILED, "Token is not signed (algorithm " + algorithm + ")");
+        }
+        if (algorithm.startsWith("HS")) {
+            return new Check("Signature", Status.SKIPPED, "Algorithm " + algorithm + " can be verified just by the server");
+        }
+        if (!JWSSignerContext.isSupported(algorithm)) {
+            return new Check("Signature", Status.FAILED, "Unsupported algorithm " + algorithm);
+        }
+
+        JWSVerifierContext verifier = keyCache.getVerifier(header.getKeyId(), algorithm);
+        if (verifier == null) {
+            return new Check("Signature", Status.FAILED, "Key '" + header.getKeyId() + "' not found in the JWKS of the server");
+        }
+        try {
+            boolean valid = verifier.verify(jws.getEncodedSignatureInput().getBytes(StandardCharsets.UTF_8), jws.getSignature());
+            return valid ? new Check("Signature", Status.OK, algorithm + ", key '" + header.getKeyId() + "'")
+                    : new Check("Signature", Status.FAILED, "Invalid " + algorithm + " signature of key '" + header.getKeyId() + "'");
+        } catch (VerificationException | SignatureException e) {
+            return new Check("Signature", Status.FAILED, e.getMessage());
+        }
+    }
+
+    private Check checkExpiration(JsonWebToken token) {
+        Long exp = token.getExp();
+        if (exp == null) {
+            return new Check("Expiration", Status.SKIPPED, "Token does not expire");
+        }
+        long remaining = exp - Time.currentTime();
+        return remaining > 0 ? new Check("Expiration", Status.OK, "Expires in " + remaining + " seconds")
+                : new Check("Expiration", Status.FAILED, "Expired " + (-remaining) + " seconds ago");
+    }
+
+    private Check checkDPoPBinding(String jkt, DPoPContext dpopContext) {
+        if (jkt == null) {
+            return new Check("DPoP binding (cnf.jkt)", Status.SKIPPED, "Token not bound to DPoP key");
+        }
+        if (dpopContext == null) {
+            return new Check("DPoP binding (cnf.jkt)", Status.FAILED, "Token bound to DPoP key " + jkt + ", but DPoP is not used");
+        }
+        // Verification must not generate new DPoP key of the session
+        String expected = dpopContext.getCurrentKeyThumbprint();
+        if (expected == null) {
+            return new Check("DPoP binding (cnf.jkt)", Status.FAILED, "Token bound to DPoP key " + jkt + ", but there is no current DPoP key");
+        }
+        return jkt.equals(expected) ? new Check("DPoP binding (cnf.jkt)", Status.OK, jkt)
+                : new Check("DPoP binding (cnf.jkt)", Status.FAILED, "Token bound to " + jkt + ", but current DPoP key is " + expected);
+    }
+
+    private Check checkCertificateBinding(String x5t) {
+        if (x5t == null) {
+            return new Check("Certificate binding (cnf.x5t#S256)", Status.SKIPPED, "Token not bound to client certificate");
+        }
+        String expected;
+        try {
+            expected = MutualTLSUtils.getThumbprintFromDefaultClientCert();
+        } catch (Exception e) {
+            return new Check("Certificate binding (cnf.x5t#S256)", Status.FAILED, "Not able to compute thumbprint of client certificate: " + e.getMessage());
+        }
+        return x5t.equals(expected) ? new Check("Certificate binding (cnf.x5t#S256)", Status.OK, x5t)
+                : new Check("Certificate binding (cnf.x5t#S256)", Status.FAILED, "Token bound to " + x5t + ", but client certificate is " + expected);
+    }
+
+
+    public enum Status {
+        OK, FAILED, SKIPPED
+    }
+
+    public static class Check {
+
+        private final String name;
+        private final Status status;
+        private final String detail;
+
+        private Check(String name, Status status, String detail) {
+            this.name = name;
+            this.status = status;
+            this.detail = detail;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + status + " (" + detail + ")";
+        }
+    }
+
+    public static class Result<T extends JsonWebToken> {
+
+        private final T token;
+        private final List<Check> checks;
+
+        private Result(T token, List<Check> checks) {
+            this.token = token;
+            this.checks = Collections.unmodifiableList(checks);
+        }
+
+        public T getToken() {
+            return token;
+        }
+
+        public List<Check> getChecks() {
+            return checks;
+        }
+
+        /**
+         * @return true if none of the checks failed
+         */
+        public boolean isValid() {
+            return checks.stream().noneMatch(check -> check.status == Status.FAILED);
+        }
+
+        @Override
+        public String toString() {
+            return (isValid() ? "VALID" : "INVALID") + "\n" + checks.stream().map(Check::toString).collect(Collectors.joining("\n"));
+        }
+    }
+}
@@ -4,7 +4,6 @@ import jakarta.ws.rs.core.UriInfo;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.common.util.SecretGenerator;
 import org.keycloak.common.util.Time;
-import org.keycloak.example.Services;
 import org.keycloak.example.bean.AuthorizationEndpointRequestObject;
 import org.keycloak.example.bean.UrlBean;
 import org.keycloak.representations.oidc.OIDCClientRepresentation;
@@ -15,9 +14,8 @@ import java.util.function.Consumer;
 
 public class LoginUtil {
 
-    public static LoginUrlBuilder getAuthorizationRequestUrl(OIDCFlowConfigContext oidcFlowCtx, UriInfo uriInfo, String scope) {
-        OAuthClient oauthClient = Services.instance().getOauthClient();
-        SessionData session = Services.instance().getSession();
+    public static LoginUrlBuilder getAuthorizationRequestUrl(SessionData session, OIDCFlowConfigContext oidcFlowCtx, UriInfo uriInfo, String scope) {
+        OAuthClient oauthClient = session.getOauthClient();
 
         oauthClient.scope(scope);
 
@@ -29,12 +27,12 @@ public class LoginUtil {
         String dpopJkt = oidcFlowCtx.isUseDPoPAuthzCodeBinding() ? session.getOrCreateDpopContext().generateKeyThumbprint() : null;
 
         if (oidcFlowCtx.isUseRequestObject()) {
-            AuthorizationEndpointRequestObject requestObject = createValidRequestObjectForSecureRequestObjectExecutor(oidcClient.getClientId(), oidcFlowCtx.isUseNonce(), uriInfo);
-            KeysWrapper keys = Services.instance().getSession().getKeys();
+            AuthorizationEndpointRequestObject requestObject = createValidRequestObjectForSecureRequestObjectExecutor(session, oidcClient.getClientId(), oidcFlowCtx.isUseNonce(), uriInfo);
+            KeysWrapper keys = session.getKeys();
             if (keys == null) {
                 throw new MyException("JWKS keys not set when generating request object. Keys need to be created during client registration");
             }
-            String request = keys.getOidcRequest(requestObject, Services.instance().getSession().getRegisteredClient().getRequestObjectSigningAlg());
+            String request = keys.getOidcRequest(requestObject, session.getRegisteredClient().getRequestObjectSigningAlg());
             // oauthClient.client(oidcClient.getClientId()); Already set after client registration
             return oauthClient.redirectUri(null)
                     .responseType("code id_token")
@@ -80,9 +78,7 @@ public class LoginUtil {
         }
     }
 
-    private static AuthorizationEndpointRequestObject createValidRequestObjectForSecureRequestObjectExecutor(String clientId, boolean nonce, UriInfo uriInfo) {
-        SessionData session = Services.instance().getSession();
-
+    private static AuthorizationEndpointRequestObject createValidRequestObjectForSecureRequestObjectExecutor(SessionData session, String clientId, boolean nonce, UriInfo uriInfo) {
         AuthorizationEndpointRequestObject requestObject = new AuthorizationEndpointRequestObject();
         requestObject.id(UUIDUtil.generateId());
         requestObject.iat(Long.valueOf(Time.currentTime()));
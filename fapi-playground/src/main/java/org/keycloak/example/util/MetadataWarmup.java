@@ -0,0 +1,174 @@
+package org.keycloak.example.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.logging.Logger;
+import org.keycloak.example.oid4vci.OID4VCIContext;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.protocol.oid4vc.model.CredentialIssuer;
+import org.keycloak.protocol.oidc.representations.OIDCConfigurationRepresentation;
+
+/**
+ * Loads all the metadata of the Keycloak server to the {@link ServerMetadataCache} at the application startup, so the first requests don't need to do any discovery.
+ *
+ * OIDC configuration, OID4VCI credential issuer metadata and AuthZEN configuration are loaded in parallel. JWKS is loaded as soon as the OIDC configuration is
+ * available as its URL is part of it. The structures derived from the metadata (available credentials, endpoint URLs) are computed once all documents are loaded.
+ *
+ * Application is ready when OIDC configuration and JWKS are loaded. OID4VCI and AuthZEN are optional as they may not be enabled on the server. When warm-up fails
+ * (EG. Keycloak server is not yet started), it is started again by the next readiness check.
+ */
+public class MetadataWarmup {
+
+    private static final Logger log = Logger.getLogger(MetadataWarmup.class);
+
+    private final ServerMetadataCache metadataCache;
+    private final String issuer;
+    private final String credentialIssuerMetadataUrl;
+    private final String authzenConfigurationUrl;
+
+    private final AtomicReference<CompletableFuture<Snapshot>> running = new AtomicReference<>();
+    private volatile Snapshot snapshot;
+    private volatile String lastError;
+
+    public MetadataWarmup(ServerMetadataCache metadataCache, String serverRoot, String realmName) {
+        this.metadataCache = metadataCache;
+        this.issuer = serverRoot + "/realms/" + realmName;
+        this.credentialIssuerMetadataUrl = serverRoot + "/.well-known/openid-credential-issuer/realms/" + realmName;
+        this.authzenConfigurationUrl = issuer + "/.well-known/authzen-configuration";
+    }
+
+    /**
+     * Start the warm-up in the background unless it is already running
+     */
+    public void start() {
+        CompletableFuture<Snapshot> warmup = new CompletableFuture<>();
+        if (!running.compareAndSet(null, warmup)) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        CompletableFuture<OIDCConfigurationRepresentation> oidcConfig = metadataCache.getAsync(issuer + "/.well-known/openid-configuration", OIDCConfigurationRepresentation.class);
+        CompletableFuture<JSONWebKeySet> jwks = oidcConfig.thenCompose(config -> metadataCache.getAsync(config.getJwksUri(), JSONWebKeySet.class));
+        CompletableFuture<CredentialIssuer> credentialIssuer = optional(metadataCache.getAsync(credentialIssuerMetadataUrl, CredentialIssuer.class), "OID4VCI credential issuer metadata");
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Map<String, Object>> authzenConfig = optional(metadataCache.getAsync(authzenConfigurationUrl, Map.class)
+                .thenApply(config -> (Map<String, Object>) config), "AuthZEN configuration");
+
+        CompletableFuture.allOf(jwks, credentialIssuer, authzenConfig)
+                .thenApply(ignored -> new Snapshot(oidcConfig.join(), jwks.join(), credentialIssuer.join(), authzenConfig.join()))
+                .whenComplete((result, error) -> {
+                    if (error == null) {
+                        snapshot = result;
+                        lastError = null;
+                        log.infof("Metadata warm-up finished in %d ms. Endpoints: %s", (System.nanoTime() - start) / 1000000, result.getEndpoints());
+                        warmup.complete(result);
+                    } else {
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        lastError = cause.getMessage();
+                        log.warnf("Metadata warm-up failed: %s. Will be retried by the next readiness check", lastError);
+                        warmup.completeExceptionally(cause);
+                    }
+                    running.set(null);
+                });
+    }
+
+    private <T> CompletableFuture<T> optional(CompletableFuture<T> future, String name) {
+        return future.exceptionally(error -> {
+            log.debugf("%s not available: %s", name, error.getMessage());
+            return null;
+        });
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * @return metadata loaded by the last successful warm-up or null if warm-up did not finish yet
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return error of the last warm-up or null if it was successful
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+
+    public static class Snapshot {
+
+        private final OIDCConfigurationRepresentation oidcConfiguration;
+        private final JSONWebKeySet jwks;
+        private final CredentialIssuer credentialIssuer;
+        private final List<OID4VCIContext.OID4VCCredential> availableCredentials;
+        private final Map<String, Object> authzenConfiguration;
+        private final Map<String, String> endpoints;
+
+        private Snapshot(OIDCConfigurationRepresentation oidcConfiguration, JSONWebKeySet jwks, CredentialIssuer credentialIssuer, Map<String, Object> authzenConfiguration) {
+            this.oidcConfiguration = oidcConfiguration;
+            this.jwks = jwks;
+            this.credentialIssuer = credentialIssuer;
+            this.availableCredentials = credentialIssuer == null ? Collections.emptyList() : List.copyOf(OID4VCIContext.getAvailableCredentials(credentialIssuer));
+            this.authzenConfiguration = authzenConfiguration;
+
+            Map<String, String> endpoints = new LinkedHashMap<>();
+            endpoints.put("authorization", oidcConfiguration.getAuthorizationEndpoint());
+            endpoints.put("token", oidcConfiguration.getTokenEndpoint());
+            endpoints.put("userinfo", oidcConfiguration.getUserinfoEndpoint());
+            endpoints.put("jwks", oidcConfiguration.getJwksUri());
+            endpoints.put("registration", oidcConfiguration.getRegistrationEndpoint());
+            endpoints.put("end_session", oidcConfiguration.getLogoutEndpoint());
+            endpoints.put("pushed_authorization_request", oidcConfiguration.getPushedAuthorizationRequestEndpoint());
+            if (credentialIssuer != null) {
+                endpoints.put("credential", credentialIssuer.getCredentialEndpoint());
+                endpoints.put("nonce", credentialIssuer.getNonceEndpoint());
+            }
+            if (authzenConfiguration != null && authzenConfiguration.get("access_evaluation_endpoint") != null) {
+                endpoints.put("access_evaluation", authzenConfiguration.get("access_evaluation_endpoint").toString());
+            }
+            endpoints.values().removeIf(url -> url == null);
+            this.endpoints = Collections.unmodifiableMap(endpoints);
+        }
+
+        public OIDCConfigurationRepresentation getOidcConfiguration() {
+            return oidcConfiguration;
+        }
+
+        public JSONWebKeySet getJwks() {
+            return jwks;
+        }
+
+        /**
+         * @return OID4VCI credential issuer metadata or null if OID4VCI is not available on the server
+         */
+        public CredentialIssuer getCredentialIssuer() {
+            return credentialIssuer;
+        }
+
+        public List<OID4VCIContext.OID4VCCredential> getAvailableCredentials() {
+            return availableCredentials;
+        }
+
+        /**
+         * @return AuthZEN configuration or null if AuthZEN is not available on the server
+         */
+        public Map<String, Object> getAuthzenConfiguration() {
+            return authzenConfiguration;
+        }
+
+        /**
+         * @return URLs of the endpoints of the server by their name
+         */
+        public Map<String, String> getEndpoints() {
+            return endpoints;
+        }
+    }
+}
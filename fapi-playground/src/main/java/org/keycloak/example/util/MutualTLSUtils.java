@@ -3,12 +3,9 @@ package org.keycloak.example.util;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.X509Certificate;
-import java.util.Enumeration;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
@@ -21,8 +18,6 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.jboss.logging.Logger;
-import org.keycloak.common.util.Base64Url;
-import org.keycloak.common.util.KeystoreUtil;
 
 import static org.keycloak.example.util.MyConstants.KEYSTORES_DIR;
 
@@ -80,34 +75,32 @@ public class MutualTLSUtils {
     }
 
     public static CloseableHttpClient newCloseableHttpClient(String keyStorePath, String keyStorePassword, String trustStorePath, String trustStorePassword) {
-
-        KeyStore keystore = null;
-        // Load the keystore file
-        if (keyStorePath != null) {
-            try {
-                keystore = KeystoreUtil.loadKeyStore(keyStorePath, keyStorePassword);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        SSLContext sslContext = newSSLContext(keyStorePath, keyStorePassword, trustStorePath, trustStorePassword);
+        if (sslContext != null) {
+            SSLConnectionSocketFactory sf = new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
+            return HttpClientBuilder.create().setSSLSocketFactory(sf).setRedirectStrategy(DefaultRedirectStrategy.INSTANCE).build();
         }
 
-        // load the trustore
-        KeyStore truststore = null;
-        if (trustStorePath != null) {
-            try {
-                truststore = KeystoreUtil.loadKeyStore(trustStorePath, trustStorePassword);
-            } catch(Exception e) {
-                e.printStackTrace();
-            }
-        }
+        return HttpClientBuilder.create().build();
+    }
 
-        if (keystore != null || truststore != null)
-            return newCloseableHttpClientSSL(keystore, "secret", truststore, DefaultRedirectStrategy.INSTANCE);
+    public static SSLContext newSSLContextWithDefaultKeyStoreAndTrustStore() {
+        return newSSLContext(DEFAULT_KEYSTOREPATH, DEFAULT_KEYSTOREPASSWORD, DEFAULT_TRUSTSTOREPATH, DEFAULT_TRUSTSTOREPASSWORD);
+    }
 
-        return HttpClientBuilder.create().build();
+    /**
+     * @return SSLContext with the given keystore and truststore or null if none of them is available. SSLContext is cached and re-created only when keystore or truststore file is changed
+     */
+    public static SSLContext newSSLContext(String keyStorePath, String keyStorePassword, String trustStorePath, String trustStorePassword) {
+        return KeyStoreCache.getSSLContext(keyStorePath, keyStorePassword, trustStorePath, trustStorePassword);
     }
 
     public static CloseableHttpClient newCloseableHttpClientSSL(KeyStore keystore, String keyStorePassword, KeyStore truststore, RedirectStrategy redirectStrategy) {
+        SSLConnectionSocketFactory sf = new SSLConnectionSocketFactory(newSSLContext(keystore, keyStorePassword, truststore), NoopHostnameVerifier.INSTANCE);
+        return HttpClientBuilder.create().setSSLSocketFactory(sf).setRedirectStrategy(redirectStrategy).build();
+    }
+
+    public static SSLContext newSSLContext(KeyStore keystore, String keyStorePassword, KeyStore truststore) {
         try {
             SSLContext sslContext = SSLContext.getInstance("TLS");
             KeyManagerFactory kmfactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
@@ -115,9 +108,7 @@ public class MutualTLSUtils {
             TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
             tmf.init(truststore);
             sslContext.init(kmfactory.getKeyManagers(), tmf.getTrustManagers(), null);
-            SSLConnectionSocketFactory sf = new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
-
-            return HttpClientBuilder.create().setSSLSocketFactory(sf).setRedirectStrategy(redirectStrategy).build();
+            return sslContext;
         } catch (NoSuchAlgorithmException | KeyStoreException | KeyManagementException | UnrecoverableKeyException e) {
             throw new RuntimeException(e);
         }
@@ -132,30 +123,12 @@ public class MutualTLSUtils {
     }
 
     public static String getThumbprintFromClientCert(String keyStorePath, String keyStorePassword) throws KeyStoreException, CertificateEncodingException {
-        KeyStore keystore = null;
-        // load the keystore containing the client certificate - keystore type is probably jks or pkcs12
-        try {
-            keystore = KeystoreUtil.loadKeyStore(keyStorePath, keyStorePassword);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        Enumeration<String> es = keystore.aliases();
-        String alias = null;
-        while(es.hasMoreElements()) {
-            alias = es.nextElement();
-        }
-        X509Certificate cert = (X509Certificate) keystore.getCertificate(alias);
-        String digestAlg = "SHA-256";
-        byte[] DERX509Hash = cert.getEncoded();
-        String DERX509Base64UrlEncoded = null;
-        try {
-            MessageDigest md = MessageDigest.getInstance(digestAlg);
-            md.update(DERX509Hash);
-            DERX509Base64UrlEncoded = Base64Url.encode(md.digest());
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        // Thumbprint is computed just once when keystore is loaded
+        KeyStoreCache.CachedKeyStore keystore = KeyStoreCache.getKeyStore(keyStorePath, keyStorePassword);
+        if (keystore == null) {
+            throw new KeyStoreException("Not able to load keystore " + keyStorePath);
         }
-        return DERX509Base64UrlEncoded;
+        return keystore.getThumbprint();
     }
 
 //    public static Response executeUserInfoRequestInGetMethod(String accessToken, boolean isKeystoreUsed, String keystorePath, String keystorePassward) {
@@ -1,5 +1,7 @@
 package org.keycloak.example.util;
 
+import org.eclipse.microprofile.config.ConfigProvider;
+
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
@@ -8,7 +10,13 @@ public class MyConstants {
     // TODO move from constants and make it dynamic?
     public static final String REALM_NAME = "test";
 
-    public static final String SERVER_ROOT = "https://as.keycloak-fapi.org:8443";
+    // Can be changed by "playground.server-root" (EG. to use the stub authorization server)
+    public static final String SERVER_ROOT = ConfigProvider.getConfig().getOptionalValue("playground.server-root", String.class)
+            .orElse("https://as.keycloak-fapi.org:8443");
+
+    // Page "/exchanges" shows the outbound requests of all the sessions, so it should be disabled when the playground is shared by more users
+    public static final boolean EXCHANGES_PAGE_ENABLED = ConfigProvider.getConfig().getOptionalValue("playground.http.exchanges-page.enabled", Boolean.class)
+            .orElse(true);
 
     public static final String EXACT_CERTIFICATE_SUBJECT_DN = "EMAILADDRESS=test-user@localhost,CN=test-user@localhost,OU=Keycloak,O=Red Hat,L=Westford,ST=MA,C=US";
 
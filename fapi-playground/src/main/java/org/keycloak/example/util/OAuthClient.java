@@ -2,6 +2,7 @@ package org.keycloak.example.util;
 
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.keycloak.OAuth2Constants;
+import org.keycloak.example.Services;
 import org.keycloak.testsuite.util.oauth.AbstractOAuthClient;
 import org.keycloak.testsuite.util.oauth.OAuthClientConfig;
 
@@ -10,6 +11,8 @@ import org.keycloak.testsuite.util.oauth.OAuthClientConfig;
  */
 public class OAuthClient extends AbstractOAuthClient<OAuthClient> {
 
+    private volatile HeadlessLoginDriver.LoginResult loginResult;
+
     public OAuthClient(String baseUrl, CloseableHttpClient httpClient) {
         super(baseUrl, httpClient, null);
 
@@ -17,13 +20,34 @@ public class OAuthClient extends AbstractOAuthClient<OAuthClient> {
                 .responseType(OAuth2Constants.CODE);
     }
 
+    /**
+     * Logs-in the user without the browser by the {@link HeadlessLoginDriver}. The authorization request is created by {@link #loginForm()} with the redirect URI of
+     * this client. Captured authorization response is available by {@link #getLoginResult()}.
+     *
+     * Note that other login helpers of the parent class (EG. opening the login form and parsing the response) use the browser driver, which is not available here
+     */
     @Override
     public void fillLoginForm(String username, String password) {
-        throw new UnsupportedOperationException("Not supported");
-//        LoginPage loginPage = new LoginPage(driver);
-//        PageFactory.initElements(driver, loginPage);
-//        loginPage.fillLogin(username, password);
-//        loginPage.submit();
+        String redirectUri = config.getRedirectUri();
+        if (redirectUri == null) {
+            throw new MyException("Redirect URI of the client not set. Please register the client first");
+        }
+        loginResult = Services.instance().getLoginDriver().login(loginForm().build(), redirectUri, username, password);
+    }
+
+    /**
+     * @return authorization response captured by the last {@link #fillLoginForm}. Null if there was no login yet
+     */
+    public HeadlessLoginDriver.LoginResult getLoginResult() {
+        return loginResult;
+    }
+
+    public String getCode() {
+        return loginResult == null ? null : loginResult.getCode();
+    }
+
+    public String getState() {
+        return loginResult == null ? null : loginResult.getState();
     }
 
     public void close() {
@@ -1,79 +1,64 @@
 package org.keycloak.example.util;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
-import org.apache.http.NameValuePair;
-import org.apache.http.client.methods.HttpGet;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
 import org.keycloak.testsuite.util.oauth.AbstractHttpGetRequest;
 import org.keycloak.testsuite.util.oauth.AbstractHttpPostRequest;
 
 /**
- * // TODO: Put this to Keycloak directly (likely to AbstractHttpPost and AbstractHttpGet) and skip using those methods to avoid reflection...
+ * Info about the requests sent to the server, as they were recorded on the wire by {@link HttpExchangeRecorder}
  *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
 public class OAuthClientUtil {
 
     public static Map<String, Object> getRequestInfo(AbstractHttpPostRequest postRequest) {
-        Map<String, Object> request = new HashMap<>();
-        // String endpoint = postRequest.getEndpoint();
-        String endpoint = invokeMethod(postRequest, AbstractHttpPostRequest.class, "getEndpoint");
-        request.put("endpoint", endpoint);
-        request.put("Method", "POST");
-
-        // String headers = postRequest.headers;
-        Map<String, String> headers = (Map<String, String>) getField(postRequest, AbstractHttpPostRequest.class, "headers");
-
-        request.put("Headers", headers);
-
-        // List<NameValuePair> parameters = postRequest.parameters;
-        List<NameValuePair> parameters = (List<NameValuePair>) getField(postRequest, AbstractHttpPostRequest.class, "parameters");
-
-        request.put("Params", parameters.stream().collect(Collectors.toMap(nvp -> nvp.getName(), nvp -> nvp.getValue())));
-        return request;
+        return getExchangeInfo(postRequest);
     }
 
     public static Map<String, Object> getRequestInfo(AbstractHttpGetRequest getRequest) {
-        Map<String, Object> request = new HashMap<>();
-
-        // String endpoint = getRequest.getEndpoint();
-        String endpoint = invokeMethod(getRequest, AbstractHttpGetRequest.class, "getEndpoint");
+        return getExchangeInfo(getRequest);
+    }
 
-        request.put("endpoint", endpoint);
-        request.put("Method", "GET");
+    public static Map<String, Object> getRequestInfo(ReactiveHttpClient.Request request) {
+        return getExchangeInfo(request);
+    }
 
-        HttpGet apacheGet = (HttpGet) getField(getRequest, AbstractHttpGetRequest.class, "get");
-        Map<String, String> headers = Stream.of(apacheGet.getAllHeaders())
-                        .collect(Collectors.toMap(header -> header.getName(), header -> header.getValue()));
-        request.put("Headers", headers);
+    private static Map<String, Object> getExchangeInfo(Object request) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        HttpExchangeRecorder.HttpExchange exchange = HttpExchangeRecorder.getExchange(request);
+        if (exchange == null) {
+            info.put("Info", "Request was not recorded");
+            return info;
+        }
 
-        //    request.put("Params", this.parameters.stream().collect(Collectors.toMap(nvp -> nvp.getName(), nvp -> nvp.getValue()))); // TODO: if needed
-        return request;
-    }
+        info.put("endpoint", exchange.getUri());
+        info.put("Method", exchange.getMethod());
+        info.put("Headers", exchange.getRequestHeaders());
 
-    private static String invokeMethod(Object o, Class clazz, String methodName) {
-        try {
-            Method m = clazz.getDeclaredMethod(methodName);
-            m.setAccessible(true);
-            return (String) m.invoke(o);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        String body = exchange.getRequestBody();
+        if (body != null) {
+            String contentType = exchange.getRequestHeaders().get(HttpHeaders.CONTENT_TYPE);
+            if (contentType != null && contentType.startsWith(ContentType.APPLICATION_FORM_URLENCODED.getMimeType())) {
+                Map<String, String> params = new LinkedHashMap<>();
+                URLEncodedUtils.parse(body, StandardCharsets.UTF_8).forEach(param -> params.put(param.getName(), param.getValue()));
+                info.put("Params", params);
+            } else {
+                info.put("Body", body);
+            }
         }
-    }
 
-    private static Object getField(Object o, Class clazz, String fieldName) {
-        try {
-            Field f = clazz.getDeclaredField(fieldName);
-            f.setAccessible(true);
-            return f.get(o);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        if (exchange.getResponseStatus() != null) {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("Status", exchange.getResponseStatus());
+            response.put("Headers", exchange.getResponseHeaders());
+            info.put("Response", response);
         }
+        return info;
     }
 }
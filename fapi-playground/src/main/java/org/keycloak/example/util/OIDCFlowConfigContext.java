@@ -10,13 +10,15 @@ public class OIDCFlowConfigContext {
     private final boolean useRequestObject;
     private final boolean useDPoP;
     private final boolean useDPoPAuthzCodeBinding;
+    private final String dpopKeyType;
 
-    public OIDCFlowConfigContext(boolean usePkce, boolean useNonce, boolean useRequestObject, boolean useDPoP, boolean useDPoPAuthzCodeBinding) {
+    public OIDCFlowConfigContext(boolean usePkce, boolean useNonce, boolean useRequestObject, boolean useDPoP, boolean useDPoPAuthzCodeBinding, String dpopKeyType) {
         this.usePkce = usePkce;
         this.useNonce = useNonce;
         this.useRequestObject = useRequestObject;
         this.useDPoP = useDPoP;
         this.useDPoPAuthzCodeBinding = useDPoPAuthzCodeBinding;
+        this.dpopKeyType = dpopKeyType;
     }
 
 
@@ -39,4 +41,8 @@ public class OIDCFlowConfigContext {
     public boolean isUseDPoPAuthzCodeBinding() {
         return useDPoPAuthzCodeBinding;
     }
+
+    public String getDpopKeyType() {
+        return dpopKeyType;
+    }
 }
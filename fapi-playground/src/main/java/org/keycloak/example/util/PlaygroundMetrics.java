@@ -0,0 +1,136 @@
+package org.keycloak.example.util;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer metrics of the playground (actions, outbound HTTP exchanges, signing and template rendering). Meters are registered to the global registry, which
+ * is backed by the Prometheus registry of the application (scraped from "/q/metrics"). Outside the application (EG. in the benchmarks), the meters do nothing.
+ *
+ * Timers publish the percentile histograms, so percentiles (EG. p99) can be computed by Prometheus over any time range and across the instances.
+ */
+public class PlaygroundMetrics {
+
+    public static final String ACTION_TIMER = "playground.action";
+    public static final String HTTP_CLIENT_TIMER = "playground.http.client";
+    public static final String SIGNING_TIMER = "playground.signing";
+    public static final String TEMPLATE_TIMER = "playground.template";
+    public static final String ERROR_COUNTER = "playground.errors";
+    public static final String HTTP_POOL_GAUGE = "playground.http.pool.connections";
+    public static final String KEY_POOL_GAUGE = "playground.keys.pool.depth";
+    public static final String KEY_REFILL_TIMER = "playground.keys.refill";
+
+    // Meters are looked up by the name and tags just once. Key is the name followed by the tag values
+    private static final ConcurrentMap<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    /**
+     * @param action key of the action (EG. "wellknown-endpoint"). Should be the known action, so the unknown values sent by the browser do not create new meters
+     */
+    public static <T> T timeAction(String action, Supplier<T> supplier) {
+        return getTimer(ACTION_TIMER, "Processing of the playground actions", "action", action).record(supplier);
+    }
+
+    /**
+     * @param operation signed object (EG. "dpop", "request-object")
+     * @param algorithm JWA algorithm of the signature
+     */
+    public static <T> T timeSigning(String operation, String algorithm, Supplier<T> supplier) {
+        return getTimer(SIGNING_TIMER, "Signing of the JWTs", "operation", operation, "algorithm", String.valueOf(algorithm)).record(supplier);
+    }
+
+    public static void recordTemplate(String template, long nanos) {
+        getTimer(TEMPLATE_TIMER, "Rendering of the FreeMarker templates", "template", template).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the generating of the key pair by the background thread of the key pair pool
+     */
+    public static void recordKeyRefill(KeyPairPool.KeySpec keySpec, long nanos) {
+        getTimer(KEY_REFILL_TIMER, "Generating of the key pairs to refill the key pair pool", "key", keySpec.name()).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the outbound HTTP exchange. The endpoint is reduced to its type (EG. "token"), so the meters do not depend on the realm or the server URL
+     */
+    public static void recordExchange(HttpExchangeLog.Record record) {
+        getTimer(HTTP_CLIENT_TIMER, "Outbound HTTP exchanges with the authorization server", "endpoint", getEndpointType(record.getEndpoint()),
+                "method", record.getMethod(), "status", String.valueOf(record.getStatus()))
+                .record(record.getTotalMicros(), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Count the failed action. The cause is the class of the exception, which caused the {@link MyException} (or "none" if it was thrown by the playground itself)
+     */
+    public static void recordError(MyException error) {
+        String cause = error.getCause() == null ? "none" : error.getCause().getClass().getSimpleName();
+        COUNTERS.computeIfAbsent(ERROR_COUNTER + ":" + cause, key -> Counter.builder(ERROR_COUNTER)
+                .description("Actions failed with the error")
+                .tags("cause", cause)
+                .register(Metrics.globalRegistry))
+                .increment();
+    }
+
+    /**
+     * Register the gauge of the component (EG. connection pool). Gauge is registered with the strong reference to the component, so it must be removed by
+     * {@link #remove} when the component is closed. Otherwise the component re-created on dev-mode reload would be ignored as the gauge with same name and tags exists
+     */
+    public static <T> Gauge registerGauge(String name, String description, T obj, ToDoubleFunction<T> value, String... tags) {
+        return Gauge.builder(name, obj, value)
+                .description(description)
+                .tags(tags)
+                .strongReference(true)
+                .register(Metrics.globalRegistry);
+    }
+
+    public static void remove(Collection<? extends Meter> meters) {
+        meters.forEach(Metrics.globalRegistry::remove);
+    }
+
+    static String getEndpointType(String endpoint) {
+        if (endpoint.contains("/.well-known/")) {
+            return "well-known";
+        } else if (endpoint.contains("/clients-registrations/")) {
+            return "registration";
+        } else if (endpoint.contains("/credential-offer")) {
+            return "credential-offer";
+        } else if (endpoint.contains("/login-actions/")) {
+            return "login";
+        }
+
+        String lastSegment = endpoint.substring(endpoint.lastIndexOf('/') + 1);
+        switch (lastSegment) {
+            case "token":
+            case "userinfo":
+            case "credential":
+            case "nonce":
+            case "auth":
+            case "logout":
+                return lastSegment;
+            case "certs":
+                return "jwks";
+            case "request":
+                return endpoint.endsWith("/ext/par/request") ? "par" : "other";
+            default:
+                return "other";
+        }
+    }
+
+    private static Timer getTimer(String name, String description, String... tags) {
+        return TIMERS.computeIfAbsent(name + ":" + String.join(",", tags), key -> Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry));
+    }
+}
@@ -0,0 +1,85 @@
+package org.keycloak.example.util;
+
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+
+/**
+ * OpenTelemetry spans of the playground (actions, handler callbacks and outbound HTTP exchanges). The spans of the outbound exchanges are propagated to the
+ * server by the W3C "traceparent" header. Until {@link #init} is called (EG. in the benchmarks), the spans are not recorded.
+ */
+public class PlaygroundTracing {
+
+    private static final String INSTRUMENTATION_NAME = "org.keycloak.example";
+
+    private static volatile OpenTelemetry openTelemetry = OpenTelemetry.noop();
+    private static volatile Tracer tracer = openTelemetry.getTracer(INSTRUMENTATION_NAME);
+
+    public static void init(OpenTelemetry openTelemetry) {
+        PlaygroundTracing.openTelemetry = openTelemetry;
+        PlaygroundTracing.tracer = openTelemetry.getTracer(INSTRUMENTATION_NAME);
+    }
+
+    /**
+     * Run the supplier in the new span, which is the child of the current span. Spans of the outbound exchanges done by the supplier are its children
+     */
+    public static <T> T inSpan(String name, Supplier<T> supplier) {
+        Span span = tracer.spanBuilder(name).startSpan();
+        try (Scope scope = span.makeCurrent()) {
+            return supplier.get();
+        } catch (RuntimeException e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    public static void inSpan(String name, Runnable runnable) {
+        inSpan(name, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Start the span of the outbound HTTP exchange and add the propagation headers of the span to the request. The span needs to be ended by {@link #endClientSpan}
+     *
+     * @param endpoint URL of the request without query
+     * @param headerSetter adds the header to the request
+     */
+    public static Span startClientSpan(String method, String endpoint, BiConsumer<String, String> headerSetter) {
+        Span span = tracer.spanBuilder(method + " " + PlaygroundMetrics.getEndpointType(endpoint))
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute("http.request.method", method)
+                .setAttribute("url.full", endpoint)
+                .startSpan();
+        openTelemetry.getPropagators().getTextMapPropagator().inject(Context.current().with(span), headerSetter, BiConsumer::accept);
+        return span;
+    }
+
+    /**
+     * @param status HTTP status of the response or 0 if the exchange failed
+     * @param error exception of the failed exchange or null
+     */
+    public static void endClientSpan(Span span, int status, Throwable error) {
+        if (status > 0) {
+            span.setAttribute("http.response.status_code", status);
+        }
+        if (error != null) {
+            span.recordException(error);
+        }
+        if (error != null || status >= 400) {
+            span.setStatus(StatusCode.ERROR);
+        }
+        span.end();
+    }
+}
@@ -0,0 +1,334 @@
+package org.keycloak.example.util;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import io.opentelemetry.api.trace.Span;
+import io.smallrye.mutiny.TimeoutException;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.http.PoolOptions;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.net.KeyCertOptions;
+import io.vertx.core.net.SSLOptions;
+import io.vertx.core.net.TrustOptions;
+import io.vertx.core.tracing.TracingPolicy;
+import io.vertx.mutiny.core.MultiMap;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.core.http.HttpClient;
+import io.vertx.mutiny.core.http.HttpClientRequest;
+import io.vertx.mutiny.core.http.HttpClientResponse;
+import org.apache.http.HttpHeaders;
+import org.jboss.logging.Logger;
+import org.keycloak.example.jfr.HttpClientEvent;
+import org.keycloak.util.JsonSerialization;
+
+/**
+ * Non-blocking HTTP client for the requests sent to the Keycloak server when "playground.http.backend" is set to "reactive". Requests are sent by the Vert.x event loop
+ * and the responses are returned as {@link Uni}, so the flows with multiple requests can be chained without holding any thread while waiting for the server.
+ *
+ * Uses same client certificate and truststore as {@link HttpClientPool}, loaded by the {@link KeyStoreCache}. When the keystore or truststore is changed (EG. rotated
+ * certificate), the SSL options of the client are updated before the next request, so the new connections use the new certificate. The exchanges are recorded to the same {@link HttpExchangeLog} (without connect and TLS
+ * handshake phases, which are not exposed by Vert.x) and to the {@link HttpExchangeRecorder}, so they can be displayed like the exchanges of the blocking client.
+ */
+public class ReactiveHttpClient {
+
+    private static final Logger log = Logger.getLogger(ReactiveHttpClient.class);
+
+    private final HttpClient httpClient;
+    private final HttpExchangeLog exchangeLog;
+
+    // Keystores, which the current SSL options of the client were created from
+    private volatile KeyStoreCache.CachedKeyStore keyStore;
+    private volatile KeyStoreCache.CachedKeyStore trustStore;
+
+    public ReactiveHttpClient(Vertx vertx, int maxConnectionsPerRoute, long keepAliveMillis, long idleTimeoutMillis, HttpExchangeLog exchangeLog) {
+        this.exchangeLog = exchangeLog;
+
+        keyStore = getKeyStore(MutualTLSUtils.DEFAULT_KEYSTOREPATH, MutualTLSUtils.DEFAULT_KEYSTOREPASSWORD);
+        trustStore = getKeyStore(MutualTLSUtils.DEFAULT_TRUSTSTOREPATH, MutualTLSUtils.DEFAULT_TRUSTSTOREPASSWORD);
+        SSLOptions sslOptions = createSSLOptions(keyStore, trustStore);
+        HttpClientOptions options = new HttpClientOptions()
+                .setKeyCertOptions(sslOptions.getKeyCertOptions())
+                .setTrustOptions(sslOptions.getTrustOptions())
+                // Same as NoopHostnameVerifier of the blocking client
+                .setVerifyHost(false)
+                // Spans of the requests are created by the client itself, the same way as for the blocking client
+                .setTracingPolicy(TracingPolicy.IGNORE)
+                .setKeepAlive(true)
+                .setKeepAliveTimeout((int) Math.max(1, keepAliveMillis / 1000))
+                .setIdleTimeout((int) Math.max(1, idleTimeoutMillis / 1000))
+                .setConnectTimeout(10000);
+        httpClient = vertx.createHttpClient(options, new PoolOptions().setHttp1MaxSize(maxConnectionsPerRoute));
+
+        log.debugf("Created reactive HTTP client. Max connections per route: %d", maxConnectionsPerRoute);
+    }
+
+    private static KeyStoreCache.CachedKeyStore getKeyStore(String path, String password) {
+        KeyStoreCache.CachedKeyStore keyStore = KeyStoreCache.getKeyStore(path, password);
+        if (keyStore == null) {
+            throw new MyException("Not able to load keystore " + path);
+        }
+        return keyStore;
+    }
+
+    private static SSLOptions createSSLOptions(KeyStoreCache.CachedKeyStore keyStore, KeyStoreCache.CachedKeyStore trustStore) {
+        try {
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore.getKeyStore(), MutualTLSUtils.DEFAULT_KEYSTOREPASSWORD.toCharArray());
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(trustStore.getKeyStore());
+            return new SSLOptions()
+                    .setKeyCertOptions(KeyCertOptions.wrap(keyManagerFactory))
+                    .setTrustOptions(TrustOptions.wrap(trustManagerFactory));
+        } catch (GeneralSecurityException gse) {
+            throw new MyException("Failed to create SSL options of reactive HTTP client", gse);
+        }
+    }
+
+    // Keystore is re-loaded by the cache when its file is changed. Established connections keep using the old certificate, same as by the blocking client
+    private Uni<Boolean> updateSSLOptions() {
+        KeyStoreCache.CachedKeyStore currentKeyStore = KeyStoreCache.getKeyStore(MutualTLSUtils.DEFAULT_KEYSTOREPATH, MutualTLSUtils.DEFAULT_KEYSTOREPASSWORD);
+        KeyStoreCache.CachedKeyStore currentTrustStore = KeyStoreCache.getKeyStore(MutualTLSUtils.DEFAULT_TRUSTSTOREPATH, MutualTLSUtils.DEFAULT_TRUSTSTOREPASSWORD);
+        if (currentKeyStore == null || currentTrustStore == null || (currentKeyStore == keyStore && currentTrustStore == trustStore)) {
+            return Uni.createFrom().item(false);
+        }
+        keyStore = currentKeyStore;
+        trustStore = currentTrustStore;
+        log.info("Keystore changed. New connections of reactive HTTP client will use new SSL options");
+        return httpClient.updateSSLOptions(createSSLOptions(currentKeyStore, currentTrustStore));
+    }
+
+    public Request doGet(String url) {
+        return new Request(HttpMethod.GET, url);
+    }
+
+    public Request doPost(String url) {
+        return new Request(HttpMethod.POST, url);
+    }
+
+    public void close() {
+        httpClient.closeAndAwait();
+    }
+
+    /**
+     * Wait for the response of the reactive pipeline. Should be called just by the blocking endpoints (worker thread or virtual thread), never by the event loop
+     */
+    public static <T> T await(Uni<T> uni) {
+        try {
+            return uni.await().atMost(Duration.ofSeconds(60));
+        } catch (TimeoutException te) {
+            throw new MyException("Reactive HTTP pipeline did not complete in 60 seconds", te);
+        } catch (CompletionException ce) {
+            // Checked exceptions of the pipeline are wrapped by Mutiny. Handlers expect MyException, so the error is shown on the page
+            throw ce.getCause() instanceof MyException ? (MyException) ce.getCause() : new MyException("Reactive HTTP pipeline failed: " + ce.getCause(), ce.getCause());
+        }
+    }
+
+
+    public class Request {
+
+        private final HttpMethod method;
+        private final String url;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private Map<String, String> params;
+        private Object entity;
+
+        private Request(HttpMethod method, String url) {
+            this.method = method;
+            this.url = url;
+        }
+
+        public Request header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        public Request auth(String token) {
+            return header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        }
+
+        public Request authBasic(String username, String password) {
+            String basicCredentials = URLEncoder.encode(username, StandardCharsets.UTF_8) + ":" + URLEncoder.encode(password, StandardCharsets.UTF_8);
+            return header(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder().encodeToString(basicCredentials.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        /**
+         * Form parameter for POST or query parameter for GET
+         */
+        public Request param(String name, String value) {
+            if (params == null) {
+                params = new LinkedHashMap<>();
+            }
+            params.put(name, value);
+            return this;
+        }
+
+        public Request json(Object entity) {
+            this.entity = entity;
+            return this;
+        }
+
+        /**
+         * Send the request. Response body is fully read before the returned Uni is completed
+         */
+        public Uni<Response> send() {
+            String body = null;
+            String uri = url;
+            if (params != null && method == HttpMethod.GET) {
+                uri = url + (url.contains("?") ? "&" : "?") + encodeParams();
+            } else if (params != null) {
+                headers.putIfAbsent(HttpHeaders.CONTENT_TYPE, "application/x-www-form-urlencoded");
+                body = encodeParams();
+            } else if (entity != null) {
+                headers.putIfAbsent(HttpHeaders.CONTENT_TYPE, "application/json");
+                try {
+                    body = JsonSerialization.writeValueAsString(entity);
+                } catch (IOException ioe) {
+                    return Uni.createFrom().failure(new MyException("Failed to serialize request entity", ioe));
+                }
+            }
+            headers.putIfAbsent(HttpHeaders.ACCEPT, "application/json");
+
+            String requestUri = uri;
+            String requestBody = body;
+            long timestamp = System.currentTimeMillis();
+            long start = System.nanoTime();
+            long[] ttfbEnd = new long[1];
+            HttpClientEvent event = new HttpClientEvent();
+            event.begin();
+            int queryIndex = requestUri.indexOf('?');
+            Span span = PlaygroundTracing.startClientSpan(method.name(), queryIndex == -1 ? requestUri : requestUri.substring(0, queryIndex), headers::put);
+            RequestOptions requestOptions = new RequestOptions()
+                    .setMethod(method)
+                    .setAbsoluteURI(requestUri)
+                    .setIdleTimeout(30000);
+
+            return updateSSLOptions()
+                    .onItem().transformToUni(updated -> httpClient.request(requestOptions))
+                    .onItem().transformToUni(httpRequest -> {
+                        headers.forEach((name, value) -> httpRequest.putHeader(name, value));
+                        Uni<HttpClientResponse> response = requestBody == null ? httpRequest.send() : httpRequest.send(requestBody);
+                        return response.onItem().invoke(() -> ttfbEnd[0] = System.nanoTime())
+                                .onItem().transformToUni(httpResponse -> readBody(httpRequest, httpResponse)
+                                        .onItem().transform(responseBody -> {
+                                            HttpExchangeRecorder.HttpExchange exchange = new HttpExchangeRecorder.HttpExchange(method.name(), requestUri,
+                                                    toMap(httpRequest.headers()), requestBody, getStatusLine(httpResponse), toMap(httpResponse.headers()));
+                                            HttpExchangeRecorder.record(this, exchange);
+                                            recordTiming(timestamp, start, ttfbEnd[0], requestUri, httpResponse.statusCode(), requestBody, responseBody.length(), event);
+                                            PlaygroundTracing.endClientSpan(span, httpResponse.statusCode(), null);
+                                            return new Response(httpResponse.statusCode(), responseBody.toString(StandardCharsets.UTF_8));
+                                        }));
+                    })
+                    .onFailure().invoke(failure -> {
+                        // Failed exchange (EG. connect error or timeout) is recorded with the status 0, same as by the blocking client
+                        recordTiming(timestamp, start, ttfbEnd[0], requestUri, 0, requestBody, 0, event);
+                        PlaygroundTracing.endClientSpan(span, 0, failure);
+                    })
+                    .onFailure(failure -> !(failure instanceof MyException))
+                    .transform(failure -> new MyException("Failed to send " + method.name() + " request to " + url + ": " + failure.getMessage(), failure));
+        }
+
+        // Body is limited by "playground.http.max-response-size", same as the body read by the blocking client. Request with longer body is reset, so the
+        // connection is closed instead of reading the rest of the body
+        private Uni<Buffer> readBody(HttpClientRequest httpRequest, HttpClientResponse httpResponse) {
+            long maxBodySize = SimpleHttp.DEFAULT_MAX_BODY_SIZE;
+            String contentLength = httpResponse.getHeader(HttpHeaders.CONTENT_LENGTH);
+            if (contentLength != null && contentLength.matches("\\d{1,18}") && Long.parseLong(contentLength) > maxBodySize) {
+                httpRequest.reset();
+                return Uni.createFrom().failure(new MyException("Response body of " + contentLength + " bytes exceeds the limit of " + maxBodySize + " bytes"));
+            }
+            return httpResponse.toMulti()
+                    .collect().in(Buffer::buffer, (body, chunk) -> {
+                        if (body.length() + chunk.length() > maxBodySize) {
+                            throw new MyException("Response body exceeds the limit of " + maxBodySize + " bytes");
+                        }
+                        body.appendBuffer(chunk);
+                    })
+                    // Reset after the failure is propagated. Otherwise the reset fails the stream first and the error is just "Stream reset"
+                    .onFailure().invoke(() -> httpRequest.reset());
+        }
+
+        private String encodeParams() {
+            return params.entrySet().stream()
+                    .map(param -> URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8) + "=" + URLEncoder.encode(param.getValue(), StandardCharsets.UTF_8))
+                    .collect(Collectors.joining("&"));
+        }
+
+        // Headers are not received (0) when the exchange failed before the response
+        private void recordTiming(long timestamp, long start, long headersReceived, String requestUri, int status, String requestBody, long responseBytes,
+                                  HttpClientEvent event) {
+            long end = System.nanoTime();
+            int queryIndex = requestUri.indexOf('?');
+            String endpoint = queryIndex == -1 ? requestUri : requestUri.substring(0, queryIndex);
+            event.method = method.name();
+            event.endpoint = endpoint;
+            event.status = status;
+            event.commit();
+            // Vert.x does not expose connect and TLS handshake. They are included in TTFB
+            long ttfbNanos = headersReceived > 0 ? headersReceived - start : 0;
+            long bodyReadNanos = headersReceived > 0 ? end - headersReceived : 0;
+            exchangeLog.add(new HttpExchangeLog.Record(timestamp, method.name(), endpoint, status, 0, 0, 0, ttfbNanos / 1000,
+                    bodyReadNanos / 1000, (end - start) / 1000, requestBody == null ? 0 : requestBody.getBytes(StandardCharsets.UTF_8).length,
+                    responseBytes));
+        }
+    }
+
+    public static class Response {
+
+        private final int status;
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String asString() {
+            return body;
+        }
+
+        /**
+         * @throws MyException if the response is not successful or it can't be parsed
+         */
+        public <T> T asJson(Class<T> type) {
+            if (status < 200 || status >= 300) {
+                throw new MyException("Unexpected response status " + status + ". Response: " + body);
+            }
+            try {
+                return JsonSerialization.readValue(body, type);
+            } catch (IOException ioe) {
+                throw new MyException("Failed to parse response: " + body, ioe);
+            }
+        }
+    }
+
+    private static String getStatusLine(HttpClientResponse response) {
+        String version = response.version() == HttpVersion.HTTP_2 ? "HTTP/2" : response.version() == HttpVersion.HTTP_1_0 ? "HTTP/1.0" : "HTTP/1.1";
+        return version + " " + response.statusCode() + " " + response.statusMessage();
+    }
+
+    private static Map<String, String> toMap(MultiMap headers) {
+        Map<String, String> map = new LinkedHashMap<>();
+        headers.forEach(header -> map.merge(header.getKey(), header.getValue(), (value1, value2) -> value1 + ", " + value2));
+        return map;
+    }
+}
@@ -0,0 +1,279 @@
+package org.keycloak.example.util;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.client.HttpClient;
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.Time;
+import org.keycloak.protocol.oidc.representations.OIDCConfigurationRepresentation;
+
+/**
+ * Cache of the metadata documents (OIDC well-known etc) shared by all the sessions. Documents are cached by their URL.
+ *
+ * Expiration is based on the "Cache-Control" header returned by the server (or the default expiration if server does not send it). Documents with "no-store" are
+ * not cached at all. Expired documents are re-validated with the "If-None-Match" header when server previously sent "ETag". Failed background refresh is
+ * retried with exponential back-off. Documents are refreshed in the background shortly before they expire, so
+ * the requests usually don't need to wait for them. When the document needs to be loaded synchronously, only one request is sent to the server even if more threads
+ * ask for the same document at the same time.
+ */
+public class ServerMetadataCache {
+
+    private static final Logger log = Logger.getLogger(ServerMetadataCache.class);
+
+    // Document is refreshed in the background after this portion of its lifespan
+    private static final double REFRESH_RATIO = 0.8;
+
+    private final HttpClient httpClient;
+    private final long defaultTtlMillis;
+    private final long minTtlMillis;
+    private final long maxTtlMillis;
+
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+    private final ExecutorService refreshExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "metadata-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    public ServerMetadataCache(HttpClient httpClient, long defaultTtlMillis, long minTtlMillis, long maxTtlMillis) {
+        this.httpClient = httpClient;
+        this.defaultTtlMillis = defaultTtlMillis;
+        this.minTtlMillis = minTtlMillis;
+        this.maxTtlMillis = maxTtlMillis;
+    }
+
+    public OIDCConfigurationRepresentation getOIDCConfiguration(String issuer) {
+        return get(issuer + "/.well-known/openid-configuration", OIDCConfigurationRepresentation.class);
+    }
+
+    public <T> T get(String url, Class<T> type) {
+        Slot slot = slots.computeIfAbsent(url, Slot::new);
+        long now = Time.currentTimeMillis();
+
+        CachedDocument current = slot.current;
+        if (current != null && current.type == type && now < current.expiresAt) {
+            hits.incrementAndGet();
+            if (now >= current.refreshAt && now >= slot.nextRefreshAttempt) {
+                load(slot, type, true);
+            }
+            return type.cast(current.value);
+        }
+
+        misses.incrementAndGet();
+        return type.cast(await(load(slot, type, false), url).value);
+    }
+
+    /**
+     * Load the document from the server even if the cached document is not expired yet. Useful when the cached document is known to be outdated (EG. JWKS without
+     * the key used by the newly issued token). Server is still asked with "If-None-Match", so the same instance is returned when the document was not modified
+     */
+    public <T> T reload(String url, Class<T> type) {
+        Slot slot = slots.computeIfAbsent(url, Slot::new);
+        misses.incrementAndGet();
+        return type.cast(await(load(slot, type, false), url).value);
+    }
+
+    /**
+     * Load the document in the background. Useful to load more documents in parallel
+     */
+    public <T> CompletableFuture<T> getAsync(String url, Class<T> type) {
+        return CompletableFuture.supplyAsync(() -> get(url, type), refreshExecutor);
+    }
+
+    /**
+     * Stop the refresh threads. Called when the application is stopped (also on every dev-mode reload)
+     */
+    public void close() {
+        refreshExecutor.shutdownNow();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getFetches() {
+        return fetches.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Metadata cache: %d documents, %d hits, %d misses, %d requests sent to server, %d not-modified responses",
+                slots.size(), getHits(), getMisses(), getFetches(), getNotModified());
+    }
+
+    private static CachedDocument await(CompletableFuture<CachedDocument> loading, String url) {
+        try {
+            return loading.join();
+        } catch (CompletionException ce) {
+            Throwable cause = ce.getCause();
+            if (cause instanceof MyException) {
+                throw (MyException) cause;
+            }
+            throw new MyException("Failed to load metadata from " + url, cause);
+        }
+    }
+
+    // Only one thread loads the document at a time. Others will just wait for the result of that thread
+    private CompletableFuture<CachedDocument> load(Slot slot, Class<?> type, boolean background) {
+        CompletableFuture<CachedDocument> loading = new CompletableFuture<>();
+        CompletableFuture<CachedDocument> alreadyLoading = slot.loading.compareAndExchange(null, loading);
+        if (alreadyLoading != null) {
+            return alreadyLoading;
+        }
+
+        Runnable task = () -> {
+            try {
+                CachedDocument document = fetch(slot, type);
+                // Document with "no-store" is just returned to the waiting threads
+                slot.current = document.ttl > 0 ? document : null;
+                slot.failedRefreshes = 0;
+                slot.nextRefreshAttempt = 0;
+                loading.complete(document);
+            } catch (Throwable t) {
+                if (background) {
+                    // Back off exponentially, so the cache hits do not trigger new refresh of the document every time while the server is failing
+                    int failures = ++slot.failedRefreshes;
+                    long backoff = Math.min(maxTtlMillis, Math.max(1000, minTtlMillis) << Math.min(failures - 1, 20));
+                    slot.nextRefreshAttempt = Time.currentTimeMillis() + backoff;
+                    if (failures == 1) {
+                        log.warnf(t, "Failed to refresh metadata from %s. Will use the cached document until it expires. Next attempt in %d ms", slot.url, backoff);
+                    } else {
+                        log.warnf("Failed to refresh metadata from %s (%d times in a row): %s. Next attempt in %d ms", slot.url, failures, t.getMessage(), backoff);
+                    }
+                }
+                loading.completeExceptionally(t);
+            } finally {
+                slot.loading.set(null);
+            }
+        };
+
+        if (background) {
+            try {
+                refreshExecutor.execute(task);
+            } catch (RejectedExecutionException ree) {
+                // Cache was closed. The request, which came just before the application stopped, is not left with unfinished loading
+                task.run();
+            }
+        } else {
+            task.run();
+        }
+        return loading;
+    }
+
+    private CachedDocument fetch(Slot slot, Class<?> type) throws IOException {
+        CachedDocument previous = slot.current;
+        if (previous != null && previous.type != type) {
+            previous = null;
+        }
+
+        SimpleHttp request = SimpleHttp.doGet(slot.url, httpClient).acceptJson();
+        if (previous != null && previous.etag != null) {
+            request.header("If-None-Match", previous.etag);
+        }
+
+        fetches.incrementAndGet();
+        SimpleHttp.Response response = request.asResponse();
+        try {
+            int status = response.getStatus();
+            long now = Time.currentTimeMillis();
+            long ttl = getTtl(response.getFirstHeader("Cache-Control"));
+
+            if (status == 304 && previous != null) {
+                notModified.incrementAndGet();
+                log.debugf("Metadata from %s not modified. Cached for next %d ms", slot.url, ttl);
+                return new CachedDocument(type, previous.value, previous.etag, now, ttl);
+            } else if (status != 200) {
+                throw new MyException("Unexpected status " + status + " when loading metadata from " + slot.url + ". Response: " + response.asString());
+            }
+
+            Object value = response.asJson(type);
+            log.debugf("Loaded metadata from %s. Cached for next %d ms", slot.url, ttl);
+            return new CachedDocument(type, value, response.getFirstHeader("ETag"), now, ttl);
+        } finally {
+            response.close();
+        }
+    }
+
+    private long getTtl(String cacheControl) {
+        if (cacheControl == null) {
+            return defaultTtlMillis;
+        }
+        String[] directives = cacheControl.toLowerCase().split(",");
+        for (String directive : directives) {
+            // Wins over any other directive
+            if (directive.trim().equals("no-store")) {
+                return 0;
+            }
+        }
+        for (String directive : directives) {
+            directive = directive.trim();
+            if (directive.equals("no-cache")) {
+                // Re-validate as often as allowed. Re-validation is cheap when server supports ETag
+                return minTtlMillis;
+            } else if (directive.startsWith("max-age=")) {
+                try {
+                    long maxAge = Long.parseLong(directive.substring("max-age=".length())) * 1000;
+                    return Math.max(minTtlMillis, Math.min(maxTtlMillis, maxAge));
+                } catch (NumberFormatException nfe) {
+                    log.debugf("Ignoring invalid Cache-Control directive: %s", directive);
+                }
+            }
+        }
+        return defaultTtlMillis;
+    }
+
+    private static class Slot {
+
+        private final String url;
+        private volatile CachedDocument current;
+        // Set after the failed background refresh. Only the loading thread writes them
+        private volatile int failedRefreshes;
+        private volatile long nextRefreshAttempt;
+        private final AtomicReference<CompletableFuture<CachedDocument>> loading = new AtomicReference<>();
+
+        private Slot(String url) {
+            this.url = url;
+        }
+    }
+
+    private static class CachedDocument {
+
+        private final Class<?> type;
+        private final Object value;
+        private final String etag;
+        private final long ttl;
+        private final long refreshAt;
+        private final long expiresAt;
+
+        private CachedDocument(Class<?> type, Object value, String etag, long loadedAt, long ttl) {
+            this.type = type;
+            this.value = value;
+            this.etag = etag;
+            this.ttl = ttl;
+            this.refreshAt = loadedAt + (long) (ttl * REFRESH_RATIO);
+            this.expiresAt = loadedAt + ttl;
+        }
+    }
+}
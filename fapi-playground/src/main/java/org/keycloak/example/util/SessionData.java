@@ -1,5 +1,9 @@
 package org.keycloak.example.util;
 
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.keycloak.crypto.Algorithm;
 import org.keycloak.example.Services;
 import org.keycloak.example.oid4vci.OID4VCIContext;
 import org.keycloak.protocol.oidc.representations.OIDCConfigurationRepresentation;
@@ -13,29 +17,70 @@ import org.keycloak.testsuite.util.oauth.PkceGenerator;
  */
 public class SessionData {
 
-    private ClientConfigContext clientConfigContext = new ClientConfigContext(null, "none", false);
+    private final String id;
+
+    // Requests of the same session (EG. double-click on some button) are processed one after another as they change the state of the session
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile OAuthClient oauthClient;
+
+    private volatile ClientConfigContext clientConfigContext = new ClientConfigContext(null, "none", false, Algorithm.PS256);
+
+    private volatile OIDCClientRepresentation registeredClient;
 
-    private OIDCClientRepresentation registeredClient;
+    private volatile KeysWrapper keys;
 
-    private KeysWrapper keys;
+    private volatile String authenticationRequestUrl;
 
-    private String authenticationRequestUrl;
+    private volatile WebRequestContext<AbstractHttpPostRequest, AccessTokenResponse> tokenRequestCtx;
 
-    private WebRequestContext<AbstractHttpPostRequest, AccessTokenResponse> tokenRequestCtx;
+    private volatile OIDCFlowConfigContext oidcFlowConfigContext = new OIDCFlowConfigContext(false, false, false, false, false, DPoPSigner.KeyType.RS256.name());
 
-    private OIDCFlowConfigContext oidcFlowConfigContext = new OIDCFlowConfigContext(false, false, false, false, false);
+    private volatile PkceGenerator pkceContext;
 
-    private PkceGenerator pkceContext;
+    private volatile DPoPContext dpopContext;
 
-    private DPoPContext dpopContext;
+    private volatile OID4VCIContext oid4vciContext;
+
+    public SessionData(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
 
-    private OID4VCIContext oid4vciContext;
+    /**
+     * Lock the session for the processing of the current request. Request of other thread for the same session needs to wait until the session is unlocked
+     */
+    public void lock() {
+        lock.lock();
+    }
+
+    public void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * @return lock used by {@link #lock()}. Useful when the session is read later in the request (EG. when the page is rendered after the response is returned)
+     */
+    public Lock getLock() {
+        return lock;
+    }
+
+    /**
+     * @return OAuth client specific to this session. It needs to be per-session as it holds the state like client_id of the registered client, redirect_uri etc.
+     */
+    public OAuthClient getOauthClient() {
+        if (oauthClient == null) {
+            oauthClient = new OAuthClient(MyConstants.SERVER_ROOT, Services.instance().getHttpClient())
+                    .realm(MyConstants.REALM_NAME);
+        }
+        return oauthClient;
+    }
 
-    // TODO: Cache the result...
     public OIDCConfigurationRepresentation getAuthServerInfo() {
-        return Services.instance().getOauthClient().
-                realm(MyConstants.REALM_NAME)
-                .doWellKnownRequest();
+        return Services.instance().getMetadataCache().getOIDCConfiguration(MyConstants.SERVER_ROOT + "/realms/" + MyConstants.REALM_NAME);
     }
 
     public ClientConfigContext getClientConfigContext() {
@@ -95,7 +140,14 @@ public class SessionData {
 
     public OID4VCIContext getOrCreateOID4VCIContext() {
         if (oid4vciContext == null) {
-            oid4vciContext = new OID4VCIContext();
+            OID4VCIContext ctx = new OID4VCIContext();
+            // Credential issuer metadata loaded at startup, so the user does not need to ask for them before using OID4VCI flows
+            MetadataWarmup.Snapshot metadata = Services.instance().getMetadataWarmup().getSnapshot();
+            if (metadata != null && metadata.getCredentialIssuer() != null) {
+                ctx.setCredentialIssuerMetadata(metadata.getCredentialIssuer());
+                ctx.setAvailableCredentials(metadata.getAvailableCredentials());
+            }
+            oid4vciContext = ctx;
         }
         return oid4vciContext;
     }
@@ -0,0 +1,202 @@
+package org.keycloak.example.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.SecretGenerator;
+import org.keycloak.common.util.Time;
+
+/**
+ * Storage of the {@link SessionData} of the individual users (browsers). Session is identified by the value of the cookie {@link #SESSION_COOKIE}.
+ *
+ * Sessions are divided into stripes, where each stripe is guarded by its own lock, so the requests of different users do not block each other.
+ * Every stripe is ordered by the last access, so when stripe is full, the least recently used session is evicted.
+ * Session expires when it was not used for the "idle timeout" or when it reached "absolute timeout" (whatever comes first)
+ *
+ * Expired sessions are removed by the background sweep (and also when new session is created in the stripe). As the stripe is ordered by the last access, the sweep
+ * stops at the first session, which is not idle. Session, which reached absolute timeout, but is still used, is removed when it is accessed.
+ */
+public class SessionStore {
+
+    private static final Logger log = Logger.getLogger(SessionStore.class);
+
+    public static final String SESSION_COOKIE = "FAPI_PLAYGROUND_SESSION";
+
+    private final Stripe[] stripes;
+    private final long idleTimeoutMillis;
+    private final long absoluteTimeoutMillis;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "session-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SessionStore(int maxSessions, int stripesCount, long idleTimeoutMillis, long absoluteTimeoutMillis) {
+        if (maxSessions < 1 || stripesCount < 1) {
+            throw new IllegalArgumentException("Both maxSessions and stripesCount must be positive. maxSessions: " + maxSessions + ", stripesCount: " + stripesCount);
+        }
+        if (stripesCount > maxSessions) {
+            throw new IllegalArgumentException("stripesCount must not be bigger than maxSessions. maxSessions: " + maxSessions + ", stripesCount: " + stripesCount);
+        }
+        // Remainder is spread across the first stripes, so the capacities sum up exactly to maxSessions
+        this.stripes = new Stripe[stripesCount];
+        for (int i = 0 ; i < stripesCount ; i++) {
+            stripes[i] = new Stripe(maxSessions / stripesCount + (i < maxSessions % stripesCount ? 1 : 0));
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.absoluteTimeoutMillis = absoluteTimeoutMillis;
+
+        long sweepInterval = Math.max(1000, Math.min(60000, idleTimeoutMillis / 2));
+        sweeper.scheduleWithFixedDelay(this::removeExpired, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return session with the given ID or null if session does not exists or is expired
+     */
+    public SessionData getSession(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        Stripe stripe = getStripe(sessionId);
+        long now = Time.currentTimeMillis();
+        stripe.lock.lock();
+        try {
+            Entry entry = stripe.sessions.get(sessionId);
+            if (entry == null) {
+                return null;
+            }
+            if (isExpired(entry, now)) {
+                stripe.sessions.remove(sessionId);
+                log.debugf("Session '%s' expired", sessionId);
+                return null;
+            }
+            entry.lastAccessed = now;
+            return entry.session;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public SessionData createSession() {
+        String sessionId = SecretGenerator.getInstance().generateSecureID();
+        SessionData session = new SessionData(sessionId);
+
+        Stripe stripe = getStripe(sessionId);
+        long now = Time.currentTimeMillis();
+        stripe.lock.lock();
+        try {
+            removeExpired(stripe, now);
+            stripe.sessions.put(sessionId, new Entry(session, now));
+        } finally {
+            stripe.lock.unlock();
+        }
+        log.debugf("Created session '%s'", sessionId);
+        return session;
+    }
+
+    public void removeSession(String sessionId) {
+        Stripe stripe = getStripe(sessionId);
+        stripe.lock.lock();
+        try {
+            stripe.sessions.remove(sessionId);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.sessions.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Stripe getStripe(String sessionId) {
+        int hash = sessionId.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[(hash & 0x7fffffff) % stripes.length];
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.lastAccessed > idleTimeoutMillis || now - entry.created > absoluteTimeoutMillis;
+    }
+
+    private void removeExpired() {
+        long now = Time.currentTimeMillis();
+        int removed = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                removed += removeExpired(stripe, now);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        if (removed > 0) {
+            log.debugf("Removed %d expired sessions", removed);
+        }
+    }
+
+    // Least recently used sessions first, so just the idle sessions are visited (and the first session, which is not idle)
+    private int removeExpired(Stripe stripe, long now) {
+        int removed = 0;
+        Iterator<Entry> it = stripe.sessions.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastAccessed <= idleTimeoutMillis) {
+                break;
+            }
+            it.remove();
+            removed++;
+        }
+        return removed;
+    }
+
+    private static class Entry {
+
+        private final SessionData session;
+        private final long created;
+        private volatile long lastAccessed;
+
+        private Entry(SessionData session, long created) {
+            this.session = session;
+            this.created = created;
+            this.lastAccessed = created;
+        }
+    }
+
+    private static class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, Entry> sessions;
+
+        private Stripe(int capacity) {
+            this.sessions = new LinkedHashMap<>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    if (size() > capacity) {
+                        log.debugf("Evicting least recently used session '%s'", eldest.getKey());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -21,13 +21,13 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.Header;
-import org.apache.http.HeaderIterator;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateInputStream;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
@@ -41,15 +41,17 @@ import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.microprofile.config.ConfigProvider;
 import org.keycloak.common.util.Base64;
 import org.keycloak.connections.httpclient.HttpClientProvider;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.util.JsonSerialization;
 
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
@@ -60,6 +62,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -70,6 +73,9 @@ public class SimpleHttp {
 
     private static final ObjectMapper mapper = new ObjectMapper();
     private static final int UNDEFINED_TIMEOUT = -1;
+    static final long DEFAULT_MAX_BODY_SIZE = ConfigProvider.getConfig().getOptionalValue("playground.http.max-response-size", Long.class).orElse(10485760L);
+    // Unread body up to this size (known from Content-Length) is read to release the connection for the reuse. Cheaper than new TLS handshake
+    private static final long MAX_DRAINED_BODY_SIZE = 65536;
 
     private final HttpClient client;
 
@@ -87,6 +93,8 @@ public class SimpleHttp {
 
     private RequestConfig.Builder requestConfigBuilder;
 
+    private long maxBodySize = DEFAULT_MAX_BODY_SIZE;
+
     protected SimpleHttp(String url, String method, HttpClient client) {
         this.client = client;
         this.url = url;
@@ -166,6 +174,14 @@ public class SimpleHttp {
         return this;
     }
 
+    /**
+     * @param maxBodySize maximum size (in bytes) of the decoded response body. Reading of the longer body fails
+     */
+    public SimpleHttp maxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+        return this;
+    }
+
     public SimpleHttp auth(String token) {
         header("Authorization", "Bearer " + token);
         return this;
@@ -185,24 +201,33 @@ public class SimpleHttp {
     }
 
     public JsonNode asJson() throws IOException {
-        if (headers == null || !headers.containsKey("Accept")) {
-            header("Accept", "application/json");
+        acceptJson();
+        SimpleHttp.Response response = asResponse();
+        try {
+            return response.asJson();
+        } finally {
+            response.close();
         }
-        return mapper.readTree(asString());
     }
 
     public <T> T asJson(Class<T> type) throws IOException {
-        if (headers == null || !headers.containsKey("Accept")) {
-            header("Accept", "application/json");
+        acceptJson();
+        SimpleHttp.Response response = asResponse();
+        try {
+            return response.asJson(type);
+        } finally {
+            response.close();
         }
-        return JsonSerialization.readValue(asString(), type);
     }
 
     public <T> T asJson(TypeReference<T> type) throws IOException {
-        if (headers == null || !headers.containsKey("Accept")) {
-            header("Accept", "application/json");
+        acceptJson();
+        SimpleHttp.Response response = asResponse();
+        try {
+            return response.asJson(type);
+        } finally {
+            response.close();
         }
-        return JsonSerialization.readValue(asString(), type);
     }
 
     public String asString() throws IOException {
@@ -210,7 +235,9 @@ public class SimpleHttp {
     }
 
     public int asStatus() throws IOException {
-        return asResponse().getStatus();
+        SimpleHttp.Response response = asResponse();
+        response.close();
+        return response.getStatus();
     }
 
     public SimpleHttp.Response asResponse() throws IOException {
@@ -253,6 +280,11 @@ public class SimpleHttp {
             }
         }
 
+        // Decoded by the response, when the client does not decode it itself
+        if (headers == null || !headers.containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        }
+
         if (headers != null) {
             for (Map.Entry<String, String> h : headers.entrySet()) {
                 httpRequest.setHeader(h.getKey(), h.getValue());
@@ -275,7 +307,7 @@ public class SimpleHttp {
             httpRequest.setConfig(requestConfigBuilder.build());
         }
 
-        return new SimpleHttp.Response(client.execute(httpRequest));
+        return new SimpleHttp.Response(httpRequest, client.execute(httpRequest), maxBodySize);
     }
 
     private RequestConfig.Builder requestConfigBuilder() {
@@ -319,79 +351,136 @@ public class SimpleHttp {
 
     public static class Response {
 
+        // Request is used to abort the exchange. Can be null, in which case the response is closed (if it is closeable)
+        private final HttpRequestBase request;
         private final HttpResponse response;
-        private int statusCode = -1;
+        private final long maxBodySize;
+        private boolean bodyRead;
         private String responseString;
 
         public Response(HttpResponse response) {
+            this(null, response, DEFAULT_MAX_BODY_SIZE);
+        }
+
+        public Response(HttpRequestBase request, HttpResponse response, long maxBodySize) {
+            this.request = request;
             this.response = response;
+            this.maxBodySize = maxBodySize;
         }
 
-        private void readResponse() throws IOException {
-            if (statusCode == -1) {
-                statusCode = response.getStatusLine().getStatusCode();
+        // Decoded body limited to the max size. Body can be read just once. Null if there is no body
+        private InputStream readBody() throws IOException {
+            if (bodyRead) {
+                throw new IllegalStateException("Response body was already read");
+            }
+            bodyRead = true;
 
-                InputStream is;
-                HttpEntity entity = response.getEntity();
-                if (entity != null) {
-                    is = entity.getContent();
-                    ContentType contentType = ContentType.getOrDefault(entity);
-                    Charset charset = contentType.getCharset();
-                    try {
-                        HeaderIterator it = response.headerIterator();
-                        while (it.hasNext()) {
-                            Header header = it.nextHeader();
-                            if (header.getName().equals("Content-Encoding") && header.getValue().equals("gzip")) {
-                                // is = new GZIPInputStream(is);
-                                is = null;
-                            }
-                        }
-
-                        try (InputStreamReader reader = charset == null ? new InputStreamReader(is, StandardCharsets.UTF_8) :
-                                new InputStreamReader(is, charset)) {
-
-                            StringWriter writer = new StringWriter();
-
-                            char[] buffer = new char[1024 * 4];
-                            for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
-                                writer.write(buffer, 0, n);
-                            }
-
-                            responseString = writer.toString();
-                        }
-                    } finally {
-                        if (is != null) {
-                            is.close();
-                        }
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                return null;
+            }
+            if (entity.getContentLength() > maxBodySize) {
+                abort();
+                throw new IOException("Response body of " + entity.getContentLength() + " bytes exceeds the limit of " + maxBodySize + " bytes");
+            }
+
+            InputStream is = entity.getContent();
+            try {
+                // Client with the content compression enabled decodes the body itself and the entity does not have the encoding anymore
+                Header encoding = entity.getContentEncoding();
+                if (encoding != null) {
+                    switch (encoding.getValue().trim().toLowerCase()) {
+                        case "gzip":
+                        case "x-gzip":
+                            is = new GZIPInputStream(is);
+                            break;
+                        case "deflate":
+                            // Both zlib-wrapped and raw deflate
+                            is = new DeflateInputStream(is);
+                            break;
+                        case "identity":
+                            break;
+                        default:
+                            throw new IOException("Unsupported Content-Encoding: " + encoding.getValue());
                     }
                 }
+            } catch (IOException ioe) {
+                abort();
+                is.close();
+                throw ioe;
             }
+            return new LimitedInputStream(is, maxBodySize);
+        }
+
+        // Parses the body. If parsing fails (EG. the body is longer than the limit), the exchange is aborted, so the rest of the body is not drained when the stream is closed
+        private <T> T parseBody(BodyParser<T> parser) throws IOException {
+            try (InputStream is = readBody()) {
+                if (is == null) {
+                    return null;
+                }
+                try {
+                    return parser.parse(is);
+                } catch (IOException | RuntimeException e) {
+                    // Rest of the small body is read when the stream is closed
+                    if (!isDrainable(response.getEntity())) {
+                        abort();
+                    }
+                    throw e;
+                }
+            }
+        }
+
+        private static boolean isDrainable(HttpEntity entity) {
+            long length = entity.getContentLength();
+            return length >= 0 && length <= MAX_DRAINED_BODY_SIZE;
         }
 
-        public int getStatus() throws IOException {
-            readResponse();
+        // Shuts down the connection instead of reading the rest of the body to release it for the reuse
+        private void abort() throws IOException {
+            if (request != null) {
+                request.abort();
+            } else if (response instanceof Closeable) {
+                ((Closeable) response).close();
+            }
+        }
+
+        public int getStatus() {
             return response.getStatusLine().getStatusCode();
         }
 
+        /**
+         * Parses the body directly from the response stream unless it was already read by {@link #asString()}
+         */
         public JsonNode asJson() throws IOException {
-            return mapper.readTree(asString());
+            if (responseString != null) {
+                return mapper.readTree(responseString);
+            }
+            return parseBody(is -> mapper.readTree(is));
         }
 
         public <T> T asJson(Class<T> type) throws IOException {
-            return JsonSerialization.readValue(asString(), type);
+            if (responseString != null) {
+                return JsonSerialization.readValue(responseString, type);
+            }
+            return parseBody(is -> JsonSerialization.readValue(is, type));
         }
 
         public <T> T asJson(TypeReference<T> type) throws IOException {
-            return JsonSerialization.readValue(asString(), type);
+            if (responseString != null) {
+                return JsonSerialization.readValue(responseString, type);
+            }
+            return parseBody(is -> JsonSerialization.readValue(is, type));
         }
 
         public String asString() throws IOException {
-            readResponse();
+            if (responseString == null && !bodyRead) {
+                Charset charset = ContentType.getOrDefault(response.getEntity()).getCharset();
+                responseString = parseBody(is -> new String(is.readAllBytes(), charset == null ? StandardCharsets.UTF_8 : charset));
+            }
             return responseString;
         }
 
-        public String getFirstHeader(String name) throws IOException {
-            readResponse();
+        public String getFirstHeader(String name) {
             Header[] headers = response.getHeaders(name);
 
             if (headers != null && headers.length > 0) {
@@ -401,8 +490,7 @@ public class SimpleHttp {
             return null;
         }
 
-        public List<String> getHeader(String name) throws IOException {
-            readResponse();
+        public List<String> getHeader(String name) {
             Header[] headers = response.getHeaders(name);
 
             if (headers != null && headers.length > 0) {
@@ -412,8 +500,70 @@ public class SimpleHttp {
             return null;
         }
 
+        /**
+         * Releases the connection. If the body was not read, the small body with known length is read, so the connection can be reused. Otherwise (body of
+         * unknown or large size) the exchange is aborted and the connection is closed
+         */
         public void close() throws IOException {
-            readResponse();
+            if (!bodyRead) {
+                bodyRead = true;
+                HttpEntity entity = response.getEntity();
+                if (entity != null && isDrainable(entity)) {
+                    EntityUtils.consume(entity);
+                } else if (entity != null) {
+                    abort();
+                }
+            }
+        }
+
+        @FunctionalInterface
+        private interface BodyParser<T> {
+
+            T parse(InputStream is) throws IOException;
+        }
+    }
+
+    // Fails the reading of the body, which is longer than the limit. Protects also against the small compressed bodies, which are huge when decoded
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                checkLimit(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                checkLimit(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            checkLimit(skipped);
+            return skipped;
+        }
+
+        private void checkLimit(long n) throws IOException {
+            count += n;
+            if (count > limit) {
+                throw new IOException("Response body exceeds the limit of " + limit + " bytes");
+            }
         }
     }
 
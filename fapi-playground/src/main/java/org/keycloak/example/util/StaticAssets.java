@@ -0,0 +1,283 @@
+package org.keycloak.example.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.Base64Url;
+
+/**
+ * Static resources of the application (everything from the "static" directory on the classpath). Resources are loaded just once. For every resource, there
+ * are also compressed variants prepared in advance.
+ *
+ * Every resource is available under its name (EG. "styles.css") and also under the "fingerprinted" name, which contains the hash of the resource content
+ * (EG. "styles.1a2b3c4d5e6f.css"). The fingerprinted name changes whenever content changes, hence it can be cached by browsers forever.
+ */
+public class StaticAssets {
+
+    private static final Logger log = Logger.getLogger(StaticAssets.class);
+
+    private static final String STATIC_DIR = "static";
+
+    public static final String ENCODING_GZIP = "gzip";
+    public static final String ENCODING_BROTLI = "br";
+
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "css", "text/css",
+            "js", "application/javascript",
+            "json", "application/json",
+            "svg", "image/svg+xml",
+            "ico", "image/x-icon"
+    );
+
+    private final Map<String, Asset> assets;
+
+    private StaticAssets(Map<String, Asset> assets) {
+        this.assets = assets;
+    }
+
+    public static StaticAssets load() {
+        long start = System.nanoTime();
+        Map<String, Asset> assets = new HashMap<>();
+        try {
+            URL staticDirUrl = StaticAssets.class.getClassLoader().getResource(STATIC_DIR);
+            if (staticDirUrl == null) {
+                log.warnf("Directory '%s' not found on the classpath. No static resources available", STATIC_DIR);
+                return new StaticAssets(Collections.emptyMap());
+            }
+
+            URI staticDirUri = staticDirUrl.toURI();
+            if (!"jar".equals(staticDirUri.getScheme())) {
+                loadAssets(Paths.get(staticDirUri), assets);
+            } else {
+                // File system of the jar is closed when it was opened here. Content of the assets is read in advance, so it is not needed afterwards
+                FileSystem jarFileSystem;
+                try {
+                    jarFileSystem = FileSystems.newFileSystem(staticDirUri, Collections.emptyMap());
+                } catch (FileSystemAlreadyExistsException e) {
+                    jarFileSystem = null;
+                }
+                if (jarFileSystem == null) {
+                    loadAssets(FileSystems.getFileSystem(staticDirUri).provider().getPath(staticDirUri), assets);
+                } else {
+                    try (FileSystem fs = jarFileSystem) {
+                        loadAssets(fs.provider().getPath(staticDirUri), assets);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load static resources", e);
+        }
+
+        log.infof("Loaded %d static resources in %d ms. Brotli compression available: %b", assets.size() / 2, (System.nanoTime() - start) / 1000000, isBrotliAvailable());
+        return new StaticAssets(assets);
+    }
+
+    /**
+     * @param name name or fingerprinted name of the resource
+     * @return resource or null if resource of given name does not exist
+     */
+    public Asset getAsset(String name) {
+        return assets.get(name);
+    }
+
+    /**
+     * @return fingerprinted name of the resource or the name itself if the resource of given name does not exist
+     */
+    public String getFingerprintedName(String name) {
+        Asset asset = assets.get(name);
+        return asset == null ? name : asset.getFingerprintedName();
+    }
+
+    private static void loadAssets(Path staticDir, Map<String, Asset> assets) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(staticDir)) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            String name = staticDir.relativize(file).toString().replace('\\', '/');
+            Asset asset = new Asset(name, Files.readAllBytes(file));
+            assets.put(asset.getName(), asset);
+            assets.put(asset.getFingerprintedName(), asset);
+        }
+    }
+
+    private static boolean isBrotliAvailable() {
+        try {
+            return Brotli4jLoader.isAvailable();
+        } catch (Throwable t) {
+            // Native library not available for this platform
+            return false;
+        }
+    }
+
+
+    public static class Asset {
+
+        private final String name;
+        private final String fingerprintedName;
+        private final String contentType;
+        private final Variant identity;
+        private final Variant gzip;
+        private final Variant brotli;
+
+        private Asset(String name, byte[] content) throws IOException {
+            String hash = Base64Url.encode(sha256(content));
+            this.name = name;
+            this.fingerprintedName = getFingerprintedName(name, hash.substring(0, 12));
+            this.contentType = getContentType(name);
+            this.identity = new Variant(content, null, "\"" + hash + "\"");
+            this.gzip = compressed(gzip(content), ENCODING_GZIP, hash);
+            this.brotli = isBrotliAvailable() ? compressed(Encoder.compress(content, new Encoder.Parameters().setQuality(11)), ENCODING_BROTLI, hash) : null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFingerprintedName() {
+            return fingerprintedName;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return the best variant according to the encodings accepted by the client
+         */
+        public Variant getVariant(String acceptEncodingHeader) {
+            if (acceptEncodingHeader != null) {
+                if (brotli != null && isEncodingAccepted(acceptEncodingHeader, ENCODING_BROTLI)) {
+                    return brotli;
+                }
+                if (gzip != null && isEncodingAccepted(acceptEncodingHeader, ENCODING_GZIP)) {
+                    return gzip;
+                }
+            }
+            return identity;
+        }
+
+        // Compressed variant is used only when it is smaller than the original content
+        private Variant compressed(byte[] compressed, String encoding, String hash) {
+            return compressed.length < identity.getContent().length ? new Variant(compressed, encoding, "\"" + hash + "-" + encoding + "\"") : null;
+        }
+
+        private static String getFingerprintedName(String name, String fingerprint) {
+            int dotIndex = name.lastIndexOf('.');
+            int slashIndex = name.lastIndexOf('/');
+            return dotIndex > slashIndex ? name.substring(0, dotIndex) + "." + fingerprint + name.substring(dotIndex) : name + "." + fingerprint;
+        }
+
+        private static String getContentType(String name) {
+            String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+            String contentType = CONTENT_TYPES.get(extension);
+            if (contentType == null) {
+                contentType = URLConnection.guessContentTypeFromName(name);
+            }
+            return contentType == null ? "application/octet-stream" : contentType;
+        }
+
+        private static boolean isEncodingAccepted(String acceptEncodingHeader, String encoding) {
+            for (String acceptedEncoding : acceptEncodingHeader.split(",")) {
+                String[] parts = acceptedEncoding.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase(encoding)) {
+                    for (int i = 1 ; i < parts.length ; i++) {
+                        String param = parts[i].trim();
+                        if (param.startsWith("q=")) {
+                            try {
+                                return Double.parseDouble(param.substring(2)) > 0;
+                            } catch (NumberFormatException nfe) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static byte[] sha256(byte[] content) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(content);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static byte[] gzip(byte[] content) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(content);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+
+    public static class Variant {
+
+        private final byte[] content;
+        private final String encoding;
+        private final String etag;
+
+        private Variant(byte[] content, String encoding, String etag) {
+            this.content = content;
+            this.encoding = encoding;
+            this.etag = etag;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * @return value of the "Content-Encoding" header or null for the uncompressed content
+         */
+        public String getEncoding() {
+            return encoding;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return true if the client already has this variant according to the "If-None-Match" header
+         */
+        public boolean matches(String ifNoneMatchHeader) {
+            if (ifNoneMatchHeader == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatchHeader.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+<html>
+    <head>
+        <title>FAPI demo</title>
+        <link rel="stylesheet" type="text/css" href="${url.cssUrl}"/>
+    </head>
+    <body>
+        <h1>Outbound HTTP exchanges</h1>
+
+        <a href="${url.baseUrl}">Back to FAPI playground</a> | <a href="${url.exchangesUrl}.json">Export as JSON</a><br />
+        <br />
+        Total exchanges since start: <b>${totalCount?c}</b>. Showing last <b>${exchanges?size}</b> exchanges. All times are in microseconds.<br />
+        <hr />
+
+        <h3>Endpoints</h3>
+        <table>
+            <tr>
+                <th>Endpoint</th><th>Count</th><th>p50</th><th>p90</th><th>p99</th><th>Max</th>
+                <th>Avg lease</th><th>Avg connect</th><th>Avg TLS</th><th>Avg TTFB</th><th>Avg body read</th><th>Avg response bytes</th>
+            </tr>
+            <#list endpointStats as stats>
+            <tr>
+                <td>${stats.endpoint}</td><td>${stats.count?c}</td><td>${stats.p50Micros?c}</td><td>${stats.p90Micros?c}</td><td>${stats.p99Micros?c}</td><td>${stats.maxMicros?c}</td>
+                <td>${stats.avgLeaseMicros?c}</td><td>${stats.avgConnectMicros?c}</td><td>${stats.avgTlsHandshakeMicros?c}</td><td>${stats.avgTtfbMicros?c}</td>
+                <td>${stats.avgBodyReadMicros?c}</td><td>${stats.avgResponseBytes?c}</td>
+            </tr>
+            </#list>
+        </table>
+        <hr />
+
+        <h3>Last exchanges</h3>
+        <table>
+            <tr>
+                <th>Time</th><th>Method</th><th>Endpoint</th><th>Status</th><th>Total</th>
+                <th>Lease</th><th>Connect</th><th>TLS</th><th>TTFB</th><th>Body read</th><th>Request bytes</th><th>Response bytes</th>
+            </tr>
+            <#list exchanges as exchange>
+            <tr>
+                <td>${exchange.timestamp?number_to_datetime?string.iso}</td><td>${exchange.method}</td><td>${exchange.endpoint}</td><td>${exchange.status?c}</td>
+                <td>${exchange.totalMicros?c}</td><td>${exchange.leaseMicros?c}</td><td>${exchange.connectMicros?c}</td><td>${exchange.tlsHandshakeMicros?c}</td>
+                <td>${exchange.ttfbMicros?c}</td><td>${exchange.bodyReadMicros?c}</td><td>${exchange.requestBytes?c}</td><td>${exchange.responseBytes?c}</td>
+            </tr>
+            </#list>
+        </table>
+    </body>
+</html>
@@ -9,6 +9,9 @@
         <h3>Server info</h3>
         Keycloak server URL: <b>${serverInfo.authServerInfo} </b><br />
         Realm name: <b>${serverInfo.realmName} </b><br />
+        <#if url.exchangesUrl??>
+        <a href="${url.exchangesUrl}">Outbound HTTP exchanges</a><br />
+        </#if>
         <br />
         <hr />
 
@@ -50,6 +53,19 @@
                     </#if>
                 </td>
             </tr>
+            <tr>
+                <td>Client keys algorithm: </td><td>
+                    <select name="jwks-algorithm" id="jwks-algorithm">
+                        <#list ["PS256", "PS384", "PS512", "RS256", "RS384", "RS512", "ES256", "ES384", "ES512", "EdDSA", "RSA-OAEP", "RSA-OAEP-256"] as keysAlgorithm>
+                            <#if clientConfigCtx.keysAlgorithm == keysAlgorithm>
+                                <option value="${keysAlgorithm}" selected>${keysAlgorithm}</option>
+                            <#else>
+                                <option value="${keysAlgorithm}">${keysAlgorithm}</option>
+                            </#if>
+                        </#list>
+                    </select>
+                </td>
+            </tr>
         </table>
     </div>
     <br />
@@ -112,12 +128,28 @@
                 </#if>
                 </td>
             </tr>
+            <tr>
+                <td>DPoP key type: </td><td>
+                    <select name="dpop-key-type" id="dpop-key-type">
+                        <#list ["RS256", "ES256", "EdDSA"] as keyType>
+                            <#if oidcConfigCtx.dpopKeyType == keyType>
+                                <option value="${keyType}" selected>${keyType}</option>
+                            <#else>
+                                <option value="${keyType}">${keyType}</option>
+                            </#if>
+                        </#list>
+                    </select>
+                </td>
+            </tr>
+            <tr><td>Username (headless login): </td><td><input id="login-username" name="login-username"></td></tr>
+            <tr><td>Password (headless login): </td><td><input id="login-password" name="login-password" type="password"></td></tr>
         </table>
     </div>
     <br />
     <div>
     <#if appState.clientRegistered>
         <button onclick="submitWithAction('create-login-url')">Create Login URL</button>
+        <button onclick="submitWithAction('headless-login')">Headless login</button>
     </#if>
     <#if appState.authenticated>
         <button onclick="submitWithAction('refresh-token')">Refresh token</button>
@@ -200,7 +232,7 @@
 <#if info??>
     <#list info.outputs as out>
         <h3>${out.title!}</h3>
-        <pre id="output">${out.content!}</pre>
+        <pre id="output"><@out.content/></pre>
         <hr />
     </#list>
 </#if>